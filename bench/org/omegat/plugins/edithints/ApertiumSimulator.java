@@ -0,0 +1,254 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server that simulates the Apertium JSON service used by
+ * <code>ApertiumTranslateEdithints</code>. The latency, its jitter and the
+ * rate of failed requests can be configured. Translations are deterministic
+ * pseudo-translations: every word outside the HTML tags is replaced by a word
+ * computed from its hash and the language pair, so the same sub-segment is
+ * always translated the same way and the paragraph structure is kept.
+ * <p>
+ * Usage: <code>ApertiumSimulator [port] [latency ms] [jitter ms] [error rate]</code>
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class ApertiumSimulator implements HttpHandler {
+
+    /** Path of the translation service. */
+    public static final String PATH = "/translate";
+
+    /** Mean latency of the responses in milliseconds. */
+    private final long latency;
+
+    /** Maximum deviation (in milliseconds) from the mean latency. */
+    private final long jitter;
+
+    /** Fraction of the requests which fail. */
+    private final double errorRate;
+
+    /** HTTP status of the failed requests. */
+    private final int errorStatus;
+
+    /** Random generator for the latency and the errors. */
+    private final Random random;
+
+    /** HTTP server. */
+    private HttpServer server;
+
+    /** Threads of the server. */
+    private ExecutorService executor;
+
+    /**
+     * Constructor of the class.
+     * @param latency Mean latency of the responses in milliseconds.
+     * @param jitter Maximum deviation from the mean latency in milliseconds.
+     * @param errorRate Fraction of the requests which fail.
+     * @param errorStatus HTTP status of the failed requests (503 or 429, for
+     * instance).
+     * @param seed Seed of the random generator.
+     */
+    public ApertiumSimulator(long latency, long jitter, double errorRate, int errorStatus, long seed) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Method that starts the server.
+     * @param port Port of the server (0 for any free port).
+     * @throws IOException if the server cannot be started.
+     */
+    public void start(int port) throws IOException {
+        //Without TCP_NODELAY, Nagle's algorithm adds ~40 ms to every response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext(PATH, this);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /** Method that stops the server. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Method that returns the URL of the service, to be used in the
+     * constructor of <code>ApertiumTranslateEdithints</code>.
+     * @return Returns the URL of the service.
+     */
+    public String getURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        long delay;
+        boolean fail;
+        synchronized (random) {
+            delay = latency + (jitter > 0 ? (long) ((random.nextDouble() * 2 - 1) * jitter) : 0);
+            fail = random.nextDouble() < errorRate;
+        }
+        try {
+            Thread.sleep(Math.max(0, delay));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        int status;
+        String body;
+        String q = params.get("q");
+        String pair = params.get("langpair");
+        if (fail) {
+            status = errorStatus;
+            body = "{\"responseData\":{\"translatedText\":null},\"responseDetails\":\"Simulated error\",\"responseStatus\":" + errorStatus + "}";
+            if (errorStatus == 429) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+            }
+        } else if (q == null || pair == null) {
+            status = 200;
+            body = "{\"responseData\":{\"translatedText\":null},\"responseDetails\":\"Missing query\",\"responseStatus\":400}";
+        } else {
+            status = 200;
+            body = "{\"responseData\":{\"translatedText\":\"" + escape(translate(q, pair) + "\n")
+                    + "\"},\"responseDetails\":null,\"responseStatus\":200}";
+        }
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    /**
+     * Method that computes the pseudo-translation of an HTML text.
+     * @param text Text to translate.
+     * @param pair Language pair.
+     * @return Returns the pseudo-translation.
+     */
+    static String translate(String text, String pair) {
+        StringBuilder sb = new StringBuilder(text.length());
+        int i = 0;
+        int len = text.length();
+        while (i < len) {
+            char c = text.charAt(i);
+            if (c == '<') {
+                int end = text.indexOf('>', i);
+                end = (end < 0) ? len : end + 1;
+                sb.append(text, i, end);
+                i = end;
+            } else if (Character.isWhitespace(c)) {
+                sb.append(c);
+                i++;
+            } else {
+                int end = i;
+                while (end < len && text.charAt(end) != '<' && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                int h = (text.substring(i, end) + '|' + pair).hashCode();
+                sb.append('w').append(Integer.toString(h & 0xfffff, 36));
+                i = end;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '/':
+                    sb.append("\\/");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 2737;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        long jitter = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        ApertiumSimulator simulator = new ApertiumSimulator(latency, jitter, errorRate, 503, 1);
+        simulator.start(port);
+        System.out.println("Apertium simulator listening on " + simulator.getURL());
+    }
+}
@@ -0,0 +1,116 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import java.lang.reflect.Method;
+import org.omegat.plugins.edithints.machinetranslation.BatchTranslation;
+import org.omegat.filters2.html2.FilterVisitor;
+
+/**
+ * Micro-benchmark that compares the decoding and splitting of the HTML
+ * translations returned by the machine translation systems. The legacy path
+ * (regular expression test plus reflective call to
+ * <code>FilterVisitor.entitiesToChars</code> plus <code>String.split</code>)
+ * is compared with the path used by the plugin,
+ * <code>BatchTranslation.SplitParagraphs</code> followed by
+ * <code>BatchTranslation.Decode</code>, which relies on
+ * <code>EntityDecoder</code>. The numbers for the legacy path are
+ * only meaningful when OmegaT is in the classpath instead of the stubs.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class EntityDecodingBenchmark {
+
+    /** Number of iterations for warming up the JIT. */
+    private static final int WARMUP = 2000;
+
+    /** Number of measured iterations. */
+    private static final int ITERATIONS = 20000;
+
+    /**
+     * Method that builds a fake HTML translation with <code>parts</code>
+     * paragraphs, some of them containing entities.
+     */
+    static String buildTranslation(int parts) {
+        StringBuilder sb = new StringBuilder("<html>");
+        for (int i = 0; i < parts; i++) {
+            sb.append("<p>");
+            sb.append("word").append(i);
+            if (i % 3 == 0) {
+                sb.append(" l&#39;exemple &amp; caf&eacute;");
+            } else {
+                sb.append(" plain text");
+            }
+            sb.append("</p>");
+        }
+        sb.append("</html>");
+        return sb.toString();
+    }
+
+    /** Decoding and splitting as done before <code>EntityDecoder</code>. */
+    static String[] legacySplit(String trans) throws Exception {
+        if (trans.matches(".*&.*;.*")) {
+            FilterVisitor fv = new FilterVisitor(null, null, null);
+            Method entitiesToChars = FilterVisitor.class.
+                    getDeclaredMethod("entitiesToChars", String.class);
+            entitiesToChars.setAccessible(true);
+            trans = (String) entitiesToChars.invoke(fv, trans);
+        }
+        return trans.replace("<html><p>", "").replace("</p></html>", "").split("</p><p>");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10, 50, 250};
+        for (int size : sizes) {
+            String trans = buildTranslation(size);
+            long sink = 0;
+            for (int i = 0; i < WARMUP; i++) {
+                sink += legacySplit(trans).length;
+                sink += BatchTranslation.Decode(BatchTranslation.SplitParagraphs(trans)).size();
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += legacySplit(trans).length;
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += BatchTranslation.Decode(BatchTranslation.SplitParagraphs(trans)).size();
+            }
+            long decoder = System.nanoTime() - start;
+
+            System.out.println(String.format(
+                    "%4d sub-segments (%6d chars): legacy %9.1f us/op, EntityDecoder %9.1f us/op, speed-up x%.1f [%d]",
+                    size, trans.length(), legacy / 1000.0 / ITERATIONS,
+                    decoder / 1000.0 / ITERATIONS, (double) legacy / decoder, sink));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import es.ua.dlsi.segmentation.Segment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.plugins.edithints.machinetranslation.ApertiumTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.CircuitBreakerTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.CoalescingTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.HedgingTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.RateLimitedTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.TokenBucket;
+import org.omegat.util.Language;
+
+/**
+ * Load test of the evidence collection. This class starts an
+ * <code>ApertiumSimulator</code> and drives <code>EvidenceCollector</code>
+ * against it, through the same layers used in the plugin, with an increasing
+ * number of concurrent threads. For each level of concurrency it reports the
+ * throughput and the percentiles of the latency of
+ * <code>ObtainEvidence</code>.
+ * <p>
+ * Usage: <code>EvidenceLoadTest [calls per level] [latency ms] [jitter ms]
+ * [error rate] [budget ms]</code>
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class EvidenceLoadTest {
+
+    /** Levels of concurrency tested. */
+    private static final int[] CONCURRENCY = {1, 2, 4, 8, 16, 32};
+
+    /** Vocabulary for the synthetic sentences. */
+    static final String[] VOCABULARY = ("the a of to in and is that for it on with as was "
+            + "by be this are from or have an they which one you were all we when there can "
+            + "translation memory segment match edit hint word machine system project file "
+            + "user text source target language evidence proposal change keep").split(" ");
+
+    /**
+     * Method that builds a corpus of synthetic sentence pairs.
+     * @param size Number of pairs.
+     * @param seed Seed of the random generator.
+     * @return Returns a list of pairs {source, target}.
+     */
+    static List<Segment[]> buildCorpus(int size, long seed) {
+        Random random = new Random(seed);
+        List<Segment[]> corpus = new ArrayList<Segment[]>();
+        for (int i = 0; i < size; i++) {
+            corpus.add(new Segment[]{
+                EvidenceCollector.NewSegment(sentence(random)),
+                EvidenceCollector.NewSegment(sentence(random))});
+        }
+        return corpus;
+    }
+
+    private static String sentence(Random random) {
+        int len = 8 + random.nextInt(13);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < len; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that wraps the engine with the layers used in the plugin. The
+     * rate limiter is generous so that the simulator, not the limiter, is
+     * measured.
+     */
+    static IMachineTranslationEdithints wrap(IMachineTranslationEdithints mt) {
+        IMachineTranslationEdithints breaker = new CircuitBreakerTranslateEdithints(
+                new HedgingTranslateEdithints(new RateLimitedTranslateEdithints(mt,
+                new TokenBucket(10000, 100, 10000, 10000, 0))));
+        return new CoalescingTranslateEdithints(breaker);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int calls = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        long jitter = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.01;
+        final long budget = args.length > 4 ? Long.parseLong(args[4]) : 800;
+
+        ApertiumSimulator simulator = new ApertiumSimulator(latency, jitter, errorRate, 503, 1);
+        simulator.start(0);
+        try {
+            final Collection<IMachineTranslationEdithints> translators =
+                    Collections.singletonList(wrap(new ApertiumTranslateEdithints(simulator.getURL())));
+            final Language source = new Language("en");
+            final Language target = new Language("es");
+            final List<Segment[]> corpus = buildCorpus(100, 1);
+
+            System.out.println(String.format("Simulator: latency %d+-%d ms, error rate %.3f; budget %d ms; %d calls per level",
+                    latency, jitter, errorRate, budget, calls));
+            System.out.println("threads  calls/s      p50      p95      p99   partial  pairs/call");
+            for (final int threads : CONCURRENCY) {
+                final long[] latencies = new long[calls];
+                final AtomicInteger next = new AtomicInteger();
+                final AtomicInteger partial = new AtomicInteger();
+                final AtomicInteger pairs = new AtomicInteger();
+                Thread[] workers = new Thread[threads];
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    workers[t] = new Thread() {
+                        @Override
+                        public void run() {
+                            int i;
+                            while ((i = next.getAndIncrement()) < calls) {
+                                Segment[] pair = corpus.get(i % corpus.size());
+                                EvidenceCollector collector = new EvidenceCollector(
+                                        translators, source, target, budget);
+                                long begin = System.nanoTime();
+                                int size = collector.ObtainEvidence(pair[0], pair[1]).sSize();
+                                latencies[i] = System.nanoTime() - begin;
+                                pairs.addAndGet(size);
+                                if (collector.isPartial()) {
+                                    partial.incrementAndGet();
+                                }
+                            }
+                        }
+                    };
+                    workers[t].start();
+                }
+                for (Thread w : workers) {
+                    w.join();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                Arrays.sort(latencies);
+                System.out.println(String.format("%7d %8.1f %6.1fms %6.1fms %6.1fms %9d %11.1f",
+                        threads, calls / seconds, percentile(latencies, 0.5),
+                        percentile(latencies, 0.95), percentile(latencies, 0.99),
+                        partial.get(), (double) pairs.get() / calls));
+            }
+        } finally {
+            simulator.stop();
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int idx = Math.max(0, Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1));
+        return sorted[idx] / 1e6;
+    }
+}
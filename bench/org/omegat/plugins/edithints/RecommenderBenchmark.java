@@ -0,0 +1,337 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints;
+
+import es.ua.dlsi.recommendation.GeometricStlypePerceptronRecommend;
+import es.ua.dlsi.recommendation.PerceptronRecommend;
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.segmentation.SubSegment;
+import es.ua.dlsi.translationmemory.SegmentDictionary;
+import es.ua.dlsi.translationmemory.TranslationUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.omegat.plugins.edithints.recommendation.IRecommender;
+import org.omegat.plugins.edithints.recommendation.PackedGeometricRecommender;
+import org.omegat.plugins.edithints.recommendation.PerceptronRecommender;
+import org.omegat.plugins.edithints.recommendation.PerceptronWeights;
+import org.omegat.plugins.edithints.recommendation.SimpleRecommender;
+
+/**
+ * Micro-benchmark that compares the cost per hint (per word of the target
+ * segment of a match) of the recommenders. The corpus is synthetic: the
+ * matches are translated word by word with a fixed dictionary, some words of
+ * their targets are changed, the sentences being translated differ from the
+ * source of their match in some words, and the evidence is the translation of
+ * every sub-segment. The perceptrons use random weights, which is enough to
+ * measure their cost. Before measuring, the results of
+ * <code>PackedGeometricRecommender</code> are checked against
+ * <code>GeometricRecommender</code>, and those of the perceptrons against
+ * <code>PerceptronRecommend</code> and
+ * <code>GeometricStlypePerceptronRecommend</code>. The speed-up of
+ * <code>PackedGeometricRecommender</code> over
+ * <code>GeometricRecommender</code> is reported at the end.
+ * <p>
+ * Usage: <code>RecommenderBenchmark [matches] [matches per call]</code>
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class RecommenderBenchmark {
+
+    /** Number of rounds over the corpus for warming up the JIT. */
+    private static final int WARMUP = 5;
+
+    /** Number of measured rounds over the corpus. */
+    private static final int ROUNDS = 20;
+
+    /**
+     * Class that contains a sentence being translated and its match, with the
+     * evidence collected.
+     */
+    static class Case {
+        final Segment source;
+        final TranslationUnit tu;
+        final SegmentDictionary sd;
+
+        Case(Segment source, TranslationUnit tu, SegmentDictionary sd) {
+            this.source = source;
+            this.tu = tu;
+            this.sd = sd;
+        }
+    }
+
+    /**
+     * Method that builds the synthetic corpus.
+     * @param size Number of matches.
+     * @param seed Seed of the random generator.
+     * @return Returns the sentences with their matches, whose evidence is
+     * already collected.
+     */
+    static List<Case> buildCorpus(int size, long seed) {
+        return buildCorpus(size, seed, 6, 25);
+    }
+
+    /**
+     * Method that builds the synthetic corpus with sentences of a given
+     * length.
+     * @param size Number of matches.
+     * @param seed Seed of the random generator.
+     * @param minlen Minimum number of words of the sentences.
+     * @param maxlen Maximum number of words of the sentences.
+     * @return Returns the sentences with their matches, whose evidence is
+     * already collected.
+     */
+    static List<Case> buildCorpus(int size, long seed, int minlen, int maxlen) {
+        Random random = new Random(seed);
+        Map<String, String> dictionary = new HashMap<String, String>();
+        for (String word : EvidenceLoadTest.VOCABULARY) {
+            dictionary.put(word, new StringBuilder(word).reverse().toString() + "o");
+        }
+        List<Case> corpus = new ArrayList<Case>();
+        for (int i = 0; i < size; i++) {
+            int len = minlen + random.nextInt(maxlen - minlen + 1);
+            String[] tusource = new String[len];
+            String[] tutarget = new String[len];
+            String[] source = new String[len];
+            for (int j = 0; j < len; j++) {
+                tusource[j] = word(random);
+                tutarget[j] = (random.nextInt(10) == 0) ? dictionary.get(word(random))
+                        : dictionary.get(tusource[j]);
+                source[j] = (random.nextInt(4) == 0) ? word(random) : tusource[j];
+            }
+            synchronized (es.ua.dlsi.segmentation.Word.class) {
+                Segment s = new Segment(join(source));
+                TranslationUnit tu = new TranslationUnit(new Segment(join(tusource)),
+                        new Segment(join(tutarget)));
+                SegmentDictionary sd = new SegmentDictionary();
+                for (Segment seg : new Segment[]{s, tu.getSource()}) {
+                    for (SubSegment sub : seg.AllSubSegmentsInSentence(IRecommender.MAX_SUBSEGMENT_LENGTH)) {
+                        String[] words = sub.toString().split(" ");
+                        for (int j = 0; j < words.length; j++) {
+                            words[j] = dictionary.get(words[j]);
+                        }
+                        sd.AddSegmentPair(sub, new Segment(join(words)));
+                    }
+                }
+                tu.CollectEvidences(sd, IRecommender.MAX_SUBSEGMENT_LENGTH, false);
+                corpus.add(new Case(s, tu, sd));
+            }
+        }
+        return corpus;
+    }
+
+    private static String word(Random random) {
+        return EvidenceLoadTest.VOCABULARY[random.nextInt(EvidenceLoadTest.VOCABULARY.length)];
+    }
+
+    private static String join(String[] words) {
+        StringBuilder sb = new StringBuilder();
+        for (String w : words) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(w);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that builds the weights of a perceptron at random.
+     */
+    static PerceptronWeights randomWeights(long seed) {
+        Random random = new Random(seed);
+        double[] weights = new double[PerceptronRecommender.FEATURES];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = random.nextGaussian();
+        }
+        return new PerceptronWeights(random.nextGaussian(), weights);
+    }
+
+    /**
+     * Method that computes the recommendations for the whole corpus, with
+     * <code>batch</code> matches per call.
+     * @return Returns a checksum of the recommendations.
+     */
+    static long run(IRecommender recommender, List<Case> corpus, int batch) {
+        long sink = 0;
+        for (int from = 0; from < corpus.size(); from += batch) {
+            int n = Math.min(batch, corpus.size() - from);
+            Segment[] sources = new Segment[n];
+            TranslationUnit[] tus = new TranslationUnit[n];
+            for (int i = 0; i < n; i++) {
+                sources[i] = corpus.get(from + i).source;
+                tus[i] = corpus.get(from + i).tu;
+            }
+            for (int[] result : recommender.Recommend(sources, tus)) {
+                for (int r : result) {
+                    sink = sink * 31 + r;
+                }
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * Method that computes the recommendations for the whole corpus with
+     * <code>PackedGeometricRecommender</code> on segments and evidence which
+     * are already packed.
+     * @return Returns a checksum of the recommendations.
+     */
+    static long runPacked(int[][] sources, int[][] tusources, int[] targetlengths, int[][] evidence) {
+        long sink = 0;
+        for (int i = 0; i < sources.length; i++) {
+            int[] result = PackedGeometricRecommender.Recommend(sources[i], tusources[i], targetlengths[i],
+                    evidence[i], evidence[i].length / PackedGeometricRecommender.EVIDENCE_FIELDS,
+                    SimpleRecommender.THRESHOLD);
+            for (int r : result) {
+                sink = sink * 31 + r;
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * Method that computes the recommendations of a perceptron with the
+     * implementation of <code>WKRecommending</code>.
+     */
+    static int[] reference(PerceptronRecommender recommender, Case c) {
+        PerceptronWeights w = recommender.getWeights();
+        boolean[] reference = new boolean[c.tu.getTarget().size()];
+        if (recommender.getFeatures() == PerceptronRecommender.Features.MN) {
+            return PerceptronRecommend.MakeRecommendationOnlyForWordsWithEvidenceNM(c.source, c.tu,
+                    IRecommender.MAX_SUBSEGMENT_LENGTH, 0, w.getWeights(), w.getBias(), null, null,
+                    reference, PerceptronWeights.THRESHOLD);
+        }
+        return GeometricStlypePerceptronRecommend.MakeRecommendationOnlyForWordsWithEvidenceNM(c.source,
+                c.tu, IRecommender.MAX_SUBSEGMENT_LENGTH, 0, w.getWeights(), w.getBias(), null, null,
+                reference, PerceptronWeights.THRESHOLD);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int batch = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        List<Case> corpus = buildCorpus(size, 1);
+        long words = 0;
+        for (Case c : corpus) {
+            words += c.tu.getTarget().size();
+        }
+
+        SimpleRecommender simple = new SimpleRecommender();
+        PackedGeometricRecommender packed = new PackedGeometricRecommender();
+        int differences = 0;
+        for (Case c : corpus) {
+            Segment[] sources = {c.source};
+            TranslationUnit[] tus = {c.tu};
+            if (!Arrays.equals(simple.Recommend(sources, tus)[0], packed.Recommend(sources, tus)[0])) {
+                differences++;
+            }
+        }
+        System.out.println(String.format("%s: %d of %d matches differ from WKRecommending",
+                packed.getName(), differences, corpus.size()));
+
+        PerceptronRecommender perceptron = new PerceptronRecommender("Perceptron",
+                PerceptronRecommender.Features.MN, randomWeights(2));
+        PerceptronRecommender geometricperceptron = new PerceptronRecommender("Geometric-style perceptron",
+                PerceptronRecommender.Features.GEOMETRIC_STYLE, randomWeights(3));
+        for (PerceptronRecommender p : new PerceptronRecommender[]{perceptron, geometricperceptron}) {
+            int mismatches = 0;
+            for (Case c : corpus) {
+                int[] expected = reference(p, c);
+                int[] obtained = p.Recommend(new Segment[]{c.source}, new TranslationUnit[]{c.tu})[0];
+                if (!Arrays.equals(expected, obtained)) {
+                    mismatches++;
+                }
+            }
+            System.out.println(String.format("%s: %d of %d matches differ from WKRecommending",
+                    p.getName(), mismatches, corpus.size()));
+        }
+
+        System.out.println(String.format("%d matches, %d hints, %d matches per call", size, words, batch));
+        IRecommender[] recommenders = {simple, packed, perceptron, geometricperceptron};
+        int[] sizes = {1, batch};
+        long[][] times = new long[recommenders.length][sizes.length];
+        for (int r = 0; r < recommenders.length; r++) {
+            IRecommender recommender = recommenders[r];
+            for (int b = 0; b < sizes.length; b++) {
+                int calls = sizes[b];
+                long sink = 0;
+                for (int i = 0; i < WARMUP; i++) {
+                    sink += run(recommender, corpus, calls);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    sink += run(recommender, corpus, calls);
+                }
+                long elapsed = System.nanoTime() - start;
+                times[r][b] = elapsed;
+                System.out.println(String.format("%-28s %3d per call: %8.1f ns/hint %9.1f us/match [%d]",
+                        recommender.getName(), calls, (double) elapsed / ROUNDS / words,
+                        elapsed / 1000.0 / ROUNDS / size, sink));
+            }
+        }
+
+        //The same recommender when the segments and the evidence are already
+        //packed, which leaves out the conversion from the objects
+        int[][] sources = new int[size][];
+        int[][] tusources = new int[size][];
+        int[] targetlengths = new int[size];
+        int[][] evidence = new int[size][];
+        for (int i = 0; i < size; i++) {
+            Case c = corpus.get(i);
+            sources[i] = PackedGeometricRecommender.Pack(c.source);
+            tusources[i] = PackedGeometricRecommender.Pack(c.tu.getSource());
+            targetlengths[i] = c.tu.getTarget().size();
+            evidence[i] = PackedGeometricRecommender.PackEvidence(c.tu.getEvidences(),
+                    IRecommender.MAX_SUBSEGMENT_LENGTH);
+        }
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += runPacked(sources, tusources, targetlengths, evidence);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            sink += runPacked(sources, tusources, targetlengths, evidence);
+        }
+        long packedtime = System.nanoTime() - start;
+        System.out.println(String.format("%-28s   packed: %8.1f ns/hint %9.1f us/match [%d]",
+                packed.getName(), (double) packedtime / ROUNDS / words,
+                packedtime / 1000.0 / ROUNDS / size, sink));
+
+        for (int b = 0; b < sizes.length; b++) {
+            System.out.println(String.format("Speed-up of %s over %s, %d per call: x%.1f",
+                    packed.getName(), simple.getName(), sizes[b], (double) times[0][b] / times[1][b]));
+        }
+        System.out.println(String.format("Speed-up of %s over %s, already packed: x%.1f",
+                packed.getName(), simple.getName(), (double) times[0][0] / packedtime));
+    }
+}
@@ -0,0 +1,138 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints;
+
+import es.ua.dlsi.translationmemory.TranslationUnit;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.omegat.plugins.edithints.recommendation.IRecommender;
+import org.omegat.plugins.edithints.recommendation.PackedGeometricRecommender;
+import org.omegat.plugins.edithints.recommendation.WindowedRecommendation;
+
+/**
+ * Micro-benchmark that compares, for segments of increasing length, the
+ * time needed to collect the evidence of a match and recommend on it at once
+ * and by windows (see <code>WindowedRecommendation</code>), and how many
+ * hints differ between both. The windows are run in one thread, which gives
+ * the gain of their size, and in one thread for every processor, which gives
+ * the gain of running them in parallel. The corpus is that of
+ * <code>RecommenderBenchmark</code>.
+ * <p>
+ * Usage: <code>WindowedRecommendationBenchmark [matches per length]</code>
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class WindowedRecommendationBenchmark {
+
+    /** Lengths (in words) of the segments tested. */
+    private static final int[] LENGTHS = {25, 50, 100, 200, 400};
+
+    /** Number of rounds over the corpus for warming up the JIT. */
+    private static final int WARMUP = 3;
+
+    /** Number of measured rounds over the corpus. */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Method that recommends on the whole corpus.
+     * @param pool Threads where the windows are run, or <code>null</code> to
+     * recommend on the whole matches at once.
+     * @param hints Hints obtained for every match, filled if not
+     * <code>null</code>.
+     * @return Returns the time elapsed, in nanoseconds.
+     */
+    static long run(IRecommender recommender, List<RecommenderBenchmark.Case> corpus, ExecutorService pool,
+            int[][] hints) {
+        long start = System.nanoTime();
+        for (int i = 0; i < corpus.size(); i++) {
+            RecommenderBenchmark.Case c = corpus.get(i);
+            //A new unit every time, so its evidence is collected again
+            TranslationUnit tu = new TranslationUnit(c.tu.getSource(), c.tu.getTarget());
+            int[] result;
+            if (pool != null) {
+                result = WindowedRecommendation.Recommend(recommender, c.source, tu, c.sd, pool);
+            } else {
+                tu.CollectEvidences(c.sd, IRecommender.MAX_SUBSEGMENT_LENGTH, false);
+                result = recommender.Recommend(new es.ua.dlsi.segmentation.Segment[]{c.source},
+                        new TranslationUnit[]{tu})[0];
+            }
+            if (hints != null) {
+                hints[i] = result;
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        IRecommender recommender = new PackedGeometricRecommender();
+        int processors = Runtime.getRuntime().availableProcessors();
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        ExecutorService parallel = Executors.newFixedThreadPool(processors);
+        System.out.println(String.format("%d processors; windows of %d words overlapping %d",
+                processors, WindowedRecommendation.WINDOW, WindowedRecommendation.OVERLAP));
+        System.out.println("  words   at once  1 thread  parallel   windows  parallel  different hints");
+        for (int length : LENGTHS) {
+            List<RecommenderBenchmark.Case> corpus = RecommenderBenchmark.buildCorpus(size, 1, length, length);
+            for (int i = 0; i < WARMUP; i++) {
+                run(recommender, corpus, null, null);
+                run(recommender, corpus, single, null);
+                run(recommender, corpus, parallel, null);
+            }
+            long once = 0;
+            long sequential = 0;
+            long windowed = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                once += run(recommender, corpus, null, null);
+                sequential += run(recommender, corpus, single, null);
+                windowed += run(recommender, corpus, parallel, null);
+            }
+            int[][] expected = new int[size][];
+            int[][] obtained = new int[size][];
+            run(recommender, corpus, null, expected);
+            run(recommender, corpus, parallel, obtained);
+            int different = 0;
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < expected[i].length; j++) {
+                    if (expected[i][j] != obtained[i][j]) {
+                        different++;
+                    }
+                }
+            }
+            System.out.println(String.format("%7d %7.2fms %7.2fms %7.2fms %8.1fx %8.1fx %9d of %d",
+                    length, once / 1e6 / ROUNDS / size, sequential / 1e6 / ROUNDS / size,
+                    windowed / 1e6 / ROUNDS / size, (double) once / sequential,
+                    (double) sequential / windowed, different, size * length));
+        }
+        single.shutdown();
+        parallel.shutdown();
+    }
+}
@@ -32,9 +32,15 @@
  *************************************************************************/
 package org.omegat.core.data;
 
+import java.util.Map;
+
 import org.omegat.tokenizer.ITokenizer;
 
 public interface IProject {
+    boolean isProjectLoaded();
+
+    Map<String, ExternalTMX> getTransMemories();
+
     ProjectProperties getProjectProperties();
     
     ITokenizer getSourceTokenizer();
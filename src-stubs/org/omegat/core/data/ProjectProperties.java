@@ -42,4 +42,8 @@ public class ProjectProperties {
     public Language getTargetLanguage() {
         return new Language("pl");
     }
+
+    public String getProjectInternal() {
+        return "";
+    }
 }
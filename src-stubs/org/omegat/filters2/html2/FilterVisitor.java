@@ -14,4 +14,5 @@ import org.htmlparser.visitors.NodeVisitor;
  */
 public class FilterVisitor extends NodeVisitor {
     public FilterVisitor(HTMLFilter2 htmlfilter, BufferedWriter bufwriter, HTMLOptions options) {}
+    protected String entitiesToChars(String str) {return str;}
 }
@@ -33,6 +33,9 @@
 package org.omegat.util;
 
 public class Log {
+    public static void log(String s) {
+    }
+
     public static void log(Throwable ex) {
     }
 }
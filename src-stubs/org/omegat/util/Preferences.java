@@ -42,6 +42,10 @@ public class Preferences {
         return false;
     }
 
+    public static String getPreference(String name) {
+        return "";
+    }
+
     public static void setPreference(String name, String value) {
     }
 }
@@ -1,5 +1,7 @@
 package org.omegat.gui.exttrans;
 
+import java.util.List;
+import java.util.concurrent.Future;
 import org.omegat.util.Language;
 
 /**
@@ -10,4 +12,17 @@ import org.omegat.util.Language;
  */
 public interface IMachineTranslationEdithints extends IMachineTranslation {
     String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception;
+
+    /**
+     * Method that translates a list of texts asynchronously. Systems able to
+     * translate several texts in a single request do it natively; the rest
+     * send them as paragraphs of an HTML text (see
+     * <code>BatchTranslation.ToHTML</code>).
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param texts Plain texts to be translated.
+     * @return Returns the request sent, which gives the plain translation of
+     * every text, in the same order.
+     */
+    Future<List<String>> getBatchTranslation(Language sLang, Language tLang, List<String> texts);
 }
@@ -33,7 +33,7 @@ import java.awt.Color;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Highlighter.HighlightPainter;
@@ -45,7 +45,6 @@ import org.omegat.gui.editor.EditorController;
 import org.omegat.gui.editor.EditorTextArea3;
 import org.omegat.gui.editor.mark.IMarker;
 import org.omegat.gui.editor.mark.Mark;
-import org.omegat.util.Token;
 
 /**
  * Marker that colours the text in the text area when a proposal from the
@@ -58,29 +57,29 @@ public class EditHintsMarker implements IMarker{
     protected static final HighlightPainter GPAINTER = new DefaultHighlighter.DefaultHighlightPainter(Color.green);
     /** Painter for words in red. */
     protected static final HighlightPainter RPAINTER = new DefaultHighlighter.DefaultHighlightPainter(Color.red);
+    /** Tooltip for the marks computed without the evidence of every system. */
+    protected static final String PARTIAL_TOOLTIP = "Edit hint computed with partial evidence (latency budget exceeded or translation system unavailable)";
+
+    /** Empty list of marks, returned for every entry without hints. */
+    static final List<Mark> NO_MARKS=Collections.emptyList();
 
-    /** List of current marks for the active entry. */
-    private List<Mark> marks;
-    
     /** Object that controls the actions on the matcher for coloring proposals in this text box. */
     private MatcherColoring matcher_coloring;
     
     /** Object that initialises and controls the menu of the EditHints utility. */
     private EditHintsMenu menu;
-    
-    /** Field that contains the last entry being displayed. */
-    private SourceTextEntry last_entry=null;
-    
-    /** Field that contains the last text inserted. */
-    private String text_inserted;
+
+    /** Object that recomputes the hints while an inserted match is edited. */
+    private LiveHints live_hints;
     
     /**
      * Method that returns the text last text inserted in the text box.
-     * Method that returns the text last text inserted in the text box.
-     * @return Returns the value of the variable <code>text_inserted</code>
+     * Method that returns the text last text inserted in the text box, kept
+     * in <code>HintState</code>.
+     * @return Returns the last text inserted.
      */
     public String getTextInserted() {
-        return text_inserted;
+        return HintState.get().getTextInserted();
     }
 
     /**
@@ -89,26 +88,22 @@ public class EditHintsMarker implements IMarker{
      * 
      * @param text_inserted Test inserted in the text box
      */
-    public void setTextInserted(String text_inserted) {
-        this.text_inserted = text_inserted;
-    }
-    
-    /**
-     * Method that sets the last entry being displayed.
-     * Method that sets the last entry being displayed.
-     * @param new_last_entry Entry which have been displayed.
-     */
-    public void setLastEntry(SourceTextEntry new_last_entry) {
-        this.last_entry = new_last_entry;
+    public void setTextInserted(final String text_inserted) {
+        HintState.Update(new HintState.Change() {
+            HintState apply(HintState s) {
+                return s.withTextInserted(text_inserted);
+            }
+        });
     }
 
     /**
      * Method that returns the last entry being displayed.
-     * Method that returns the last entry being displayed.
+     * Method that returns the last entry being displayed, which is set by
+     * <code>HintState.Activate</code>.
      * @return Returns the last entry being displayed.
      */
     public SourceTextEntry getLastEntry() {
-        return last_entry;
+        return HintState.get().getEntry();
     }
     
     /** 
@@ -116,26 +111,31 @@ public class EditHintsMarker implements IMarker{
      * memory.
      * Method that returns the list of marks for the text from the translation
      * memory.
-     * @return Returns the current list of marks.
+     * @return Returns the current list of marks, which cannot be modified.
      */
     public List<Mark> getMarks() {
-        return marks;
+        return HintState.get().getMarks();
     }
     
     /**
      * Method that sets a new list of marks for the marker.
      * Method that sets a new list of marks to replace the current one in the marker.
+     * The marker keeps an unmodifiable copy of the list.
      * @param new_marks New list of marks for the marker.
      */
-    public void setMarks(List<Mark> new_marks){
-        marks=new_marks;
+    public void setMarks(final List<Mark> new_marks){
+        HintState.Update(new HintState.Change() {
+            HintState apply(HintState s) {
+                return s.withMarks(new_marks);
+            }
+        });
     }
     
     /**
      * Method that clears the list of marks in the marker.
      */
     public void clearMarks(){
-        marks.clear();
+        setMarks(NO_MARKS);
     }
     
     public MatcherColoring getMatcherColoring(){
@@ -145,6 +145,10 @@ public class EditHintsMarker implements IMarker{
     public EditHintsMenu getMenu(){
         return this.menu;
     }
+
+    public LiveHints getLiveHints(){
+        return this.live_hints;
+    }
     
     /** 
      * Constructor of the marker.
@@ -152,7 +156,7 @@ public class EditHintsMarker implements IMarker{
     public EditHintsMarker() {
         matcher_coloring=new MatcherColoring(this);
         menu=new EditHintsMenu(this);
-        marks=new LinkedList<Mark>();
+        live_hints=new LiveHints(this);
 
         CoreEvents.registerEntryEventListener(new EntryChangedEventListener(
                 matcher_coloring, this));
@@ -210,6 +214,12 @@ public class EditHintsMarker implements IMarker{
     /**
      * Method that returns the marks for a given entry.
      * Method that returnst the list of marks for each entry in the text area.
+     * OmegaT calls it every time an entry is painted, so it does not compute
+     * anything: the entries which are not active get an empty list, and the
+     * active one gets the marks of the hints computed for the match inserted
+     * (see <code>MatcherColoring.getMarks</code>) or those updated after its
+     * edition. The list returned cannot be modified. The state is read without
+     * locking (see <code>HintState</code>).
      * @param ste Entry for which the marks are requiered.
      * @param sourceText Sourece text in the entry.
      * @param translationText Translation in the entry.
@@ -222,40 +232,64 @@ public class EditHintsMarker implements IMarker{
     public List<Mark> getMarksForEntry(SourceTextEntry ste, String sourceText,
             String translationText, boolean isActive) throws Exception {
         
+        //Only the active entry can have marks
+        HintState state=HintState.get();
+        if(!isActive || ste!=state.getEntry())
+            return NO_MARKS;
+
         //If the text area is not under edition, this means that a new entry is
         //being activated and, therefore, the marks must be reset
         if(!isEditMode(getEditorTextArea().getOmDocument())){
-            marks.clear();
-            return marks;
+            ClearMarks(ste);
+            return NO_MARKS;
         }
-        //If no recommendation is made on thye active match (or no match was
-        //found) 
-        if(matcher_coloring.getRedWords().isEmpty() && matcher_coloring.getGreenWords().isEmpty())
-            return marks;
-        
-        //The marks are obtained only if: a) the ste matches the active one
-        //b) it is active, c) there is at least one match, and d) the text
-        //inserted matches text of the active match
-        if(ste==last_entry && isActive && Core.getMatcher().getActiveMatch()!=null
-                && Core.getEditor().getCurrentTranslation()!=null &&
-                text_inserted.equals(Core.getMatcher().getActiveMatch().translation)){
-            if(matcher_coloring.getRedWords()!=null){
-                for(Token tok: matcher_coloring.getRedWords()){
-                    Mark m=new Mark(Mark.ENTRY_PART.TRANSLATION, tok.getOffset(), tok.getOffset()+tok.getLength());
-                    m.painter=RPAINTER;
-                    marks.add(m);
-                }
+
+        //The marks of the hints are taken when the text inserted matches the
+        //text of the active match; they are taken only once, since later
+        //calls must return the same marks
+        List<Mark> hints=state.getMatchMarks();
+        if(state.getMarks()==hints || hints.isEmpty() || Core.getMatcher().getActiveMatch()==null
+                || Core.getEditor().getCurrentTranslation()==null)
+            return state.getMarks();
+        HintState next=TakeMatchMarks(ste, Core.getMatcher().getActiveMatch().translation);
+        if(next!=state && next.getMarks()==next.getMatchMarks() && next.getEvidence()!=null){
+            //From now on, the hints follow the edits of the match
+            live_hints.Start(ste, next.getEvidence());
+        }
+        return next.getEntry()==ste?next.getMarks():NO_MARKS;
+    }
+
+    /**
+     * Method that clears the marks of an entry if it is still the active one.
+     * @param ste Entry whose marks are cleared.
+     */
+    private static void ClearMarks(final SourceTextEntry ste){
+        HintState.Update(new HintState.Change() {
+            HintState apply(HintState s) {
+                if(s.getEntry()!=ste || s.getMarks().isEmpty())
+                    return s;
+                return s.withSameMarks(NO_MARKS);
             }
+        });
+    }
 
-            if(matcher_coloring.getGreenWords()!=null){
-                for(Token tok: matcher_coloring.getGreenWords()){
-                    Mark m=new Mark(Mark.ENTRY_PART.TRANSLATION, tok.getOffset(), tok.getOffset()+tok.getLength());
-                    m.painter=GPAINTER;
-                    marks.add(m);
-                }
+    /**
+     * Method that replaces the marks of an entry by those of the hints for
+     * the active match, if the entry is still the active one and the text
+     * inserted in it is the translation of the match.
+     * @param ste Entry which gets the marks.
+     * @param translation Translation of the active match.
+     * @return Returns the state published.
+     */
+    private static HintState TakeMatchMarks(final SourceTextEntry ste, final String translation){
+        return HintState.Update(new HintState.Change() {
+            HintState apply(HintState s) {
+                if(s.getEntry()!=ste || s.getMarks()==s.getMatchMarks()
+                        || s.getMatchMarks().isEmpty() || !s.getTextInserted().equals(translation))
+                    return s;
+                return s.withSameMarks(s.getMatchMarks());
             }
-        }
-        return marks;
+        });
     }
     
     
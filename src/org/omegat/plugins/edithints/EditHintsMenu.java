@@ -30,20 +30,49 @@
 package org.omegat.plugins.edithints;
 
 import org.omegat.plugins.edithints.machinetranslation.ApertiumTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.CircuitBreakerTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.CoalescingTranslateEdithints;
 import org.omegat.plugins.edithints.machinetranslation.MicrosoftTranslateEdithints;
+import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.swing.ButtonGroup;
 import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
 import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.SwingUtilities;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import org.omegat.core.Core;
 import org.omegat.core.CoreEvents;
 import org.omegat.core.events.IApplicationEventListener;
+import org.omegat.core.events.IProjectEventListener;
 import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.util.Log;
+import org.omegat.util.Preferences;
 import org.omegat.plugins.edithints.machinetranslation.Google2TranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.HedgingTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.PhraseTableTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.ProcessTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.RateLimitedTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.SharedCacheTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.SubSegmentCache;
+import org.omegat.plugins.edithints.machinetranslation.SubSegmentCacheTranslateEdithints;
+import org.omegat.plugins.edithints.machinetranslation.TranslationCacheClient;
+import org.omegat.plugins.edithints.recommendation.IRecommender;
+import org.omegat.plugins.edithints.recommendation.Recommenders;
+import org.omegat.plugins.edithints.translationmemory.TMEvidenceProvider;
 
 /**
  * Class that manages the menu of the plugin. This class contains all the menu
@@ -55,9 +84,15 @@ public class EditHintsMenu {
     /** Main menu for choosing the edit hints options. */
     private final JMenu edithintsmenu;
 
-    /** Option for activating the geometric recommender. */
+    /** Option for activating the recommender chosen in the recommender sub-menu. */
     final JCheckBoxMenuItem geometricRecommendingMenuItem;
 
+    /** Sub-menu for choosing the recommender. */
+    final JMenu recommendermenu;
+
+    /** Preference storing the directory of the weights of the perceptron recommenders. */
+    public static final String PERCEPTRON_WEIGHTS_DIR="edithints_perceptron_weights_dir";
+
     /** Sub-menu for choosing the machine translation sources. */
     final JMenu translatorsmenu;
 
@@ -70,25 +105,214 @@ public class EditHintsMenu {
     /** Option for activating Google. */
     final JCheckBoxMenuItem googleOption;
 
-    /** Variable for controlling the recommending method which is active. */
-    private static int recommendingEnabled=0;
+    /** Option for activating the offline phrase tables. */
+    final JCheckBoxMenuItem phrasetableOption;
+
+    /** Offline phrase tables, while they are enabled. */
+    private PhraseTableTranslateEdithints phrasetranslator=null;
+
+    /** Option for activating a local machine translation program. */
+    final JCheckBoxMenuItem processOption;
+
+    /** Local machine translation program, while it is enabled. */
+    private ProcessTranslateEdithints processtranslator=null;
+
+    /** Preference storing the command of the local machine translation program. */
+    public static final String PROCESS_COMMAND="edithints_process_command";
+
+    /** Option for using the translation memories of the project. */
+    final JCheckBoxMenuItem memoriesOption;
+
+    /** Evidence obtained from the translation memories of the project. */
+    private final TMEvidenceProvider memoryevidence;
+
+    /** Option for using the translation cache shared by the team. */
+    final JCheckBoxMenuItem sharedcacheOption;
+
+    /** Client of the translation cache shared by the team. */
+    private final TranslationCacheClient sharedcache=new TranslationCacheClient();
+
+    /** Preference storing the URL of the translation cache shared by the team. */
+    public static final String SHARED_CACHE_URL="edithints_shared_cache_url";
+
+    /** Cache of the translations of the sub-segments, shared by all the systems. */
+    private final SubSegmentCache subsegmentcache=new SubSegmentCache();
+
+    /** Option for exporting the cache of the translations of the sub-segments. */
+    final JMenuItem exportCacheItem;
+
+    /** Option for importing a cache of translations of sub-segments. */
+    final JMenuItem importCacheItem;
+
+    /** Preference storing the directory of the offline phrase tables. */
+    public static final String PHRASE_TABLE_DIR="edithints_phrase_table_dir";
+
+    /** Sub-menu for choosing the latency budget. */
+    final JMenu latencymenu;
+
+    /** Latency budgets (in milliseconds) offered in the menu; 0 means no limit. */
+    private static final long[] LATENCY_BUDGETS={400, 800, 1500, 3000, 0};
+
+    /** Sub-menu for choosing the payload budget. */
+    final JMenu payloadmenu;
+
+    /** Payload budgets (in characters) offered in the menu; 0 means no limit. */
+    private static final int[] PAYLOAD_BUDGETS={1000, 2000, 4000, 8000, 0};
+
+    /**
+     * Maximum time (in milliseconds) to wait for the machine translation
+     * systems when computing the recommendations for a match; 0 means no limit.
+     */
+    private static volatile long latencyBudget=800;
+
+    /**
+     * Maximum characters sent to every machine translation system for a
+     * match; 0 means no limit.
+     */
+    private static volatile int payloadBudget=4000;
     
+    /** Sub-menu showing the state of the machine translation systems. */
+    final JMenu statusmenu;
+
     /** List of machine translation available systems. */
     private Map<String,IMachineTranslationEdithints> machinetranslators;
+
+    /** Circuit breakers of the machine translation systems, by name. */
+    private final Map<String,CircuitBreakerTranslateEdithints> breakers=
+            new HashMap<String,CircuitBreakerTranslateEdithints>();
     
     /** Marker of the pluging. */
     EditHintsMarker marker;
     
     /**
-     * Method that returns the value of the variable
-     * <code>recomendingEnabled</code>. This method indicates if the recommender
-     * has been activated and which recommender is chosen.
-     * @return Value of the variable <code>recomendingEnabled</code>.
+     * Method that returns the recommending method which is active (see
+     * <code>HintState.getRecommending</code>). This method indicates if the
+     * recommender has been activated and which recommender is chosen.
+     * @return Recommending method which is active (0 if none).
      */
     public static int getRecommendingEnabled(){
-        return recommendingEnabled;
+        return HintState.get().getRecommending();
     }
     
+    /**
+     * Method that returns the latency budget for obtaining the evidence for a
+     * match.
+     * @return Maximum time (in milliseconds) to wait for the machine
+     * translation systems, or 0 if there is no limit.
+     */
+    public static long getLatencyBudget(){
+        return latencyBudget;
+    }
+
+    /**
+     * Method that returns the payload budget for obtaining the evidence for a
+     * match.
+     * @return Maximum characters sent to every machine translation system for
+     * a match, or 0 if there is no limit.
+     */
+    public static int getPayloadBudget(){
+        return payloadBudget;
+    }
+
+    /**
+     * Method that wraps a machine translation system with the layers used by
+     * the plugin: adaptive rate limiting, hedged requests, circuit breaking,
+     * the cache shared by the team, the cache of the sub-segments and
+     * coalescing of the sub-segments in flight.
+     * @param mt Machine translation system.
+     * @return Returns the wrapped machine translation system.
+     */
+    protected IMachineTranslationEdithints WrapTranslator(IMachineTranslationEdithints mt){
+        return WrapTranslator(mt, true);
+    }
+
+    /**
+     * Method that wraps a machine translation system with the layers used by
+     * the plugin. Local systems are not rate limited, hedged nor looked up in
+     * the shared cache. The hedging layer wraps the rate limiter, so each
+     * duplicate request takes its own token, and it sends no duplicate while
+     * the limiter is holding the requests back.
+     * @param mt Machine translation system.
+     * @param remote <code>true</code> if the system is accessed through the
+     * network.
+     * @return Returns the wrapped machine translation system.
+     */
+    protected IMachineTranslationEdithints WrapTranslator(IMachineTranslationEdithints mt,
+            boolean remote){
+        CircuitBreakerTranslateEdithints breaker=new CircuitBreakerTranslateEdithints(remote?
+                new HedgingTranslateEdithints(new RateLimitedTranslateEdithints(mt)):mt);
+        breakers.put(mt.getName(), breaker);
+        return new CoalescingTranslateEdithints(new SubSegmentCacheTranslateEdithints(remote?
+                new SharedCacheTranslateEdithints(breaker, sharedcache):breaker, subsegmentcache));
+    }
+
+    /**
+     * Method that fills the sub-menu with the state of the circuit breakers of
+     * the machine translation systems enabled and of the index of the
+     * translation memories.
+     */
+    protected void RefreshStatusMenu(){
+        statusmenu.removeAll();
+        boolean empty=true;
+        for(String name: machinetranslators.keySet()){
+            CircuitBreakerTranslateEdithints breaker=breakers.get(name);
+            if(breaker==null)
+                continue;
+            List<String> lines=breaker.describeCircuits();
+            if(lines.isEmpty())
+                lines.add("not used yet");
+            for(String line: lines){
+                JMenuItem item=new JMenuItem(name+" "+line);
+                item.setEnabled(false);
+                statusmenu.add(item);
+                empty=false;
+            }
+        }
+        if(memoriesOption.isSelected()){
+            JMenuItem item=new JMenuItem("Project translation memories: "+
+                    memoryevidence.getStatus());
+            item.setEnabled(false);
+            statusmenu.add(item);
+        }
+        if(!empty){
+            JMenuItem item=new JMenuItem("Sub-segment cache: "+subsegmentcache.describe());
+            item.setEnabled(false);
+            statusmenu.add(item);
+        }
+        if(!empty || memoriesOption.isSelected()){
+            JMenuItem item=new JMenuItem("Repeated entries: "+
+                    marker.getMatcherColoring().getRecommendationCache().describe());
+            item.setEnabled(false);
+            statusmenu.add(item);
+        }
+        if(sharedcache.getURL()!=null){
+            JMenuItem item=new JMenuItem("Shared cache: "+sharedcache.describe());
+            item.setEnabled(false);
+            statusmenu.add(item);
+        }
+        if(empty){
+            if(!memoriesOption.isSelected()){
+                JMenuItem item=new JMenuItem("No translation option enabled");
+                item.setEnabled(false);
+                statusmenu.add(item);
+            }
+        }
+        else{
+            JMenuItem payload=new JMenuItem("Payload: "+PayloadPlanner.DescribeSavings());
+            payload.setEnabled(false);
+            statusmenu.add(payload);
+            JMenuItem reset=new JMenuItem("Retry suspended systems now");
+            reset.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    for(CircuitBreakerTranslateEdithints breaker: breakers.values())
+                        breaker.reset();
+                }
+            });
+            statusmenu.addSeparator();
+            statusmenu.add(reset);
+        }
+    }
+
     /**
      * Method that returns the list of machine translation systems available for
      * recommending. Method that returns the list of machine translation systems
@@ -103,6 +327,35 @@ public class EditHintsMenu {
         return new HashSet<IMachineTranslationEdithints>(machinetranslators.values());
     }
 
+    /**
+     * Method that returns the evidence from the translation memories of the
+     * project, if it is chosen in the menu.
+     * @return Returns the evidence from the translation memories, or
+     * <code>null</code> if it is not used.
+     */
+    public TMEvidenceProvider GetMemoryEvidenceForEditHints(){
+        return memoriesOption.isSelected()?memoryevidence:null;
+    }
+
+    /**
+     * Method that describes the evidence chosen in the menu, so that the
+     * recommendations computed with different evidence are not mixed up.
+     * @return Returns the names of the machine translation systems chosen, in
+     * alphabetical order, whether the translation memories are used and the
+     * latency and payload budgets, which change the evidence collected.
+     */
+    public String DescribeEvidenceForEditHints(){
+        List<String> names=new ArrayList<String>(machinetranslators.keySet());
+        Collections.sort(names);
+        StringBuilder sb=new StringBuilder();
+        for(String name: names)
+            sb.append(name).append('|');
+        if(memoriesOption.isSelected())
+            sb.append("memories");
+        sb.append('|').append(latencyBudget).append('|').append(payloadBudget);
+        return sb.toString();
+    }
+
     /**
      * Constructor of the class, which initialises the control variables in the
      * class and menus.
@@ -114,7 +367,7 @@ public class EditHintsMenu {
         machinetranslators=new HashMap<String,IMachineTranslationEdithints>();
         edithintsmenu=new JMenu("Edit hints");
 
-        geometricRecommendingMenuItem = new JCheckBoxMenuItem("Simple");
+        geometricRecommendingMenuItem = new JCheckBoxMenuItem("Show edit hints");
         geometricRecommendingMenuItem.setEnabled(false);
         geometricRecommendingMenuItem.addActionListener(geometricRecommendingMenuItemActionListener);
         geometricRecommendingMenuItem.setSelected(false);
@@ -128,23 +381,199 @@ public class EditHintsMenu {
         googleOption = new JCheckBoxMenuItem("Google");
         googleOption.addActionListener(gomtListener);
         googleOption.setSelected(false);
+        phrasetableOption = new JCheckBoxMenuItem("Offline phrase table...");
+        phrasetableOption.addActionListener(ptmtListener);
+        phrasetableOption.setSelected(false);
+        processOption = new JCheckBoxMenuItem("Local command...");
+        processOption.addActionListener(prmtListener);
+        processOption.setSelected(false);
+        memoriesOption = new JCheckBoxMenuItem("Project translation memories");
+        memoriesOption.addActionListener(tmListener);
+        memoriesOption.setSelected(false);
+        memoryevidence=new TMEvidenceProvider();
+        sharedcacheOption = new JCheckBoxMenuItem("Shared team cache...");
+        sharedcacheOption.addActionListener(scListener);
+        sharedcacheOption.setSelected(false);
         
         translatorsmenu=new JMenu("Translation options");
         translatorsmenu.add(apertiumOption);
         translatorsmenu.add(microsoftOption);
         translatorsmenu.add(googleOption);
+        translatorsmenu.add(phrasetableOption);
+        translatorsmenu.add(processOption);
+        translatorsmenu.addSeparator();
+        translatorsmenu.add(memoriesOption);
+        translatorsmenu.add(sharedcacheOption);
+        
+        recommendermenu=new JMenu("Recommender");
+        recommendermenu.addMenuListener(new MenuListener() {
+            public void menuSelected(MenuEvent e) {
+                RefreshRecommenderMenu();
+            }
+
+            public void menuDeselected(MenuEvent e) {
+            }
+
+            public void menuCanceled(MenuEvent e) {
+            }
+        });
+        
+        latencymenu=new JMenu("Latency budget");
+        ButtonGroup latencygroup=new ButtonGroup();
+        for(final long budget: LATENCY_BUDGETS){
+            JRadioButtonMenuItem item=new JRadioButtonMenuItem(
+                    (budget>0)?budget+" ms":"No limit");
+            item.setSelected(budget==latencyBudget);
+            item.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    latencyBudget=budget;
+                }
+            });
+            latencygroup.add(item);
+            latencymenu.add(item);
+        }
+        
+        payloadmenu=new JMenu("Payload budget");
+        ButtonGroup payloadgroup=new ButtonGroup();
+        for(final int budget: PAYLOAD_BUDGETS){
+            JRadioButtonMenuItem item=new JRadioButtonMenuItem(
+                    (budget>0)?budget+" characters":"No limit");
+            item.setSelected(budget==payloadBudget);
+            item.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    payloadBudget=budget;
+                }
+            });
+            payloadgroup.add(item);
+            payloadmenu.add(item);
+        }
+        
+        statusmenu=new JMenu("Translation status");
+        statusmenu.addMenuListener(new MenuListener() {
+            public void menuSelected(MenuEvent e) {
+                RefreshStatusMenu();
+            }
+
+            public void menuDeselected(MenuEvent e) {
+            }
+
+            public void menuCanceled(MenuEvent e) {
+            }
+        });
         
         edithintsmenu.add(geometricRecommendingMenuItem);
+        edithintsmenu.add(recommendermenu);
         edithintsmenu.add(translatorsmenu);
+        edithintsmenu.add(latencymenu);
+        edithintsmenu.add(payloadmenu);
+        edithintsmenu.add(statusmenu);
+        
+        exportCacheItem=new JMenuItem("Export hint cache...");
+        exportCacheItem.addActionListener(exportCacheListener);
+        importCacheItem=new JMenuItem("Import hint cache...");
+        importCacheItem.addActionListener(importCacheListener);
+        edithintsmenu.addSeparator();
+        edithintsmenu.add(exportCacheItem);
+        edithintsmenu.add(importCacheItem);
         
         CoreEvents.registerApplicationEventListener(new IApplicationEventListener(){
             public void onApplicationStartup() {
                 Core.getMainWindow().getMainMenu().getOptionsMenu().add(edithintsmenu);
+                //The weights of the perceptrons are loaded only once
+                String dir=Preferences.getPreference(PERCEPTRON_WEIGHTS_DIR);
+                if(dir!=null && dir.length()>0 && new File(dir).isDirectory())
+                    LoadPerceptronWeights(new File(dir), null);
             }
 
             public void onApplicationShutdown() {
             }
         });
+
+        //The phrase tables are compiled when the project is loaded, not in
+        //the first request for hints
+        CoreEvents.registerProjectChangeListener(new IProjectEventListener(){
+            public void onProjectChanged(PROJECT_CHANGE_TYPE eventType) {
+                if(eventType==PROJECT_CHANGE_TYPE.LOAD)
+                    PreparePhraseTables();
+            }
+        });
+    }
+
+    /**
+     * Method that prepares in the background the phrase tables for the
+     * languages of the project, if they are enabled and a project is loaded.
+     */
+    protected void PreparePhraseTables(){
+        PhraseTableTranslateEdithints ptmt=phrasetranslator;
+        if(ptmt!=null && Core.getProject()!=null && Core.getProject().isProjectLoaded())
+            ptmt.prepare(Core.getProject().getProjectProperties().getSourceLanguage(),
+                    Core.getProject().getProjectProperties().getTargetLanguage());
+    }
+
+    /**
+     * Method that fills the sub-menu of the recommenders with those which
+     * are available, the one in use being selected, and the option for loading
+     * the weights of the perceptrons.
+     */
+    protected void RefreshRecommenderMenu(){
+        recommendermenu.removeAll();
+        ButtonGroup group=new ButtonGroup();
+        for(final IRecommender recommender: Recommenders.getAvailable()){
+            JRadioButtonMenuItem item=new JRadioButtonMenuItem(recommender.getName());
+            item.setSelected(recommender==Recommenders.getActive());
+            item.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    Recommenders.setActive(recommender);
+                    if(getRecommendingEnabled()>0)
+                        marker.getMatcherColoring().ApplyRecommendations();
+                }
+            });
+            group.add(item);
+            recommendermenu.add(item);
+        }
+        recommendermenu.addSeparator();
+        JMenuItem weights=new JMenuItem("Perceptron weights...");
+        weights.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser=new JFileChooser(Preferences.getPreference(PERCEPTRON_WEIGHTS_DIR));
+                chooser.setDialogTitle("Directory of the weights ("+Recommenders.PERCEPTRON_WEIGHTS+
+                        ", "+Recommenders.GEOMETRIC_PERCEPTRON_WEIGHTS+")");
+                chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                if(chooser.showOpenDialog(recommendermenu)!=JFileChooser.APPROVE_OPTION)
+                    return;
+                File dir=chooser.getSelectedFile();
+                Preferences.setPreference(PERCEPTRON_WEIGHTS_DIR, dir.getPath());
+                LoadPerceptronWeights(dir, chooser);
+            }
+        });
+        recommendermenu.add(weights);
+    }
+
+    /**
+     * Method that loads the weights of the perceptrons from a directory (see
+     * <code>Recommenders.LoadWeights</code>). The errors are written in the
+     * log of OmegaT and shown to the user.
+     * @param dir Directory containing the weights.
+     * @param parent Component which chose the directory, or <code>null</code>
+     * if it was read from the preferences; in the latter case no warning is
+     * shown if the directory contains no weights.
+     */
+    private void LoadPerceptronWeights(File dir, Component parent){
+        List<String> errors=Recommenders.LoadWeights(dir);
+        if(!errors.isEmpty()){
+            StringBuilder sb=new StringBuilder();
+            for(String error: errors){
+                Log.log("EditHints: could not load the perceptron weights: "+error);
+                sb.append(error).append('\n');
+            }
+            JOptionPane.showMessageDialog(parent, sb.toString(),
+                    "Perceptron weights", JOptionPane.ERROR_MESSAGE);
+        }
+        else if(parent!=null && Recommenders.getAvailable().size()==1){
+            Log.log("EditHints: no perceptron weights found in "+dir);
+            JOptionPane.showMessageDialog(parent, "No weights found in "+dir,
+                    "Perceptron weights", JOptionPane.WARNING_MESSAGE);
+        }
     }
 
     /**
@@ -153,11 +582,11 @@ public class EditHintsMenu {
     protected ActionListener geometricRecommendingMenuItemActionListener = new ActionListener() {
         public void actionPerformed(ActionEvent e) {
             if(geometricRecommendingMenuItem.isSelected()){
-                recommendingEnabled = 1;
+                HintState.SetRecommending(1);
                 marker.getMatcherColoring().ApplyRecommendations();
             }
             else{
-                recommendingEnabled=0;
+                HintState.SetRecommending(0);
                 marker.getMatcherColoring().clear();
                 marker.getMatcherColoring().Unrecomend();
             }
@@ -171,12 +600,13 @@ public class EditHintsMenu {
             if(apertiumOption.isSelected()){
                 geometricRecommendingMenuItem.setEnabled(true);
                 if(!machinetranslators.containsKey(amt.getName()))
-                    machinetranslators.put(amt.getName(), amt);
+                    machinetranslators.put(amt.getName(),
+                            WrapTranslator(amt));
             }
             else{
                 if(machinetranslators.containsKey(amt.getName()))
                     machinetranslators.remove(amt.getName());
-                if(machinetranslators.isEmpty()){
+                if(machinetranslators.isEmpty() && !memoriesOption.isSelected()){
                     geometricRecommendingMenuItem.setSelected(false);
                     geometricRecommendingMenuItem.setEnabled(false);
                     marker.getMatcherColoring().clear();
@@ -193,12 +623,13 @@ public class EditHintsMenu {
             if(googleOption.isSelected()){
                 geometricRecommendingMenuItem.setEnabled(true);
                 if(!machinetranslators.containsKey(gmt.getName()))
-                    machinetranslators.put(gmt.getName(), gmt);
+                    machinetranslators.put(gmt.getName(),
+                            WrapTranslator(gmt));
             }
             else{
                 if(machinetranslators.containsKey(gmt.getName()))
                     machinetranslators.remove(gmt.getName());
-                if(machinetranslators.isEmpty()){
+                if(machinetranslators.isEmpty() && !memoriesOption.isSelected()){
                     geometricRecommendingMenuItem.setSelected(false);
                     geometricRecommendingMenuItem.setEnabled(false);
                     marker.getMatcherColoring().clear();
@@ -215,11 +646,110 @@ public class EditHintsMenu {
             if(microsoftOption.isSelected()){
                 geometricRecommendingMenuItem.setEnabled(true);
                 if(!machinetranslators.containsKey(mmt.getName()))
-                    machinetranslators.put(mmt.getName(), mmt);
+                    machinetranslators.put(mmt.getName(),
+                            WrapTranslator(mmt));
             }
             else{
                 if(machinetranslators.containsKey(mmt.getName()))
                     machinetranslators.remove(mmt.getName());
+                if(machinetranslators.isEmpty() && !memoriesOption.isSelected()){
+                    geometricRecommendingMenuItem.setSelected(false);
+                    geometricRecommendingMenuItem.setEnabled(false);
+                    marker.getMatcherColoring().clear();
+                    marker.getMatcherColoring().Unrecomend();
+                }
+            }
+        }
+    };
+
+    /** Listener which acts when the offline phrase table option is chosen. */
+    protected ActionListener ptmtListener = new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            if(phrasetableOption.isSelected()){
+                //The directory of the phrase tables is asked for the first time
+                String dir=Preferences.getPreference(PHRASE_TABLE_DIR);
+                if(dir==null || dir.length()==0 || !new File(dir).isDirectory()){
+                    JFileChooser chooser=new JFileChooser();
+                    chooser.setDialogTitle("Directory of the phrase tables (sl-tl.txt or sl-tl.bin)");
+                    chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                    if(chooser.showOpenDialog(phrasetableOption)!=JFileChooser.APPROVE_OPTION){
+                        phrasetableOption.setSelected(false);
+                        return;
+                    }
+                    dir=chooser.getSelectedFile().getPath();
+                    Preferences.setPreference(PHRASE_TABLE_DIR, dir);
+                }
+                PhraseTableTranslateEdithints ptmt=new PhraseTableTranslateEdithints(new File(dir));
+                geometricRecommendingMenuItem.setEnabled(true);
+                if(!machinetranslators.containsKey(ptmt.getName())){
+                    phrasetranslator=ptmt;
+                    machinetranslators.put(ptmt.getName(),
+                            WrapTranslator(ptmt, false));
+                    PreparePhraseTables();
+                }
+            }
+            else{
+                PhraseTableTranslateEdithints ptmt=new PhraseTableTranslateEdithints(null);
+                phrasetranslator=null;
+                if(machinetranslators.containsKey(ptmt.getName()))
+                    machinetranslators.remove(ptmt.getName());
+                if(machinetranslators.isEmpty() && !memoriesOption.isSelected()){
+                    geometricRecommendingMenuItem.setSelected(false);
+                    geometricRecommendingMenuItem.setEnabled(false);
+                    marker.getMatcherColoring().clear();
+                    marker.getMatcherColoring().Unrecomend();
+                }
+            }
+        }
+    };
+
+    /** Listener which acts when the local command option is chosen. */
+    protected ActionListener prmtListener = new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            if(processOption.isSelected()){
+                //The command is asked every time, with the last one as default
+                String command=(String)JOptionPane.showInputDialog(processOption,
+                        "Command reading one segment per line and writing its translation\n"
+                        + "({sl} and {tl} are replaced by the language codes), such as\n"
+                        + "apertium -z -u {sl}-{tl}:",
+                        "Local machine translation", JOptionPane.QUESTION_MESSAGE,
+                        null, null, Preferences.getPreference(PROCESS_COMMAND));
+                if(command==null || command.trim().length()==0){
+                    processOption.setSelected(false);
+                    return;
+                }
+                Preferences.setPreference(PROCESS_COMMAND, command.trim());
+                if(processtranslator!=null)
+                    processtranslator.close();
+                processtranslator=new ProcessTranslateEdithints(command.trim());
+                geometricRecommendingMenuItem.setEnabled(true);
+                machinetranslators.put(processtranslator.getName(),
+                        WrapTranslator(processtranslator, false));
+            }
+            else{
+                if(processtranslator!=null){
+                    machinetranslators.remove(processtranslator.getName());
+                    processtranslator.close();
+                    processtranslator=null;
+                }
+                if(machinetranslators.isEmpty() && !memoriesOption.isSelected()){
+                    geometricRecommendingMenuItem.setSelected(false);
+                    geometricRecommendingMenuItem.setEnabled(false);
+                    marker.getMatcherColoring().clear();
+                    marker.getMatcherColoring().Unrecomend();
+                }
+            }
+        }
+    };
+
+    /** Listener which acts when the translation memories option is chosen. */
+    protected ActionListener tmListener = new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            memoryevidence.setEnabled(memoriesOption.isSelected());
+            if(memoriesOption.isSelected()){
+                geometricRecommendingMenuItem.setEnabled(true);
+            }
+            else{
                 if(machinetranslators.isEmpty()){
                     geometricRecommendingMenuItem.setSelected(false);
                     geometricRecommendingMenuItem.setEnabled(false);
@@ -229,4 +759,105 @@ public class EditHintsMenu {
             }
         }
     };
+
+    /** Listener which acts when the shared team cache option is chosen. */
+    protected ActionListener scListener = new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            if(sharedcacheOption.isSelected()){
+                //The URL is asked every time, with the last one as default
+                String url=(String)JOptionPane.showInputDialog(sharedcacheOption,
+                        "URL of the translation cache shared by the team\n"
+                        + "(java -jar EditHints-CacheServer.jar [port] [max entries]):",
+                        "Shared team cache", JOptionPane.QUESTION_MESSAGE,
+                        null, null, Preferences.getPreference(SHARED_CACHE_URL));
+                if(url==null || url.trim().length()==0){
+                    sharedcacheOption.setSelected(false);
+                    return;
+                }
+                Preferences.setPreference(SHARED_CACHE_URL, url.trim());
+                sharedcache.setURL(url.trim());
+            }
+            else{
+                sharedcache.setURL(null);
+            }
+        }
+    };
+
+    /** Listener which acts when the export of the hint cache is chosen. */
+    protected ActionListener exportCacheListener = new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser=new JFileChooser();
+            chooser.setDialogTitle("Export the cache of edit hints");
+            chooser.setSelectedFile(new File("edithints-cache.gz"));
+            if(chooser.showSaveDialog(exportCacheItem)!=JFileChooser.APPROVE_OPTION)
+                return;
+            final File file=chooser.getSelectedFile();
+            RunCacheTask("Export", new CacheTask() {
+                public String run() throws Exception {
+                    return subsegmentcache.Export(file)+" sub-segment translations exported to "+file;
+                }
+            });
+        }
+    };
+
+    /** Listener which acts when the import of a hint cache is chosen. */
+    protected ActionListener importCacheListener = new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser=new JFileChooser();
+            chooser.setDialogTitle("Import a cache of edit hints");
+            if(chooser.showOpenDialog(importCacheItem)!=JFileChooser.APPROVE_OPTION)
+                return;
+            final File file=chooser.getSelectedFile();
+            RunCacheTask("Import", new CacheTask() {
+                public String run() throws Exception {
+                    return subsegmentcache.Import(file)+" sub-segment translations imported from "+file;
+                }
+            });
+        }
+    };
+
+    /** Task on the cache of edit hints run in the background. */
+    private interface CacheTask {
+        /**
+         * Method that runs the task.
+         * @return Returns the message shown when the task finishes.
+         */
+        String run() throws Exception;
+    }
+
+    /**
+     * Method that runs a task on the cache of edit hints in a background
+     * thread, so large files do not block the editor, and shows its result.
+     * @param title Title of the message shown.
+     * @param task Task to be run.
+     */
+    private void RunCacheTask(final String title, final CacheTask task){
+        exportCacheItem.setEnabled(false);
+        importCacheItem.setEnabled(false);
+        Thread thread=new Thread(new Runnable() {
+            public void run() {
+                String message;
+                int type=JOptionPane.INFORMATION_MESSAGE;
+                try{
+                    message=task.run();
+                }
+                catch(Exception ex){
+                    message=title+" failed: "+ex.getMessage();
+                    type=JOptionPane.ERROR_MESSAGE;
+                }
+                final String shown=message;
+                final int shownType=type;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        exportCacheItem.setEnabled(true);
+                        importCacheItem.setEnabled(true);
+                        JOptionPane.showMessageDialog(null, shown,
+                                "Edit hints cache", shownType);
+                    }
+                });
+            }
+        }, "edithints-cache");
+        thread.setDaemon(true);
+        thread.start();
+    }
 }
@@ -0,0 +1,218 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+/**
+ * Decoder of HTML character entities. This class replaces the named entities
+ * from HTML 4 and the numeric entities (decimal and hexadecimal) in a text by
+ * the characters they stand for. The text is scanned only once and the named
+ * entities are looked up by binary search on a sorted table, so no regular
+ * expression nor intermediate string is needed. Unknown or malformed entities
+ * are kept untouched.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class EntityDecoder {
+
+    /** Longest entity name in the table (used to bound the search of ';'). */
+    private static final int MAX_ENTITY_LENGTH = 8;
+
+    /** Names of the HTML 4 entities, sorted. */
+    private static final String[] NAMES = {
+        "AElig", "Aacute", "Acirc", "Agrave", "Alpha", "Aring", "Atilde", "Auml",
+        "Beta", "Ccedil", "Chi", "Dagger", "Delta", "ETH", "Eacute", "Ecirc",
+        "Egrave", "Epsilon", "Eta", "Euml", "Gamma", "Iacute", "Icirc", "Igrave",
+        "Iota", "Iuml", "Kappa", "Lambda", "Mu", "Ntilde", "Nu", "OElig",
+        "Oacute", "Ocirc", "Ograve", "Omega", "Omicron", "Oslash", "Otilde", "Ouml",
+        "Phi", "Pi", "Prime", "Psi", "Rho", "Scaron", "Sigma", "THORN",
+        "Tau", "Theta", "Uacute", "Ucirc", "Ugrave", "Upsilon", "Uuml", "Xi",
+        "Yacute", "Yuml", "Zeta", "aacute", "acirc", "acute", "aelig", "agrave",
+        "alefsym", "alpha", "amp", "and", "ang", "aring", "asymp", "atilde",
+        "auml", "bdquo", "beta", "brvbar", "bull", "cap", "ccedil", "cedil",
+        "cent", "chi", "circ", "clubs", "cong", "copy", "crarr", "cup",
+        "curren", "dArr", "dagger", "darr", "deg", "delta", "diams", "divide",
+        "eacute", "ecirc", "egrave", "empty", "emsp", "ensp", "epsilon", "equiv",
+        "eta", "eth", "euml", "euro", "exist", "fnof", "forall", "frac12",
+        "frac14", "frac34", "frasl", "gamma", "ge", "gt", "hArr", "harr",
+        "hearts", "hellip", "iacute", "icirc", "iexcl", "igrave", "image", "infin",
+        "int", "iota", "iquest", "isin", "iuml", "kappa", "lArr", "lambda",
+        "lang", "laquo", "larr", "lceil", "ldquo", "le", "lfloor", "lowast",
+        "loz", "lrm", "lsaquo", "lsquo", "lt", "macr", "mdash", "micro",
+        "middot", "minus", "mu", "nabla", "nbsp", "ndash", "ne", "ni",
+        "not", "notin", "nsub", "ntilde", "nu", "oacute", "ocirc", "oelig",
+        "ograve", "oline", "omega", "omicron", "oplus", "or", "ordf", "ordm",
+        "oslash", "otilde", "otimes", "ouml", "para", "part", "permil", "perp",
+        "phi", "pi", "piv", "plusmn", "pound", "prime", "prod", "prop",
+        "psi", "quot", "rArr", "radic", "rang", "raquo", "rarr", "rceil",
+        "rdquo", "real", "reg", "rfloor", "rho", "rlm", "rsaquo", "rsquo",
+        "sbquo", "scaron", "sdot", "sect", "shy", "sigma", "sigmaf", "sim",
+        "spades", "sub", "sube", "sum", "sup", "sup1", "sup2", "sup3",
+        "supe", "szlig", "tau", "there4", "theta", "thetasym", "thinsp", "thorn",
+        "tilde", "times", "trade", "uArr", "uacute", "uarr", "ucirc", "ugrave",
+        "uml", "upsih", "upsilon", "uuml", "weierp", "xi", "yacute", "yen",
+        "yuml", "zeta", "zwj", "zwnj"
+    };
+
+    /** Characters corresponding to each name in <code>NAMES</code>. */
+    private static final char[] CHARS = {
+        198, 193, 194, 192, 913, 197, 195, 196, 914, 199, 935, 8225,
+        916, 208, 201, 202, 200, 917, 919, 203, 915, 205, 206, 204,
+        921, 207, 922, 923, 924, 209, 925, 338, 211, 212, 210, 937,
+        927, 216, 213, 214, 934, 928, 8243, 936, 929, 352, 931, 222,
+        932, 920, 218, 219, 217, 933, 220, 926, 221, 376, 918, 225,
+        226, 180, 230, 224, 8501, 945, 38, 8743, 8736, 229, 8776, 227,
+        228, 8222, 946, 166, 8226, 8745, 231, 184, 162, 967, 710, 9827,
+        8773, 169, 8629, 8746, 164, 8659, 8224, 8595, 176, 948, 9830, 247,
+        233, 234, 232, 8709, 8195, 8194, 949, 8801, 951, 240, 235, 8364,
+        8707, 402, 8704, 189, 188, 190, 8260, 947, 8805, 62, 8660, 8596,
+        9829, 8230, 237, 238, 161, 236, 8465, 8734, 8747, 953, 191, 8712,
+        239, 954, 8656, 955, 9001, 171, 8592, 8968, 8220, 8804, 8970, 8727,
+        9674, 8206, 8249, 8216, 60, 175, 8212, 181, 183, 8722, 956, 8711,
+        160, 8211, 8800, 8715, 172, 8713, 8836, 241, 957, 243, 244, 339,
+        242, 8254, 969, 959, 8853, 8744, 170, 186, 248, 245, 8855, 246,
+        182, 8706, 8240, 8869, 966, 960, 982, 177, 163, 8242, 8719, 8733,
+        968, 34, 8658, 8730, 9002, 187, 8594, 8969, 8221, 8476, 174, 8971,
+        961, 8207, 8250, 8217, 8218, 353, 8901, 167, 173, 963, 962, 8764,
+        9824, 8834, 8838, 8721, 8835, 185, 178, 179, 8839, 223, 964, 8756,
+        952, 977, 8201, 254, 732, 215, 8482, 8657, 250, 8593, 251, 249,
+        168, 978, 965, 252, 8472, 958, 253, 165, 255, 950, 8205, 8204
+    };
+
+    private EntityDecoder() {
+    }
+
+    /**
+     * Method that replaces the HTML entities in a text by their characters.
+     * @param text Text to be decoded.
+     * @return Returns the decoded text, or the same object if it contains no
+     * ampersand.
+     */
+    public static String decode(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+        return decode(text, 0, text.length(), new StringBuilder(text.length())).toString();
+    }
+
+    /**
+     * Method that decodes the region <code>[start, end)</code> of a text and
+     * appends the result to a <code>StringBuilder</code>.
+     * @param text Text to be decoded.
+     * @param start First position of the region.
+     * @param end Position after the last one of the region.
+     * @param sb Buffer where the decoded text is appended.
+     * @return Returns <code>sb</code>.
+     */
+    public static StringBuilder decode(String text, int start, int end, StringBuilder sb) {
+        int i = start;
+        while (i < end) {
+            int amp = text.indexOf('&', i);
+            if (amp < 0 || amp >= end) {
+                sb.append(text, i, end);
+                break;
+            }
+            sb.append(text, i, amp);
+            int semicolon = -1;
+            int limit = Math.min(end, amp + MAX_ENTITY_LENGTH + 2);
+            for (int j = amp + 1; j < limit; j++) {
+                if (text.charAt(j) == ';') {
+                    semicolon = j;
+                    break;
+                }
+            }
+            int decoded = semicolon > amp + 1 ? decodeEntity(text, amp + 1, semicolon) : -1;
+            if (decoded >= 0) {
+                sb.append((char) decoded);
+                i = semicolon + 1;
+            } else {
+                sb.append('&');
+                i = amp + 1;
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * Method that decodes the entity between <code>start</code> (just after
+     * the ampersand) and <code>end</code> (the semicolon).
+     * @return Returns the decoded character or -1 if the entity is unknown.
+     */
+    private static int decodeEntity(String text, int start, int end) {
+        if (text.charAt(start) == '#') {
+            int radix = 10;
+            int i = start + 1;
+            if (i < end && (text.charAt(i) == 'x' || text.charAt(i) == 'X')) {
+                radix = 16;
+                i++;
+            }
+            if (i == end) {
+                return -1;
+            }
+            int code = 0;
+            for (; i < end; i++) {
+                int d = Character.digit(text.charAt(i), radix);
+                if (d < 0) {
+                    return -1;
+                }
+                code = code * radix + d;
+            }
+            return code <= Character.MAX_VALUE ? code : -1;
+        }
+        int low = 0;
+        int high = NAMES.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(NAMES[mid], text, start, end);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return CHARS[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method that compares a name in the table with a region of the text
+     * without copying it.
+     */
+    private static int compare(String name, String text, int start, int end) {
+        int len = end - start;
+        int n = Math.min(name.length(), len);
+        for (int i = 0; i < n; i++) {
+            int diff = name.charAt(i) - text.charAt(start + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return name.length() - len;
+    }
+}
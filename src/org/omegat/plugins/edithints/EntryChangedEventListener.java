@@ -72,10 +72,10 @@ public class EntryChangedEventListener implements IEntryEventListener{
      */
     @Override
     public void onEntryActivated(SourceTextEntry newEntry) {
-        match_coloring.clear();
-        marker.setTextInserted("");
-        marker.clearMarks();
-        marker.setLastEntry(newEntry);
+        marker.getLiveHints().Stop();
+        //The state of the new entry has no text inserted, hints or marks, and
+        //the hints being computed for the previous one are dropped
+        HintState.Activate(newEntry);
         EditHintsMarker.getEditorTextArea().getOmDocument().removeDocumentListener(insertion_listener);
         EditHintsMarker.getEditorTextArea().getOmDocument().addDocumentListener(insertion_listener);
 
@@ -0,0 +1,383 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.segmentation.SubSegment;
+import es.ua.dlsi.segmentation.Word;
+import es.ua.dlsi.translationmemory.SegmentDictionary;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.plugins.edithints.machinetranslation.BatchTranslation;
+import org.omegat.plugins.edithints.machinetranslation.CircuitOpenException;
+import org.omegat.plugins.edithints.machinetranslation.PartCountException;
+import org.omegat.plugins.edithints.translationmemory.TMEvidenceProvider;
+import org.omegat.util.Language;
+import org.omegat.util.Log;
+
+/**
+ * Class that collects the evidence used for recommending. This class
+ * machine-translates the sub-segments of the source and target segments of a
+ * translation unit with a set of machine translation systems and builds the
+ * dictionary of sub-segment pairs which are mutual translations; the pairs
+ * found in the translation memories of the project can be added too. It does not
+ * depend on the state of OmegaT, so it can also be used outside the editor.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class EvidenceCollector {
+
+    /** Machine translation systems used, in the order of the requests. */
+    private final List<IMachineTranslationEdithints> translators;
+
+    /** Source language. */
+    private final Language source;
+
+    /** Target language. */
+    private final Language target;
+
+    /** Latency budget in milliseconds (0 means no limit). */
+    private final long budget;
+
+    /** Evidence from the translation memories (it may be <code>null</code>). */
+    private final TMEvidenceProvider memories;
+
+    /** Planner choosing the sub-segments sent to the systems. */
+    private PayloadPlanner planner=new PayloadPlanner(0);
+
+    /** Tells if some evidence was missing in the last call to <code>ObtainEvidence</code>. */
+    private volatile boolean partial=false;
+
+    /**
+     * Constructor of the class.
+     * @param translators Machine translation systems used.
+     * @param source Source language.
+     * @param target Target language.
+     * @param budget Maximum time in milliseconds to wait for the machine
+     * translation systems, or 0 for no limit.
+     */
+    public EvidenceCollector(Collection<IMachineTranslationEdithints> translators,
+            Language source, Language target, long budget){
+        this(translators, null, source, target, budget);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param translators Machine translation systems used.
+     * @param memories Evidence from the translation memories, or
+     * <code>null</code> if it is not used.
+     * @param source Source language.
+     * @param target Target language.
+     * @param budget Maximum time in milliseconds to wait for the machine
+     * translation systems, or 0 for no limit.
+     */
+    public EvidenceCollector(Collection<IMachineTranslationEdithints> translators,
+            TMEvidenceProvider memories, Language source, Language target, long budget){
+        this.translators=new ArrayList<IMachineTranslationEdithints>(translators);
+        this.memories=memories;
+        this.source=source;
+        this.target=target;
+        this.budget=budget;
+    }
+
+    /**
+     * Method that obtains a sub-segment pairs list by splitting two segments
+     * and machine-translating them. The requests to all the machine
+     * translation systems are sent in parallel; if the latency budget expires
+     * before all of them are answered, or some of them fail, the evidence
+     * collected so far is returned and the result is marked as partial (see
+     * <code>isPartial</code>).
+     * @param sourceseg Source segment
+     * @param targetseg Target segment
+     * @return Returns an <code>SegmentDictionary</code> object containing a
+     * list of pairs of sub-segments which are mutual translations.
+     */
+    public SegmentDictionary ObtainEvidence(Segment sourceseg, Segment targetseg){
+
+        List<SubSegment> subsegmentss=sourceseg.AllSubSegmentsInSentence(3);
+        List<SubSegment> subsegmentst=targetseg.AllSubSegmentsInSentence(3);
+
+        partial=false;
+        long deadline=Deadline();
+        PayloadPlanner.Plan plan=Plan(subsegmentss, subsegmentst);
+        List<Future<List<String>>> forward=Submit(plan.getSource(), true);
+        List<Future<List<String>>> backward=Submit(plan.getTarget(), false);
+
+        SegmentDictionary sd=new SegmentDictionary();
+        //The translation memories are queried while the requests are running;
+        //if they are still being indexed the evidence is partial
+        if(memories!=null && !memories.AddEvidence(sd, sourceseg, targetseg))
+            partial=true;
+        for(int i=0;i<forward.size();i++){
+            AddEvidence(sd, subsegmentss, plan.Expand(Collect(i, forward.get(i),
+                    plan.getSource(), true, deadline), subsegmentss, true), true);
+            AddEvidence(sd, subsegmentst, plan.Expand(Collect(i, backward.get(i),
+                    plan.getTarget(), false, deadline), subsegmentst, false), false);
+        }
+        return sd;
+    }
+
+    /**
+     * Method that sets the planner choosing the sub-segments sent to the
+     * machine translation systems. By default, sub-segments without content
+     * are not sent but there is no budget.
+     * @param planner Planner of the requests.
+     */
+    public void setPlanner(PayloadPlanner planner){
+        this.planner=planner;
+    }
+
+    /**
+     * Method that chooses the sub-segments to be sent for a match.
+     * @param subsegmentss Source sub-segments.
+     * @param subsegmentst Target sub-segments.
+     * @return Returns the plan with the sub-segments to be sent.
+     */
+    PayloadPlanner.Plan Plan(List<SubSegment> subsegmentss, List<SubSegment> subsegmentst){
+        return planner.MakePlan(subsegmentss, source.getLanguageCode(),
+                subsegmentst, target.getLanguageCode());
+    }
+
+    /**
+     * Method that returns the evidence from the translation memories used by
+     * this collector.
+     * @return Returns the evidence from the translation memories, or
+     * <code>null</code> if it is not used.
+     */
+    TMEvidenceProvider getMemories(){
+        return memories;
+    }
+
+    /**
+     * Method that marks the evidence obtained as complete before collecting
+     * it with <code>Submit</code> and <code>Collect</code>.
+     */
+    void Reset(){
+        partial=false;
+    }
+
+    /**
+     * Method that marks the evidence obtained as partial.
+     */
+    void SetPartial(){
+        partial=true;
+    }
+
+    /**
+     * Method that returns the time until which the translations are waited
+     * for, if they are requested now.
+     * @return Returns the deadline, as in <code>System.currentTimeMillis()</code>.
+     */
+    long Deadline(){
+        return (budget>0)?System.currentTimeMillis()+budget:Long.MAX_VALUE;
+    }
+
+    /**
+     * Method that sends a list of sub-segments to all the machine translation
+     * systems in parallel, as a batch of texts (see
+     * <code>IMachineTranslationEdithints.getBatchTranslation</code>).
+     * @param subsegments Sub-segments to be translated.
+     * @param sourceside <code>true</code> if the sub-segments are in the
+     * source language and <code>false</code> if they are in the target
+     * language.
+     * @return Returns the requests sent, one for every system (they are
+     * <code>null</code> if there is nothing to translate).
+     */
+    List<Future<List<String>>> Submit(List<SubSegment> subsegments, boolean sourceside){
+        List<String> texts=new ArrayList<String>(subsegments.size());
+        for(SubSegment sub: subsegments)
+            texts.add(sub.toString());
+        List<Future<List<String>>> requests=new ArrayList<Future<List<String>>>();
+        for (IMachineTranslationEdithints mt : translators) {
+            if(subsegments.isEmpty())
+                requests.add(null);
+            else if(sourceside)
+                requests.add(mt.getBatchTranslation(source, target, texts));
+            else
+                requests.add(mt.getBatchTranslation(target, source, texts));
+        }
+        return requests;
+    }
+
+    /**
+     * Method that waits for a request sent with <code>Submit</code>. If the
+     * translation has not one text for every sub-segment, the translations
+     * which can be matched unambiguously are kept and the rest of
+     * sub-segments are requested again until the deadline (see
+     * <code>BatchTranslation.Recover</code>); if the deadline expires while
+     * they are requested, the evidence is marked as partial.
+     * @param system Position of the machine translation system in the list of
+     * systems (and of the request in the list returned by <code>Submit</code>).
+     * @param request Request sent to the machine translation system.
+     * @param subsegments Sub-segments sent.
+     * @param sourceside <code>true</code> if the sub-segments are in the
+     * source language and <code>false</code> if they are in the target
+     * language.
+     * @param deadline Time (as in <code>System.currentTimeMillis()</code>)
+     * until which the translation is waited for.
+     * @return Returns the translation of every sub-segment, or
+     * <code>null</code> if the translation could not be obtained in time or
+     * could not be matched with the sub-segments.
+     */
+    String[] Collect(int system, Future<List<String>> request, List<SubSegment> subsegments,
+            boolean sourceside, long deadline){
+        if(request==null)
+            return new String[0];
+        IMachineTranslationEdithints mt=translators.get(system);
+        List<String> translations=WaitForTranslation(mt, request, deadline);
+        if(translations==null)
+            return null;
+        if(translations.size()!=subsegments.size()){
+            Log.log("EditHints: "+mt.getName()+" translated "+subsegments.size()
+                    +" sub-segments into "+translations.size()+"; recovering them");
+            List<String> texts=new ArrayList<String>(subsegments.size());
+            for(SubSegment sub: subsegments)
+                texts.add(sub.toString());
+            //The new requests are bounded by the same deadline, since this
+            //may run in the event dispatch thread
+            try{
+                translations=BatchTranslation.Recover(mt, sourceside?source:target,
+                        sourceside?target:source, texts, BatchTranslation.ToHTML(translations),
+                        deadline);
+            }
+            catch(PartCountException pce){
+                Log.log("EditHints: "+mt.getName()+": "+pce.getMessage());
+                partial=true;
+                translations=null;
+            }
+            if(deadline!=Long.MAX_VALUE && System.currentTimeMillis()>=deadline)
+                partial=true;
+            if(translations==null)
+                return null;
+        }
+        return translations.toArray(new String[translations.size()]);
+    }
+
+    /**
+     * Method that tells if the evidence obtained in the last call to
+     * <code>ObtainEvidence</code> is partial, that is, if some machine
+     * translation system failed or did not answer within the latency budget,
+     * or the translation memories were not indexed yet. Partial evidence must
+     * not be cached.
+     * @return Returns <code>true</code> if the evidence is partial.
+     */
+    public boolean isPartial(){
+        return partial;
+    }
+
+    /**
+     * Method that waits for a translation until the deadline. If the deadline
+     * expires, the request is cancelled and the evidence is marked as partial.
+     * Failures of the system mark the evidence as partial too, and are logged
+     * except for systems suspended by their circuit breaker.
+     * @param mt Machine translation system.
+     * @param request Request sent to the machine translation system.
+     * @param deadline Time (as in <code>System.currentTimeMillis()</code>)
+     * until which the translation is waited for.
+     * @return Returns the translation, or <code>null</code> if it could not be
+     * obtained in time.
+     */
+    private List<String> WaitForTranslation(IMachineTranslationEdithints mt,
+            Future<List<String>> request, long deadline){
+        try{
+            if(deadline==Long.MAX_VALUE)
+                return request.get();
+            return request.get(Math.max(0, deadline-System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        }
+        catch(TimeoutException te){
+            partial=true;
+            request.cancel(true);
+        }
+        catch(ExecutionException ee){
+            //The evidence of the system is missing, so it must not be kept
+            partial=true;
+            if(ee.getCause() instanceof PartCountException)
+                Log.log("EditHints: "+mt.getName()+": "+ee.getCause().getMessage());
+            else if(!(ee.getCause() instanceof CircuitOpenException)){
+                Log.log("EditHints: "+mt.getName()+" failed to translate the sub-segments");
+                Log.log(ee.getCause());
+            }
+        }
+        catch(InterruptedException ie){
+            partial=true;
+            request.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Method that adds to a <code>SegmentDictionary</code> the pairs of
+     * sub-segments obtained from the translation of a list of sub-segments.
+     * @param sd Dictionary where the pairs are added.
+     * @param subsegments Sub-segments translated.
+     * @param splitten Translation of every sub-segment, as returned by
+     * <code>Collect</code> (it may be <code>null</code>).
+     * @param sourceside <code>true</code> if the sub-segments are in the
+     * source language and <code>false</code> if they are in the target
+     * language.
+     */
+    static void AddEvidence(SegmentDictionary sd, List<SubSegment> subsegments,
+            String[] splitten, boolean sourceside){
+        if(splitten==null)
+            return;
+        for(int i=0;i<subsegments.size();i++){
+            //Sub-segments that could not be translated give no evidence
+            if(splitten[i].trim().length()==0)
+                continue;
+            if(sourceside)
+                sd.AddSegmentPair(subsegments.get(i),
+                        NewSegment(splitten[i].trim()));
+            else
+                sd.AddSegmentPair(NewSegment(splitten[i].trim()),
+                        subsegments.get(i));
+        }
+    }
+
+    /**
+     * Method that creates a <code>Segment</code> from a text. The codes of the
+     * words are assigned by <code>Word</code> through a static map which is
+     * not synchronised, so segments are created while holding the lock of
+     * <code>Word</code>, which allows collecting evidence from several threads.
+     * @param text Text of the segment.
+     * @return Returns the new segment.
+     */
+    public static Segment NewSegment(String text){
+        synchronized(Word.class){
+            return new Segment(text);
+        }
+    }
+}
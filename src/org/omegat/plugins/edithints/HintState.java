@@ -0,0 +1,396 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import org.omegat.core.data.SourceTextEntry;
+import org.omegat.gui.editor.mark.Mark;
+import org.omegat.util.Token;
+
+/**
+ * Class that contains the state of the edit hints shared by the marker, the
+ * matcher colouring and the listeners: the active entry, the text last
+ * inserted in it, the active match and the hints computed for it, the marks
+ * shown in the editor and whether the hints are enabled. A state is never
+ * modified: every change publishes a new state atomically (see
+ * <code>Update</code>), so it can be read from any thread without locking.
+ * <p>
+ * Every state carries a generation number, which grows when a new entry is
+ * activated or the hints of the match are discarded. A computation notes the
+ * generation when it starts and its result is dropped if the generation
+ * changed in the meantime (see <code>SetMatchHints</code> and
+ * <code>SetMarks</code>).
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class HintState {
+
+    /**
+     * Class that computes a new state from the current one. It may be called
+     * several times if other threads publish their states at the same time,
+     * so it must not have side effects.
+     */
+    static abstract class Change {
+        /**
+         * Method that computes the new state.
+         * @param state Current state.
+         * @return Returns the new state, or <code>state</code> if nothing
+         * changes.
+         */
+        abstract HintState apply(HintState state);
+    }
+
+    /** Empty set of words. */
+    private static final Set<Token> NO_WORDS=Collections.emptySet();
+
+    /** State published last. */
+    private static final AtomicReference<HintState> current=new AtomicReference<HintState>(
+            new HintState(0, null, "", -2, 0, NO_WORDS, NO_WORDS, EditHintsMarker.NO_MARKS,
+            false, null, EditHintsMarker.NO_MARKS));
+
+    /** Generation of the state. */
+    private final long generation;
+
+    /** Last entry being displayed. */
+    private final SourceTextEntry entry;
+
+    /** Last text inserted in the text box. */
+    private final String text_inserted;
+
+    /** Index of the last match found (if negative means NULL). */
+    private final int active_match;
+
+    /** Recommending method which is active (0 if none). */
+    private final int recommending;
+
+    /** Words of the match marked in red (to be edited). */
+    private final Set<Token> red_words;
+
+    /** Words of the match marked in green (to be kept). */
+    private final Set<Token> green_words;
+
+    /** Marks for the words of the match, shown when it is inserted in the editor. */
+    private final List<Mark> match_marks;
+
+    /** Tells if some evidence was missing for the hints of the match. */
+    private final boolean partial_evidence;
+
+    /** Evidence obtained for the match, or <code>null</code> if none. */
+    private final IncrementalEvidence evidence;
+
+    /** Marks shown in the editor for the active entry. */
+    private final List<Mark> marks;
+
+    private HintState(long generation, SourceTextEntry entry, String text_inserted,
+            int active_match, int recommending, Set<Token> red_words, Set<Token> green_words,
+            List<Mark> match_marks, boolean partial_evidence, IncrementalEvidence evidence,
+            List<Mark> marks){
+        this.generation=generation;
+        this.entry=entry;
+        this.text_inserted=text_inserted;
+        this.active_match=active_match;
+        this.recommending=recommending;
+        this.red_words=red_words;
+        this.green_words=green_words;
+        this.match_marks=match_marks;
+        this.partial_evidence=partial_evidence;
+        this.evidence=evidence;
+        this.marks=marks;
+    }
+
+    /**
+     * Method that returns the state published last.
+     * @return Returns the current state.
+     */
+    public static HintState get(){
+        return current.get();
+    }
+
+    /**
+     * Method that publishes the state computed from the current one. If
+     * another thread publishes a state meanwhile, the new state is computed
+     * again from that one.
+     * @param change Change to apply.
+     * @return Returns the state published.
+     */
+    static HintState Update(Change change){
+        while(true){
+            HintState state=current.get();
+            HintState next=change.apply(state);
+            if(next==state || current.compareAndSet(state, next))
+                return next;
+        }
+    }
+
+    /**
+     * Method that starts the state of a newly activated entry, with no text
+     * inserted, no hints and no marks, in a new generation.
+     * @param entry Entry activated.
+     */
+    public static void Activate(final SourceTextEntry entry){
+        Update(new Change() {
+            HintState apply(HintState s) {
+                return new HintState(s.generation+1, entry, "", s.active_match, s.recommending,
+                        NO_WORDS, NO_WORDS, EditHintsMarker.NO_MARKS, false, null,
+                        EditHintsMarker.NO_MARKS);
+            }
+        });
+    }
+
+    /**
+     * Method that discards the hints of the match in a new generation, so the
+     * computations in progress for it are dropped. The marks in the editor
+     * are kept.
+     * @return Returns the state published, whose generation must be passed
+     * to <code>SetMatchHints</code>.
+     */
+    public static HintState ClearMatchHints(){
+        return Update(new Change() {
+            HintState apply(HintState s) {
+                return new HintState(s.generation+1, s.entry, s.text_inserted, s.active_match,
+                        s.recommending, NO_WORDS, NO_WORDS, EditHintsMarker.NO_MARKS, false,
+                        null, s.marks);
+            }
+        });
+    }
+
+    /**
+     * Method that publishes the hints computed for the match, unless the
+     * generation changed since the computation started.
+     * @param generation Generation when the computation started.
+     * @param red_words Words of the match to be edited.
+     * @param green_words Words of the match to be kept.
+     * @param match_marks Marks for the words of the match.
+     * @param partial_evidence <code>true</code> if some evidence was missing.
+     * @param evidence Evidence obtained for the match.
+     * @return Returns <code>true</code> if the hints were published and
+     * <code>false</code> if they were dropped.
+     */
+    public static boolean SetMatchHints(final long generation, Set<Token> red_words,
+            Set<Token> green_words, List<Mark> match_marks, final boolean partial_evidence,
+            final IncrementalEvidence evidence){
+        final Set<Token> red=Words(red_words);
+        final Set<Token> green=Words(green_words);
+        final List<Mark> marks=Marks(match_marks);
+        return Update(new Change() {
+            HintState apply(HintState s) {
+                if(s.generation!=generation)
+                    return s;
+                return new HintState(s.generation, s.entry, s.text_inserted, s.active_match,
+                        s.recommending, red, green, marks, partial_evidence, evidence, s.marks);
+            }
+        }).generation==generation;
+    }
+
+    /**
+     * Method that publishes the marks shown in the editor, unless the
+     * generation changed since they were computed.
+     * @param generation Generation when the computation started.
+     * @param new_marks Marks for the active entry.
+     * @return Returns <code>true</code> if the marks were published and
+     * <code>false</code> if they were dropped.
+     */
+    public static boolean SetMarks(final long generation, List<Mark> new_marks){
+        final List<Mark> marks=Marks(new_marks);
+        return Update(new Change() {
+            HintState apply(HintState s) {
+                if(s.generation!=generation)
+                    return s;
+                return s.withSameMarks(marks);
+            }
+        }).generation==generation;
+    }
+
+    /**
+     * Method that publishes the index of the active match.
+     * @param active_match Index of the active match (negative if none).
+     */
+    public static void SetActiveMatch(final int active_match){
+        Update(new Change() {
+            HintState apply(HintState s) {
+                if(s.active_match==active_match)
+                    return s;
+                return new HintState(s.generation, s.entry, s.text_inserted, active_match,
+                        s.recommending, s.red_words, s.green_words, s.match_marks,
+                        s.partial_evidence, s.evidence, s.marks);
+            }
+        });
+    }
+
+    /**
+     * Method that publishes the recommending method which is active.
+     * @param recommending Recommending method (0 if none).
+     */
+    public static void SetRecommending(final int recommending){
+        Update(new Change() {
+            HintState apply(HintState s) {
+                if(s.recommending==recommending)
+                    return s;
+                return new HintState(s.generation, s.entry, s.text_inserted, s.active_match,
+                        recommending, s.red_words, s.green_words, s.match_marks,
+                        s.partial_evidence, s.evidence, s.marks);
+            }
+        });
+    }
+
+    /**
+     * Method that returns a copy of this state with a new text inserted.
+     * @param text_inserted Text inserted in the text box.
+     * @return Returns the new state.
+     */
+    HintState withTextInserted(String text_inserted){
+        return new HintState(generation, entry, text_inserted, active_match, recommending,
+                red_words, green_words, match_marks, partial_evidence, evidence, marks);
+    }
+
+    /**
+     * Method that returns a copy of this state with new marks in the editor.
+     * @param new_marks Marks for the active entry, which are copied.
+     * @return Returns the new state.
+     */
+    HintState withMarks(List<Mark> new_marks){
+        return withSameMarks(Marks(new_marks));
+    }
+
+    /**
+     * Method that returns a copy of this state with the marks in the editor
+     * replaced by a list which is not copied.
+     * @param new_marks Marks for the active entry, which cannot be modified.
+     * @return Returns the new state.
+     */
+    HintState withSameMarks(List<Mark> new_marks){
+        return new HintState(generation, entry, text_inserted, active_match, recommending,
+                red_words, green_words, match_marks, partial_evidence, evidence, new_marks);
+    }
+
+    private static Set<Token> Words(Set<Token> words){
+        return words.isEmpty()?NO_WORDS:Collections.unmodifiableSet(new HashSet<Token>(words));
+    }
+
+    private static List<Mark> Marks(List<Mark> marks){
+        if(marks.isEmpty())
+            return EditHintsMarker.NO_MARKS;
+        return Collections.unmodifiableList(new ArrayList<Mark>(marks));
+    }
+
+    /**
+     * Method that returns the generation of the state.
+     * @return Returns the generation of the state.
+     */
+    public long getGeneration(){
+        return generation;
+    }
+
+    /**
+     * Method that returns the last entry being displayed.
+     * @return Returns the last entry being displayed.
+     */
+    public SourceTextEntry getEntry(){
+        return entry;
+    }
+
+    /**
+     * Method that returns the last text inserted in the text box.
+     * @return Returns the last text inserted in the text box.
+     */
+    public String getTextInserted(){
+        return text_inserted;
+    }
+
+    /**
+     * Method that returns the index of the last match found.
+     * @return Returns the index of the last match found (negative if none).
+     */
+    public int getActiveMatch(){
+        return active_match;
+    }
+
+    /**
+     * Method that returns the recommending method which is active.
+     * @return Returns the recommending method which is active (0 if none).
+     */
+    public int getRecommending(){
+        return recommending;
+    }
+
+    /**
+     * Method that returns the words of the match marked in red.
+     * @return Returns the words marked in red, which cannot be modified.
+     */
+    public Set<Token> getRedWords(){
+        return red_words;
+    }
+
+    /**
+     * Method that returns the words of the match marked in green.
+     * @return Returns the words marked in green, which cannot be modified.
+     */
+    public Set<Token> getGreenWords(){
+        return green_words;
+    }
+
+    /**
+     * Method that returns the marks for the words of the match.
+     * @return Returns the marks for the match, which cannot be modified.
+     */
+    public List<Mark> getMatchMarks(){
+        return match_marks;
+    }
+
+    /**
+     * Method that tells if some evidence was missing for the hints of the
+     * match.
+     * @return Returns <code>true</code> if the evidence is partial.
+     */
+    public boolean isPartialEvidence(){
+        return partial_evidence;
+    }
+
+    /**
+     * Method that returns the evidence obtained for the match.
+     * @return Returns the evidence of the match, or <code>null</code> if none.
+     */
+    public IncrementalEvidence getEvidence(){
+        return evidence;
+    }
+
+    /**
+     * Method that returns the marks shown in the editor for the active entry.
+     * @return Returns the marks for the active entry, which cannot be
+     * modified.
+     */
+    public List<Mark> getMarks(){
+        return marks;
+    }
+}
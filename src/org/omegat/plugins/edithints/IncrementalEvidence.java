@@ -0,0 +1,193 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.segmentation.SubSegment;
+import es.ua.dlsi.translationmemory.SegmentDictionary;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.omegat.plugins.edithints.translationmemory.TMEvidenceProvider;
+
+/**
+ * Class that keeps the evidence obtained for a translation unit so it can be
+ * updated when the target segment is edited. The translations of the source
+ * sub-segments are obtained only once and the translations of the target
+ * sub-segments are kept by their text, so after an edit only the sub-segments
+ * which did not exist before (those touched by the edit) are sent to the
+ * machine translation systems. Translations obtained in an update where the
+ * latency budget expired or some system failed are not kept, so they are
+ * requested again in the next update.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class IncrementalEvidence {
+
+    /** Collector used to send the requests. */
+    private final EvidenceCollector collector;
+
+    /** Source segment of the translation unit. */
+    private final Segment sourceseg;
+
+    /** Sub-segments of the source segment. */
+    private final List<SubSegment> subsegmentss;
+
+    /**
+     * Translations of the source sub-segments from every system which
+     * answered, or <code>null</code> if they have not been obtained yet.
+     */
+    private List<String[]> forward=null;
+
+    /** Translations of the target sub-segments already obtained, by their text. */
+    private final Map<String,List<String>> backward=new HashMap<String,List<String>>();
+
+    /** Tells if some evidence was missing in the last update. */
+    private volatile boolean partial=false;
+
+    /**
+     * Constructor of the class.
+     * @param collector Collector used to send the requests.
+     * @param sourceseg Source segment of the translation unit.
+     */
+    public IncrementalEvidence(EvidenceCollector collector, Segment sourceseg){
+        this.collector=collector;
+        this.sourceseg=sourceseg;
+        this.subsegmentss=sourceseg.AllSubSegmentsInSentence(3);
+    }
+
+    /**
+     * Method that returns the source segment of the translation unit.
+     * @return Returns the source segment of the translation unit.
+     */
+    public Segment getSourceSegment(){
+        return sourceseg;
+    }
+
+    /**
+     * Method that tells if the evidence obtained in the last update is
+     * partial, that is, if some machine translation system failed or did not
+     * answer within the latency budget, or the translation memories were not
+     * indexed yet.
+     * @return Returns <code>true</code> if the evidence is partial.
+     */
+    public boolean isPartial(){
+        return partial;
+    }
+
+    /**
+     * Method that obtains the sub-segment pairs for a new version of the
+     * target segment, reusing the translations already obtained. The
+     * translations missing are planned (see <code>PayloadPlanner</code>),
+     * requested in parallel and waited for within the latency budget.
+     * @param targetseg Target segment
+     * @return Returns an <code>SegmentDictionary</code> object containing a
+     * list of pairs of sub-segments which are mutual translations.
+     */
+    public synchronized SegmentDictionary Update(Segment targetseg){
+        List<SubSegment> subsegmentst=targetseg.AllSubSegmentsInSentence(3);
+
+        //Only the sub-segments with a text not translated before are sent
+        Map<String,SubSegment> missing=new LinkedHashMap<String,SubSegment>();
+        for(SubSegment sub: subsegmentst){
+            String key=sub.toString();
+            if(!backward.containsKey(key) && !missing.containsKey(key))
+                missing.put(key, sub);
+        }
+        List<SubSegment> missingsubs=new ArrayList<SubSegment>(missing.values());
+
+        long deadline=collector.Deadline();
+        PayloadPlanner.Plan plan=collector.Plan((forward==null)?subsegmentss:
+                Collections.<SubSegment>emptyList(), missingsubs);
+        List<Future<List<String>>> fwdrequests=(forward==null)?
+                collector.Submit(plan.getSource(), true):null;
+        List<Future<List<String>>> bwdrequests=missingsubs.isEmpty()?
+                Collections.<Future<List<String>>>emptyList():collector.Submit(plan.getTarget(), false);
+
+        SegmentDictionary sd=new SegmentDictionary();
+        boolean incomplete=false;
+        TMEvidenceProvider memories=collector.getMemories();
+        if(memories!=null && !memories.AddEvidence(sd, sourceseg, targetseg))
+            incomplete=true;
+
+        List<String[]> fwd=forward;
+        if(fwdrequests!=null){
+            collector.Reset();
+            fwd=new ArrayList<String[]>();
+            for(int r=0;r<fwdrequests.size();r++){
+                String[] splitten=plan.Expand(collector.Collect(r, fwdrequests.get(r),
+                        plan.getSource(), true, deadline), subsegmentss, true);
+                if(splitten!=null)
+                    fwd.add(splitten);
+            }
+            if(collector.isPartial())
+                incomplete=true;
+            else
+                forward=fwd;
+        }
+        for(String[] splitten: fwd)
+            EvidenceCollector.AddEvidence(sd, subsegmentss, splitten, true);
+
+        //The new translations are used in this update, but they are only kept
+        //if no system failed or ran out of time
+        Map<String,List<String>> obtained=new HashMap<String,List<String>>();
+        for(String key: missing.keySet())
+            obtained.put(key, new ArrayList<String>());
+        collector.Reset();
+        for(int r=0;r<bwdrequests.size();r++){
+            String[] splitten=plan.Expand(collector.Collect(r, bwdrequests.get(r),
+                    plan.getTarget(), false, deadline), missingsubs, false);
+            if(splitten==null)
+                continue;
+            for(int i=0;i<missingsubs.size();i++){
+                if(splitten[i].trim().length()>0)
+                    obtained.get(missingsubs.get(i).toString()).add(splitten[i].trim());
+            }
+        }
+        if(collector.isPartial())
+            incomplete=true;
+        else
+            backward.putAll(obtained);
+
+        for(SubSegment sub: subsegmentst){
+            String key=sub.toString();
+            List<String> translations=backward.get(key);
+            if(translations==null)
+                translations=obtained.get(key);
+            for(String translation: translations)
+                sd.AddSegmentPair(EvidenceCollector.NewSegment(translation), sub);
+        }
+        partial=incomplete;
+        return sd;
+    }
+}
@@ -0,0 +1,203 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.segmentation.Word;
+import es.ua.dlsi.translationmemory.SegmentDictionary;
+import es.ua.dlsi.translationmemory.TranslationUnit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import org.omegat.core.Core;
+import org.omegat.core.data.SourceTextEntry;
+import org.omegat.gui.editor.mark.Mark;
+import org.omegat.plugins.edithints.machinetranslation.TranslationExecutor;
+import org.omegat.tokenizer.ITokenizer;
+import org.omegat.util.Token;
+
+/**
+ * Class that keeps the edit hints up to date while the translator edits a
+ * match inserted in the editor. Every change in the translation restarts a
+ * timer; when the translator pauses, the translation is tokenised again and
+ * the recommendation is recomputed in the background with the evidence of the
+ * match (see <code>IncrementalEvidence</code>), so only the sub-segments
+ * touched by the edits are translated. The new marks replace the old ones
+ * unless the translation changed again in the meantime or a new generation
+ * of hints was started (see <code>HintState</code>).
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class LiveHints {
+
+    /** Pause in the typing (in milliseconds) after which the hints are recomputed. */
+    static final int DELAY=300;
+
+    /** The marker of the plugin. */
+    private final EditHintsMarker marker;
+
+    /** Timer started by every change in the translation. */
+    private final Timer timer;
+
+    /** Evidence of the match inserted, or <code>null</code> if no match is being edited. */
+    private IncrementalEvidence evidence=null;
+
+    /** Entry where the match was inserted. */
+    private SourceTextEntry entry=null;
+
+    /** Identifier of the last computation; older ones are discarded. */
+    private final AtomicInteger generation=new AtomicInteger();
+
+    /**
+     * Constructor of the class.
+     * @param marker The marker of the plugin.
+     */
+    public LiveHints(EditHintsMarker marker){
+        this.marker=marker;
+        this.timer=new Timer(DELAY, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                Recompute();
+            }
+        });
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Method that starts following the edits of a match inserted in an entry.
+     * It must be called from the event dispatch thread.
+     * @param entry Entry where the match was inserted.
+     * @param evidence Evidence obtained for the match.
+     */
+    public void Start(SourceTextEntry entry, IncrementalEvidence evidence){
+        if(this.entry==entry && this.evidence==evidence)
+            return;
+        Stop();
+        this.entry=entry;
+        this.evidence=evidence;
+    }
+
+    /**
+     * Method that stops following the edits and discards any computation in
+     * progress. It must be called from the event dispatch thread.
+     */
+    public void Stop(){
+        timer.stop();
+        generation.incrementAndGet();
+        evidence=null;
+        entry=null;
+    }
+
+    /**
+     * Method called for every change in the translation, which (re)starts the
+     * timer if a match is being edited.
+     */
+    public void Schedule(){
+        if(evidence!=null)
+            timer.restart();
+    }
+
+    /**
+     * Method that recomputes the hints for the current translation in the
+     * background.
+     */
+    private void Recompute(){
+        final IncrementalEvidence current=evidence;
+        final SourceTextEntry ste=entry;
+        if(current==null)
+            return;
+        if(Core.getEditor().getCurrentEntry()!=ste){
+            Stop();
+            return;
+        }
+        final String translation=Core.getEditor().getCurrentTranslation();
+        if(translation==null)
+            return;
+        final String srctext=ste.getSrcText();
+        final ITokenizer tokenizer=Core.getProject().getTargetTokenizer();
+        final int id=generation.incrementAndGet();
+        //The marks are dropped if the entry or its hints change meanwhile
+        final long state=HintState.get().getGeneration();
+        TranslationExecutor.getExecutor().submit(new Runnable() {
+            public void run() {
+                //Tokenising the translation as the matches are tokenised
+                Token[] tokens=tokenizer.tokenizeAllExactly(translation);
+                List<Token> wordtokens=new ArrayList<Token>(tokens.length);
+                List<Word> words=new LinkedList<Word>();
+                Segment targetseg;
+                synchronized(Word.class){
+                    for(Token token: tokens){
+                        String word=translation.substring(token.getOffset(),
+                                token.getOffset()+token.getLength());
+                        if(!word.matches("\\s")){
+                            wordtokens.add(token);
+                            words.add(new Word(word));
+                        }
+                    }
+                    targetseg=new Segment(words);
+                }
+
+                SegmentDictionary sd=current.Update(targetseg);
+                if(id!=generation.get())
+                    return;
+                int[] result=MatcherColoring.Recommend(srctext,
+                        new TranslationUnit(current.getSourceSegment(), targetseg), sd);
+
+                final List<Mark> marks=new ArrayList<Mark>();
+                for(int j=0;result!=null && j<result.length && j<wordtokens.size();j++){
+                    Token token=wordtokens.get(j);
+                    if(result[j]==0)
+                        continue;
+                    Mark m=new Mark(Mark.ENTRY_PART.TRANSLATION, token.getOffset(),
+                            token.getOffset()+token.getLength());
+                    m.painter=(result[j]==-1)?EditHintsMarker.RPAINTER:EditHintsMarker.GPAINTER;
+                    if(current.isPartial())
+                        m.toolTipText=EditHintsMarker.PARTIAL_TOOLTIP;
+                    marks.add(m);
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        //The marks are discarded if the translation changed
+                        //while they were computed
+                        if(id!=generation.get() || Core.getEditor().getCurrentEntry()!=ste
+                                || !translation.equals(Core.getEditor().getCurrentTranslation()))
+                            return;
+                        if(HintState.SetMarks(state, marks))
+                            Core.getEditor().remarkOneMarker(EditHintsMarker.class.getName());
+                    }
+                });
+            }
+        });
+    }
+}
@@ -29,15 +29,13 @@
 
 package org.omegat.plugins.edithints;
 
-import es.ua.dlsi.recommendation.GeometricRecommender;
 import es.ua.dlsi.segmentation.Segment;
-import es.ua.dlsi.segmentation.SubSegment;
 import es.ua.dlsi.segmentation.Word;
 import es.ua.dlsi.translationmemory.SegmentDictionary;
 import es.ua.dlsi.translationmemory.TranslationUnit;
 import java.awt.Color;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -49,12 +47,11 @@ import org.omegat.core.Core;
 import org.omegat.core.CoreEvents;
 import org.omegat.core.events.IApplicationEventListener;
 import org.omegat.core.matching.NearString;
-import org.omegat.filters2.html2.FilterVisitor;
-import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.gui.editor.mark.Mark;
 import org.omegat.gui.matches.MatchesTextArea;
+import org.omegat.plugins.edithints.recommendation.Recommenders;
+import org.omegat.plugins.edithints.recommendation.WindowedRecommendation;
 import org.omegat.tokenizer.ITokenizer;
-import org.omegat.util.Language;
-import org.omegat.util.Log;
 import org.omegat.util.Token;
 import org.omegat.util.gui.Styles;
 
@@ -63,21 +60,34 @@ import org.omegat.util.gui.Styles;
  * control variables and methods for performing the coloring on the matcher text
  * area. This class interacts with the <code>EditHintsMarker</code> to use the
  * coloring information found in the translation memory on the inserted
- * translation units.
+ * translation units, which is published in <code>HintState</code>.
  * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
  */
 public class MatcherColoring {
-    /** List of words marked as red (to be edited). */
-    protected Set<Token> red_words;
+    /** Field of <code>MatchesTextArea</code> with the index of the active match. */
+    private static Field active_match_field=null;
 
-    /** List of words marked as green (to be edited). */
-    protected Set<Token> green_words;
+    /**
+     * Tells if the plugin is changing the matcher, so the events it causes
+     * are ignored. It is only accessed from the event dispatch thread.
+     */
+    private boolean painting=false;
+
+    /** Tells if a check of the active match is already scheduled. */
+    private boolean settle_pending=false;
 
-    /** Last match found (if the index is negative means NULL). */
-    private static int former_match=-2;
+    /** Tells if the text of the matcher was replaced since the last check. */
+    private boolean repopulated=false;
 
     /** The marker of the plugin. */
     private EditHintsMarker marker;
+
+    /** Source text of the last entry recommended and its segment. */
+    private static volatile Object[] last_source=null;
+
+    /** Recommendations computed for the matches of the project. */
+    private final RecommendationCache recommendations=
+            new RecommendationCache(RecommendationCache.DEFAULT_CAPACITY);
     
     /**
      * Class constructor.
@@ -85,8 +95,6 @@ public class MatcherColoring {
      */
     public MatcherColoring(EditHintsMarker marker){
         this.marker=marker;
-        green_words=new HashSet<Token>();
-        red_words=new HashSet<Token>();
         
         // When the application is started up, the DocumentListener for the
         // matching text area is created
@@ -95,22 +103,18 @@ public class MatcherColoring {
                 
                 MatchesTextArea matcher=(MatchesTextArea)Core.getMatcher();
                 matcher.getDocument().addDocumentListener(new DocumentListener(){
-                    //When a change is registered, if the active match changed,
-                    //the recommendations are re-computed
+                    //The changes are not processed one by one: they only
+                    //schedule a check of the active match once they settle
                     public void changedUpdate(DocumentEvent e) {
-                        int activeMatch=getActiveMatchIndex();
-                        if(former_match!=activeMatch){
-                            former_match=activeMatch;
-                            ApplyRecommendations();
-                        }
+                        MatcherChanged(false);
                     }
 
                     public void insertUpdate(DocumentEvent e) {
-                        former_match=getActiveMatchIndex();
+                        MatcherChanged(true);
                     }
 
                     public void removeUpdate(DocumentEvent e) {
-                        former_match=getActiveMatchIndex();
+                        MatcherChanged(true);
                     }
                 });
             }
@@ -120,12 +124,52 @@ public class MatcherColoring {
         });
     }
 
+    /**
+     * Method called for every change in the document of the matcher. The
+     * matcher fires many events while it is filled and the colouring fires one
+     * for every word, so the changes are coalesced: the first one schedules a
+     * single check of the active match after the pending events are processed
+     * and the changes made by the plugin itself are ignored.
+     * @param textchanged <code>true</code> if the text of the matcher changed
+     * and <code>false</code> if only its attributes changed.
+     */
+    private void MatcherChanged(boolean textchanged){
+        if(painting)
+            return;
+        if(textchanged)
+            repopulated=true;
+        if(!settle_pending){
+            settle_pending=true;
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    MatcherSettled();
+                }
+            });
+        }
+    }
+
+    /**
+     * Method that re-computes the recommendations if the active match changed
+     * since the last check, or if the matcher was filled again and there is
+     * an active match.
+     */
+    private void MatcherSettled(){
+        settle_pending=false;
+        int activeMatch=getActiveMatchIndex();
+        boolean changed=(HintState.get().getActiveMatch()!=activeMatch) ||
+                (repopulated && activeMatch>=0);
+        repopulated=false;
+        HintState.SetActiveMatch(activeMatch);
+        if(changed)
+            ApplyRecommendations();
+    }
+
     /**
      * Method that returs the list of words marked in red.
      * @return List of words marked in red.
      */
     public Set<Token> getRedWords() {
-        return red_words;
+        return HintState.get().getRedWords();
     }
 
     /**
@@ -133,15 +177,26 @@ public class MatcherColoring {
      * @return List of words marked in green.
      */
     public Set<Token> getGreenWords() {
-        return green_words;
+        return HintState.get().getGreenWords();
     }
     
+    /**
+     * Method that returns the marks for the words of the current match in the
+     * editor, which are computed when the match is coloured.
+     * @return Returns the marks for the current match, which cannot be
+     * modified.
+     */
+    public List<Mark> getMarks() {
+        return HintState.get().getMatchMarks();
+    }
+
     /**
      * Method that clears the list of green and red words for the current match.
+     * The recommendations being computed for the match are discarded.
+     * @return Returns the generation of the hints after clearing them.
      */
-    public void clear(){
-        green_words.clear();
-        red_words.clear();
+    public long clear(){
+        return HintState.ClearMatchHints().getGeneration();
     }
     
     /**
@@ -154,8 +209,13 @@ public class MatcherColoring {
             @Override
             public void run()
             {
-                //Before starting, lists of words (green and red) are reset
-                clear();
+                //Before starting, lists of words (green and red) are reset;
+                //the hints are published only if they are not reset again
+                long generation=clear();
+                Set<Token> red_words=new HashSet<Token>();
+                Set<Token> green_words=new HashSet<Token>();
+                boolean partial_evidence=false;
+                IncrementalEvidence evidence=null;
         
                 //Checking if there is any match
                 NearString match = Core.getMatcher().getActiveMatch();
@@ -198,15 +258,34 @@ public class MatcherColoring {
                     TranslationUnit tu=new TranslationUnit(sourceseg, targetseg);
                     int[] result=null;
                     if(EditHintsMenu.getRecommendingEnabled()==1){
-                        SegmentDictionary sd=ObtainEvidence(sourceseg, targetseg);
+                        //Repeated entries which get the same match reuse the
+                        //recommendation computed for the first of them
+                        String srctext=Core.getEditor().getCurrentEntry().getSrcText();
+                        String key=RecommendationCache.Key(srctext, match.source,
+                                match.translation, marker.getMenu().DescribeEvidenceForEditHints()+
+                                "|"+Recommenders.getActive().getName());
+                        RecommendationCache.Recommendation cached=recommendations.get(key);
+                        if(cached!=null){
+                            //Only recommendations from complete evidence are
+                            //cached, whatever the state of the evidence now
+                            result=cached.getRecommendation();
+                            evidence=cached.getEvidence();
+                            partial_evidence=false;
+                        }
+                        else{
+                            evidence=NewEvidence(sourceseg);
+                            SegmentDictionary sd=evidence.Update(targetseg);
+                            partial_evidence=evidence.isPartial();
 
-                        tu.CollectEvidences(sd, 3, false);
-                        result=GeometricRecommender.MakeRecommendation(new Segment(
-                                Core.getEditor().getCurrentEntry().getSrcText()), tu, 3,
-                                false, null, null, 0.5);
+                            result=Recommend(srctext, tu, sd);
+                            if(result!=null && !partial_evidence)
+                                recommendations.put(key, new RecommendationCache.Recommendation(
+                                        result, evidence));
+                        }
                     }
 
-                    //Colouring the words on the text area
+                    //Colouring the words on the text area; the events caused
+                    //are ignored by the listener of the matcher
                     if(result!=null){
                         List<Integer> delimiters;
 
@@ -219,6 +298,7 @@ public class MatcherColoring {
                             nsfe.printStackTrace(System.err);
                             System.exit(-1);
                         }
+                        painting=true;
                         try{
                             if(delimitersField!=null){
                                 delimiters=(List<Integer>)delimitersField.get(
@@ -226,6 +306,7 @@ public class MatcherColoring {
 
                                 int targetstart = delimiters.get(activeMatchIdx) +
                                         match.source.length()+1;
+                                List<Mark> hintmarks=new ArrayList<Mark>();
                                 
                                 for (int i = 0, j=0; i < tokens.length; i++) {
                                     Token token = tokens[i];
@@ -235,6 +316,9 @@ public class MatcherColoring {
                                     if(!match.translation.substring(token.getOffset(),
                                             token.getOffset() + token.getLength()).matches("\\s")){
                                         ((MatchesTextArea)Core.getMatcher()).select(tokstart, tokend);
+                                        if (result[j]!=0)
+                                            hintmarks.add(HintMark(token, result[j]==1,
+                                                    partial_evidence));
                                         if (result[j]==-1) {
                                             red_words.add(token);
                                             ((MatchesTextArea)Core.getMatcher()).setCharacterAttributes(
@@ -250,18 +334,41 @@ public class MatcherColoring {
                                         j++;
                                     }
                                 }
+                                HintState.SetMatchHints(generation, red_words, green_words,
+                                        hintmarks, partial_evidence, evidence);
                             }
                         }
                         catch(IllegalAccessException iae){
                             iae.printStackTrace(System.err);
                             System.exit(-1);
                         }
+                        finally{
+                            painting=false;
+                        }
                     }
                 }
             }
         });
     }
     
+    /**
+     * Method that builds the mark shown in the editor for a word of the
+     * current match.
+     * @param token Word in the translation of the match.
+     * @param keep <code>true</code> if the word should be kept and
+     * <code>false</code> if it should be changed.
+     * @param partial <code>true</code> if some evidence was missing.
+     * @return Returns the mark for the word.
+     */
+    private static Mark HintMark(Token token, boolean keep, boolean partial){
+        Mark m=new Mark(Mark.ENTRY_PART.TRANSLATION, token.getOffset(),
+                token.getOffset()+token.getLength());
+        m.painter=keep?EditHintsMarker.GPAINTER:EditHintsMarker.RPAINTER;
+        if(partial)
+            m.toolTipText=EditHintsMarker.PARTIAL_TOOLTIP;
+        return m;
+    }
+
     /**
      * Method that resets the format of the text in the matching text area. This
      * method removes the colouring from the matching text area.
@@ -275,17 +382,10 @@ public class MatcherColoring {
             @Override
             public void run()
             {
-                //
-                Field actMatch=null;
+                //The events caused by repainting the match are ignored
+                Field actMatch=getActiveMatchField();
                 int activeMatch=-1;
-                try{
-                    actMatch= MatchesTextArea.class.getDeclaredField("activeMatch");
-                }
-                catch(NoSuchFieldException nsfe){
-                    nsfe.printStackTrace(System.err);
-                    System.exit(-1);
-                }
-                actMatch.setAccessible(true);
+                painting=true;
                 try{
                     activeMatch=(Integer)actMatch.get(Core.getMatcher());
                     actMatch.set(Core.getMatcher(), -1);
@@ -295,6 +395,9 @@ public class MatcherColoring {
                     iae.printStackTrace(System.err);
                     System.exit(-1);
                 }
+                finally{
+                    painting=false;
+                }
                 Core.getEditor().remarkOneMarker(EditHintsMarker.class.getName());
             }
         });
@@ -311,16 +414,8 @@ public class MatcherColoring {
      * <code>MatchesTextArea</code>.
      */
     public static int getActiveMatchIndex(){
-        Field actMatch=null;
+        Field actMatch=getActiveMatchField();
         int activeMatch=-1;
-        try{
-            actMatch= MatchesTextArea.class.getDeclaredField("activeMatch");
-        }
-        catch(NoSuchFieldException nsfe){
-            nsfe.printStackTrace(System.err);
-            System.exit(-1);
-        }
-        actMatch.setAccessible(true);
         try{
             activeMatch=(Integer)actMatch.get(Core.getMatcher());
         }
@@ -332,99 +427,114 @@ public class MatcherColoring {
     }
     
     /**
-     * Method that obtains a sub-segment pairs list by splitting two segments
-     * and machine-translating them.
+     * Method that returns the private field <code>activeMatch</code> of
+     * <code>MatchesTextArea</code>, made accessible. The field is looked up
+     * only once.
+     * @return Returns the field with the index of the active match.
+     */
+    private static synchronized Field getActiveMatchField(){
+        if(active_match_field==null){
+            try{
+                Field actMatch=MatchesTextArea.class.getDeclaredField("activeMatch");
+                actMatch.setAccessible(true);
+                active_match_field=actMatch;
+            }
+            catch(NoSuchFieldException nsfe){
+                nsfe.printStackTrace(System.err);
+                System.exit(-1);
+            }
+        }
+        return active_match_field;
+    }
+
+    /**
+     * Method that prepares the evidence for a source segment, which obtains
+     * the sub-segment pairs for every target segment by splitting both
+     * segments and machine-translating them with the systems chosen in the
+     * menu (see <code>EvidenceCollector</code>), and looking them up in the
+     * translation memories of the project if chosen in the menu. If the
+     * latency budget chosen in the menu expires before all the systems answer,
+     * the evidence is marked as partial (see
+     * <code>IncrementalEvidence.isPartial</code>).
      * @param sourceseg Source segment
-     * @param targetseg Target segment
-     * @return Returns an <code>SegmentDictionary</code> object containing a
-     * list of pairs of sub-segments which are mutual translations.
+     * @return Returns the evidence for the source segment, to be updated with
+     * the target segment.
      */
-    public SegmentDictionary ObtainEvidence(Segment sourceseg, Segment targetseg){
-        
-        Language source = Core.getProject().getProjectProperties().getSourceLanguage();
-        Language target = Core.getProject().getProjectProperties().getTargetLanguage();
-        
-        List<SubSegment> subsegmentss=sourceseg.AllSubSegmentsInSentence(3);
-        List<SubSegment> subsegmentst=targetseg.AllSubSegmentsInSentence(3);
-
-        SegmentDictionary sd=new SegmentDictionary();
-        for (IMachineTranslationEdithints mt : 
-                marker.getMenu().GetMachineTranslatorsForEditHints()) {
-            try {
-
-                //Using paragraph tags to to sepparate the sub-segments to translate
-                StringBuilder sb=new StringBuilder("<html>");
-                for(SubSegment sub: subsegmentss){
-                    sb.append("<p>");
-                    sb.append(sub.toString());
-                    sb.append("</p>");
-                }
-                sb.append("</html>");
-                String trans=mt.getHTMLTranslation(source, target, sb.toString());
-                if(trans!=null){
-                    if(trans.matches("&.*;")){
-                        FilterVisitor fv=new FilterVisitor(null, null, null);
-                        Method entitiesToChars = FilterVisitor.class.
-                                getDeclaredMethod("entitiesToChars");
-                        entitiesToChars.setAccessible(true);
-                        trans=(String) entitiesToChars.invoke(fv,trans);//new FilterVisitor(null, null, null).entitiesToChars(trans);
-                    }
-                    String[] splitten=trans.substring(0, trans.length()).replace(
-                            "<html><p>", "").replace("</p></html>", "").split("</p><p>");
-                    if(splitten.length!=subsegmentss.size()){
-                        System.err.println("Error: sub-segments not correctly"
-                                + "translated for word keeping recomendation:");
-                        for(int i=0;i<splitten.length;i++){
-                            System.err.println(splitten[i]+" -> "+
-                                    subsegmentss.get(i));
-                        }
-                    }
-                    else{
-                        for(int i=0;i<subsegmentss.size();i++){
-                            sd.AddSegmentPair(subsegmentss.get(i),
-                                    new Segment(splitten[i].trim()));
-                        }
-                    }
-                }
+    public IncrementalEvidence NewEvidence(Segment sourceseg){
+        EvidenceCollector collector=new EvidenceCollector(
+                marker.getMenu().GetMachineTranslatorsForEditHints(),
+                marker.getMenu().GetMemoryEvidenceForEditHints(),
+                Core.getProject().getProjectProperties().getSourceLanguage(),
+                Core.getProject().getProjectProperties().getTargetLanguage(),
+                EditHintsMenu.getLatencyBudget());
+        collector.setPlanner(new PayloadPlanner(EditHintsMenu.getPayloadBudget()));
+        return new IncrementalEvidence(collector, sourceseg);
+    }
 
-                sb=new StringBuilder("<html>");
-                for(SubSegment sub: subsegmentst){
-                    sb.append("<p>");
-                    sb.append(sub.toString());
-                    sb.append("</p>");
-                }
-                sb.append("</html>");
-                trans=mt.getHTMLTranslation(target, source, sb.toString());
-                if(trans!=null){
-                    if(trans.matches(".*&.*;.*")){
-                        FilterVisitor fv=new FilterVisitor(null, null, null);
-                        Method entitiesToChars = FilterVisitor.class.
-                                getDeclaredMethod("entitiesToChars");
-                        entitiesToChars.setAccessible(true);
-                        trans=(String) entitiesToChars.invoke(fv,trans);
-                    }
-                    String[] splitten=trans.substring(0, trans.length()).
-                            replace("<html><p>", "").replace("</p></html>",
-                            "").split("</p><p>");
-                    if(splitten.length!=subsegmentst.size()){
-                        System.err.println("Error: sub-segments not correctly"
-                                + "translated for word keeping recomendation:");
-                        for(int i=0;i<splitten.length;i++){
-                            System.err.println(splitten[i]+" -> " +
-                                    subsegmentst.get(i));
-                        }
-                    }
-                    else{
-                        for(int i=0;i<subsegmentst.size();i++){
-                            sd.AddSegmentPair(new Segment(splitten[i].trim()),
-                                    subsegmentst.get(i));
-                        }
-                    }
-                }
-            } catch (Exception ex) {
-                Log.log(ex);
-            }
+    /**
+     * Method that returns the evidence obtained for the last match
+     * recommended, which can be updated when the match is edited.
+     * @return Returns the evidence of the last match, or <code>null</code> if
+     * no recommendation was made.
+     */
+    public IncrementalEvidence getEvidence(){
+        return HintState.get().getEvidence();
+    }
+
+    /**
+     * Method that computes the recommendation for the words of the target
+     * segment of a translation unit with the recommender chosen in the menu
+     * (see <code>Recommenders</code>).
+     * @param srctext Source text of the entry being translated.
+     * @param tu Translation unit (the match).
+     * @param sd Evidence obtained for the translation unit.
+     * @return Returns, for every word in the target segment, 1 if it should be
+     * kept, -1 if it should be changed and 0 if there is no evidence.
+     */
+    static int[] Recommend(String srctext, TranslationUnit tu, SegmentDictionary sd){
+        //Creating the words of the source text assigns their codes in a map
+        //which is not synchronised; the recommenders only read the codes
+        Segment source;
+        synchronized(Word.class){
+            source=SourceSegment(srctext);
         }
-        return sd;
+        return WindowedRecommendation.Recommend(Recommenders.getActive(), source, tu, sd);
+    }
+
+    /**
+     * Method that returns the segment of the source text of an entry. The
+     * segment of the last text is kept, since the same entry is recommended
+     * again and again while its match is edited. It must be called holding
+     * the lock of <code>Word</code>.
+     * @param srctext Source text of the entry being translated.
+     * @return Returns the segment of the text.
+     */
+    private static Segment SourceSegment(String srctext){
+        Object[] last=last_source;
+        if(last!=null && last[0].equals(srctext))
+            return (Segment)last[1];
+        Segment segment=new Segment(srctext);
+        last_source=new Object[]{srctext, segment};
+        return segment;
+    }
+
+    /**
+     * Method that returns the recommendations computed for the matches of the
+     * project.
+     * @return Returns the cache of recommendations.
+     */
+    public RecommendationCache getRecommendationCache(){
+        return recommendations;
+    }
+
+    /**
+     * Method that tells if the last evidence obtained is partial, that is, if
+     * some machine translation system did not answer within the latency
+     * budget.
+     * @return Returns <code>true</code> if the last evidence obtained is
+     * partial.
+     */
+    public boolean isPartialEvidence(){
+        return HintState.get().isPartialEvidence();
     }
 }
@@ -0,0 +1,330 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import es.ua.dlsi.segmentation.SubSegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Class that decides which sub-segments are sent to the machine translation
+ * systems. Sub-segments with the same text are sent only once; those made only
+ * of punctuation, numbers, tags or very frequent words (stopwords) are not
+ * sent, since their translation gives almost no evidence; the overlapping
+ * sub-segments which only add such words around the same content words are
+ * merged (see <code>AddCandidates</code>); and the remaining ones are sent by
+ * decreasing value (shorter sub-segments with more content words first) until
+ * the character budget of the match is reached. The characters saved are
+ * accumulated so they can be reported to the user.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class PayloadPlanner {
+
+    /** Characters added to every sub-segment by the HTML sent (<code>&lt;p&gt;&lt;/p&gt;</code>). */
+    static final int MARKUP=7;
+
+    /** Pattern of the words which are tags. */
+    private static final Pattern TAG=Pattern.compile("</?[a-zA-Z]+[0-9]*/?>");
+
+    /** Stopwords of the languages supported, by language code. */
+    private static final Map<String,Set<String>> STOPWORDS=new HashMap<String,Set<String>>();
+
+    static{
+        AddStopwords("en", "the", "a", "an", "of", "to", "in", "and", "or", "is",
+                "are", "be", "for", "on", "at", "by", "with", "it", "this", "that", "as");
+        AddStopwords("es", "el", "la", "los", "las", "un", "una", "de", "del", "a",
+                "al", "en", "y", "o", "que", "se", "por", "con", "para", "es", "lo");
+        AddStopwords("ca", "el", "la", "els", "les", "un", "una", "de", "del", "a",
+                "al", "en", "i", "o", "que", "es", "per", "amb", "és", "l'", "d'");
+        AddStopwords("fr", "le", "la", "les", "un", "une", "de", "du", "des", "à",
+                "au", "en", "et", "ou", "que", "se", "par", "pour", "est", "l'", "d'");
+        AddStopwords("de", "der", "die", "das", "den", "dem", "des", "ein", "eine",
+                "und", "oder", "zu", "in", "im", "von", "mit", "für", "ist", "auf", "an");
+        AddStopwords("pt", "o", "a", "os", "as", "um", "uma", "de", "do", "da", "em",
+                "no", "na", "e", "ou", "que", "se", "por", "com", "para", "é");
+        AddStopwords("it", "il", "lo", "la", "i", "gli", "le", "un", "una", "di",
+                "del", "della", "a", "in", "e", "o", "che", "per", "con", "è", "l'");
+    }
+
+    private static void AddStopwords(String language, String... words){
+        STOPWORDS.put(language, new HashSet<String>(Arrays.asList(words)));
+    }
+
+    /** Maximum characters sent to every system for a match (0 means no limit). */
+    private final int budget;
+
+    /** Characters that would have been sent without planning. */
+    private static final AtomicLong requested=new AtomicLong();
+
+    /** Characters actually sent. */
+    private static final AtomicLong sent=new AtomicLong();
+
+    /**
+     * Constructor of the class.
+     * @param budget Maximum characters sent to every system for a match, in
+     * both directions, or 0 for no limit.
+     */
+    public PayloadPlanner(int budget){
+        this.budget=budget;
+    }
+
+    /**
+     * Method that chooses the sub-segments to be sent for a match.
+     * @param source Source sub-segments.
+     * @param sl Code of the source language.
+     * @param target Target sub-segments.
+     * @param tl Code of the target language.
+     * @return Returns the plan with the sub-segments to be sent.
+     */
+    public Plan MakePlan(List<SubSegment> source, String sl, List<SubSegment> target, String tl){
+        List<Candidate> candidates=new ArrayList<Candidate>();
+        int full=AddCandidates(candidates, source, sl, true);
+        full+=AddCandidates(candidates, target, tl, false);
+
+        //The most valuable sub-segments are taken first; the order of the
+        //sentence is kept for equal values
+        List<Candidate> sorted=new ArrayList<Candidate>(candidates);
+        Collections.sort(sorted, new Comparator<Candidate>() {
+            public int compare(Candidate a, Candidate b) {
+                if(a.value!=b.value)
+                    return b.value-a.value;
+                return a.order-b.order;
+            }
+        });
+        int used=0;
+        Set<Candidate> chosen=new HashSet<Candidate>();
+        for(Candidate c: sorted){
+            int cost=c.text.length()+MARKUP;
+            if(budget>0 && used+cost>budget)
+                continue;
+            used+=cost;
+            chosen.add(c);
+        }
+
+        Plan plan=new Plan();
+        for(Candidate c: candidates){
+            if(!chosen.contains(c))
+                continue;
+            if(c.sourceside){
+                plan.sourceindex.put(c.text, plan.source.size());
+                plan.source.add(c.subsegment);
+            }
+            else{
+                plan.targetindex.put(c.text, plan.target.size());
+                plan.target.add(c.subsegment);
+            }
+        }
+        requested.addAndGet(full);
+        sent.addAndGet(used);
+        return plan;
+    }
+
+    /**
+     * Method that adds the candidates of one side, one for every different
+     * text with some value. The sub-segments are grouped by their core, the
+     * words from their first to their last content word: the sub-segments of a
+     * group overlap and only differ in the stopwords, punctuation or tags
+     * around the core, so they are merged into two units, the core itself,
+     * whose translation is the most reliable, and the longest sub-segment of
+     * the group, which covers the words around it. For instance, "house",
+     * "the house", "house of" and "the house of" are merged into "house" and
+     * "the house of".
+     * @return Returns the characters that would be sent without planning.
+     */
+    private static int AddCandidates(List<Candidate> candidates, List<SubSegment> subsegments,
+            String language, boolean sourceside){
+        Locale locale=new Locale(language.toLowerCase(Locale.ENGLISH));
+        Set<String> stopwords=STOPWORDS.get(locale.getLanguage());
+        if(stopwords==null)
+            stopwords=Collections.<String>emptySet();
+        Set<String> seen=new HashSet<String>();
+        List<Candidate> side=new ArrayList<Candidate>();
+        Map<String,Candidate> longest=new HashMap<String,Candidate>();
+        int full=0;
+        for(SubSegment sub: subsegments){
+            String text=sub.toString();
+            full+=text.length()+MARKUP;
+            if(!seen.add(text))
+                continue;
+            String[] words=text.split(" ");
+            int content=0;
+            int first=-1;
+            int last=-1;
+            for(int i=0;i<words.length;i++){
+                if(IsContentWord(words[i], stopwords, locale)){
+                    content++;
+                    if(first<0)
+                        first=i;
+                    last=i;
+                }
+            }
+            if(content==0)
+                continue;
+            Candidate c=new Candidate();
+            c.subsegment=sub;
+            c.text=text;
+            c.sourceside=sourceside;
+            c.words=words.length;
+            c.core=Join(words, first, last+1);
+            //Short sub-segments get more reliable translations, and content
+            //words are the ones giving evidence
+            c.value=(4-words.length)*10+content;
+            side.add(c);
+            Candidate l=longest.get(c.core);
+            if(l==null || l.words<c.words)
+                longest.put(c.core, c);
+        }
+        for(Candidate c: side){
+            if(c.text.equals(c.core) || longest.get(c.core)==c){
+                c.order=candidates.size();
+                candidates.add(c);
+            }
+        }
+        return full;
+    }
+
+    private static String Join(String[] words, int from, int to){
+        StringBuilder sb=new StringBuilder();
+        for(int i=from;i<to;i++){
+            if(i>from)
+                sb.append(' ');
+            sb.append(words[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that tells if a word carries content: it contains some letter and
+     * it is neither a tag nor a stopword. The stopwords are looked up in lower
+     * case, so those starting a sentence are found too.
+     */
+    static boolean IsContentWord(String word, Set<String> stopwords, Locale locale){
+        if(stopwords.contains(word.toLowerCase(locale)) || TAG.matcher(word).matches())
+            return false;
+        for(int i=0;i<word.length();i++){
+            if(Character.isLetter(word.charAt(i)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method that returns a description of the characters saved by planning
+     * since the plugin was started.
+     * @return Returns the description of the characters saved.
+     */
+    public static String DescribeSavings(){
+        long total=requested.get();
+        long saved=total-sent.get();
+        if(total==0)
+            return "no requests yet";
+        return "sent "+sent.get()+" of "+total+" characters per system ("
+                +(saved*100/total)+"% saved)";
+    }
+
+    /** Sub-segment candidate to be sent. */
+    private static class Candidate {
+        SubSegment subsegment;
+        String text;
+        boolean sourceside;
+        int order;
+        int value;
+        int words;
+        String core;
+    }
+
+    /**
+     * Sub-segments chosen to be sent for a match, with the position of every
+     * text in the request, so the translation of each original sub-segment can
+     * be recovered.
+     */
+    public static class Plan {
+
+        /** Source sub-segments to be sent. */
+        final List<SubSegment> source=new ArrayList<SubSegment>();
+
+        /** Target sub-segments to be sent. */
+        final List<SubSegment> target=new ArrayList<SubSegment>();
+
+        /** Position in <code>source</code> of every text sent. */
+        private final Map<String,Integer> sourceindex=new HashMap<String,Integer>();
+
+        /** Position in <code>target</code> of every text sent. */
+        private final Map<String,Integer> targetindex=new HashMap<String,Integer>();
+
+        /**
+         * Method that returns the source sub-segments to be sent.
+         * @return Returns the source sub-segments to be sent.
+         */
+        public List<SubSegment> getSource(){
+            return source;
+        }
+
+        /**
+         * Method that returns the target sub-segments to be sent.
+         * @return Returns the target sub-segments to be sent.
+         */
+        public List<SubSegment> getTarget(){
+            return target;
+        }
+
+        /**
+         * Method that maps the translation of the sub-segments sent to the
+         * original list of sub-segments.
+         * @param splitten Translation of the sub-segments sent (it may be
+         * <code>null</code>).
+         * @param originals Original sub-segments of one side.
+         * @param sourceside <code>true</code> for the source side.
+         * @return Returns the translation of every original sub-segment, empty
+         * for those not sent, or <code>null</code> if there was no translation.
+         */
+        public String[] Expand(String[] splitten, List<SubSegment> originals, boolean sourceside){
+            if(splitten==null)
+                return null;
+            Map<String,Integer> index=sourceside?sourceindex:targetindex;
+            String[] result=new String[originals.size()];
+            for(int i=0;i<result.length;i++){
+                Integer pos=index.get(originals.get(i).toString());
+                result[i]=(pos==null)?"":splitten[pos];
+            }
+            return result;
+        }
+    }
+}
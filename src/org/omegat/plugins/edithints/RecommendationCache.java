@@ -0,0 +1,179 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.omegat.core.CoreEvents;
+import org.omegat.core.events.IProjectEventListener;
+
+/**
+ * Class that keeps the recommendations computed for the matches of the
+ * project, so that repeated entries which get the same match are coloured
+ * without obtaining the evidence or running the recommender again. The
+ * recommendations are kept by the source text of the entry (with its spaces
+ * normalised), the source and target texts of the match and the evidence
+ * chosen in the menu. Only the recommendations computed with complete evidence
+ * are kept, and the cache is emptied when the project is closed.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class RecommendationCache {
+
+    /** Maximum number of recommendations kept by default. */
+    public static final int DEFAULT_CAPACITY=10000;
+
+    /**
+     * Class that contains a recommendation computed for a match and the
+     * evidence used to compute it, which is reused when the match is edited.
+     */
+    public static class Recommendation {
+
+        /** Recommendation for every word of the target segment of the match. */
+        private final int[] recommendation;
+
+        /** Evidence used to compute the recommendation. */
+        private final IncrementalEvidence evidence;
+
+        public Recommendation(int[] recommendation, IncrementalEvidence evidence){
+            this.recommendation=recommendation;
+            this.evidence=evidence;
+        }
+
+        /**
+         * Method that returns the recommendation for the match.
+         * @return Returns, for every word in the target segment, 1 if it
+         * should be kept, -1 if it should be changed and 0 if there is no
+         * evidence. The array must not be modified.
+         */
+        public int[] getRecommendation(){
+            return recommendation;
+        }
+
+        public IncrementalEvidence getEvidence(){
+            return evidence;
+        }
+    }
+
+    /** Recommendations kept, from the least to the most recently used. */
+    private final LinkedHashMap<String,Recommendation> entries;
+
+    /** Number of recommendations found in the cache. */
+    private final AtomicLong hits=new AtomicLong();
+
+    /** Number of recommendations not found in the cache. */
+    private final AtomicLong misses=new AtomicLong();
+
+    /**
+     * Constructor of the class, which registers the listener that empties the
+     * cache when the project is closed.
+     * @param capacity Maximum number of recommendations kept.
+     */
+    public RecommendationCache(final int capacity){
+        entries=new LinkedHashMap<String,Recommendation>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Recommendation> eldest){
+                return size()>capacity;
+            }
+        };
+        CoreEvents.registerProjectChangeListener(new IProjectEventListener() {
+            public void onProjectChanged(PROJECT_CHANGE_TYPE eventType) {
+                if(eventType==PROJECT_CHANGE_TYPE.CLOSE || eventType==PROJECT_CHANGE_TYPE.LOAD)
+                    clear();
+            }
+        });
+    }
+
+    /**
+     * Method that builds the key of a recommendation. The spaces of the source
+     * text of the entry are normalised, since the recommender does not take
+     * them into account.
+     * @param srctext Source text of the entry being translated.
+     * @param matchsource Source text of the match.
+     * @param matchtranslation Target text of the match.
+     * @param configuration Description of the evidence chosen in the menu.
+     * @return Returns the key of the recommendation.
+     */
+    public static String Key(String srctext, String matchsource, String matchtranslation,
+            String configuration){
+        StringBuilder sb=new StringBuilder(srctext.length()+matchsource.length()+
+                matchtranslation.length()+configuration.length()+3);
+        sb.append(srctext.trim().replaceAll("\\s+", " ")).append('\u0000');
+        sb.append(matchsource).append('\u0000');
+        sb.append(matchtranslation).append('\u0000');
+        sb.append(configuration);
+        return sb.toString();
+    }
+
+    /**
+     * Method that returns a recommendation computed before.
+     * @param key Key of the recommendation (see <code>Key</code>).
+     * @return Returns the recommendation, or <code>null</code> if it is not
+     * in the cache.
+     */
+    public synchronized Recommendation get(String key){
+        Recommendation recommendation=entries.get(key);
+        if(recommendation==null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return recommendation;
+    }
+
+    /**
+     * Method that keeps a recommendation computed with complete evidence.
+     * @param key Key of the recommendation (see <code>Key</code>).
+     * @param recommendation Recommendation and evidence used to compute it.
+     */
+    public synchronized void put(String key, Recommendation recommendation){
+        entries.put(key, recommendation);
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public synchronized void clear(){
+        entries.clear();
+    }
+
+    /**
+     * Method that describes the use of the cache.
+     * @return Returns a line with the size, hits and misses of the cache.
+     */
+    public String describe(){
+        long h=hits.get();
+        long m=misses.get();
+        String line=size()+" matches, "+h+" hits, "+m+" misses";
+        if(h+m>0)
+            line+=" ("+(100*h/(h+m))+"%)";
+        return line;
+    }
+}
@@ -110,53 +110,84 @@ public class TextAreaDocumentListener implements DocumentListener{
      * Method launched when any text is inserted in the edition text area.
      * @param e event
      */
-    public void insertUpdate(DocumentEvent e) {
+    public void insertUpdate(final DocumentEvent e) {
         try {
             //If the text is inserted in the current entry, it is registered
-            if(Core.getEditor().getCurrentEntry()==marker.getLastEntry())
-                marker.setTextInserted(e.getDocument().getText(e.getOffset(), e.getLength()));
-            //The previous marks are updated to fix their placement
-            List<Mark> newmarks=new ArrayList<Mark>();
-            int offset= getDisplayedSegmentBuilder().getStartPosition()+
+            final String inserted=(Core.getEditor().getCurrentEntry()==marker.getLastEntry())?
+                    e.getDocument().getText(e.getOffset(), e.getLength()):null;
+            final int offset= getDisplayedSegmentBuilder().getStartPosition()+
                     Core.getEditor().getCurrentEntry().getSrcText().length();
-
-            for(Mark m: marker.getMarks()){
-                //If the text is inserted after the word, nothing is changed
-                if(m.endOffset>(e.getOffset()-1)-offset){
-                    //If the text is added in the middle of a word, the mark on
-                    //it is removed, since it is not the one which was marked
-                    //any more; if it is added before the begginging of the word
-                    //the mark is displaced
-                    if(m.startOffset>=(e.getOffset()-1)-offset){
-                        int newend=m.endOffset+e.getLength();
-                        int newstart=m.startOffset+e.getLength();
-                        Mark newmark=new Mark(Mark.ENTRY_PART.TRANSLATION, newstart, newend);
-                        newmark.painter=m.painter;
-                        newmarks.add(newmark);
-                    }
-                }
-                else{
-                    newmarks.add(m);
+            HintState.Update(new HintState.Change() {
+                HintState apply(HintState s) {
+                    if(inserted!=null)
+                        s=s.withTextInserted(inserted);
+                    return s.withMarks(Inserted(s.getMarks(), e, offset));
                 }
-            }
-            marker.setMarks(newmarks);
+            });
+            marker.getLiveHints().Schedule();
         } catch (BadLocationException ex) {
             ex.printStackTrace(System.err);
         }
     }
 
+    /**
+     * Method that updates the placement of the marks after inserting text.
+     * @param marks Current marks.
+     * @param e Event of the insertion.
+     * @param offset Position where the translation starts in the text area.
+     * @return Returns the new list of marks.
+     */
+    private static List<Mark> Inserted(List<Mark> marks, DocumentEvent e, int offset){
+        List<Mark> newmarks=new ArrayList<Mark>();
+        //The previous marks are updated to fix their placement
+        for(Mark m: marks){
+            //If the text is inserted after the word, nothing is changed
+            if(m.endOffset>(e.getOffset()-1)-offset){
+                //If the text is added in the middle of a word, the mark on
+                //it is removed, since it is not the one which was marked
+                //any more; if it is added before the begginging of the word
+                //the mark is displaced
+                if(m.startOffset>=(e.getOffset()-1)-offset){
+                    int newend=m.endOffset+e.getLength();
+                    int newstart=m.startOffset+e.getLength();
+                    Mark newmark=new Mark(Mark.ENTRY_PART.TRANSLATION, newstart, newend);
+                    newmark.painter=m.painter;
+                    newmarks.add(newmark);
+                }
+            }
+            else{
+                newmarks.add(m);
+            }
+        }
+        return newmarks;
+    }
+
     /**
      * Method launched when any text is deleted in the edition text area.
      * @param e event
      */
-    public void removeUpdate(DocumentEvent e) {
-        marker.setTextInserted("");
-        List<Mark> newmarks=new ArrayList<Mark>();
-        int offset= getDisplayedSegmentBuilder().getStartPosition()+
+    public void removeUpdate(final DocumentEvent e) {
+        final int offset= getDisplayedSegmentBuilder().getStartPosition()+
                 Core.getEditor().getCurrentEntry().getSrcText().length();
-        
+        HintState.Update(new HintState.Change() {
+            HintState apply(HintState s) {
+                return s.withTextInserted("").withMarks(Removed(s.getMarks(), e, offset));
+            }
+        });
+        marker.getLiveHints().Schedule();
+    }
+
+    /**
+     * Method that updates the placement of the marks after deleting text.
+     * @param marks Current marks.
+     * @param e Event of the deletion.
+     * @param offset Position where the translation starts in the text area.
+     * @return Returns the new list of marks.
+     */
+    private static List<Mark> Removed(List<Mark> marks, DocumentEvent e, int offset){
+        List<Mark> newmarks=new ArrayList<Mark>();
         //The previous marks are updated to fix their placement
-        for(Mark m: marker.getMarks()){
+        for(Mark m: marks){
             //If the text is deleted is all after the word, nothing is changed
             if(m.endOffset>(e.getOffset()-offset)-e.getLength()){
                 //If the part of (or the whole) the word is deleted, the mark on
@@ -175,6 +206,6 @@ public class TextAreaDocumentListener implements DocumentListener{
                 newmarks.add(m);
             }
         }
-        marker.setMarks(newmarks);
+        return newmarks;
     }
 }
@@ -4,90 +4,232 @@
  */
 package org.omegat.plugins.edithints.machinetranslation;
 
-import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.net.URLEncoder;
-import java.util.regex.Matcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import org.omegat.core.machinetranslators.ApertiumTranslate;
 import org.omegat.gui.exttrans.IMachineTranslationEdithints;
 import org.omegat.util.Language;
 import org.omegat.util.OStrings;
 import org.omegat.util.Preferences;
 import org.omegat.util.StaticUtils;
-import org.omegat.util.WikiGet;
 
 /**
  *
  * @author miquel
  */
 public class ApertiumTranslateEdithints extends ApertiumTranslate implements IMachineTranslationEdithints{
+
+    /** Timeout (in milliseconds) for connecting to Apertium. */
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    /** Timeout (in milliseconds) for reading the response of Apertium. */
+    private static final int READ_TIMEOUT = 30000;
     
+    /** Method of <code>ApertiumTranslate</code> converting language codes. */
+    private static Method apertiumCode;
+
+    /**
+     * URL of the Apertium service (without query), or <code>null</code> to use
+     * the one from <code>ApertiumTranslate</code>.
+     */
+    private final String serviceURL;
+
+    /**
+     * Constructor of the class, which uses the public Apertium service.
+     */
+    public ApertiumTranslateEdithints() {
+        this(null);
+    }
+
+    /**
+     * Constructor of the class for a specific Apertium service (for instance,
+     * a local installation of Apertium-APy or a simulator).
+     * @param serviceURL URL of the service, such as
+     * <code>http://localhost:2737/translate</code>.
+     */
+    public ApertiumTranslateEdithints(String serviceURL) {
+        this.serviceURL = serviceURL;
+    }
+
     @Override
     protected String getPreferenceName() {
         return Preferences.ALLOW_APERTIUM_TRANSLATE;
     }
+
+    /**
+     * Method that returns the code used by Apertium for a language. It calls
+     * the private method <code>apertiumCode</code> of
+     * <code>ApertiumTranslate</code> by introspection, and falls back to the
+     * language code if that method is not available.
+     * @param lang Language.
+     * @return Returns the code of the language for Apertium.
+     */
+    protected String getApertiumCode(Language lang) throws Exception {
+        if (apertiumCode == null) {
+            try {
+                Method m = ApertiumTranslate.class.getDeclaredMethod("apertiumCode", Language.class);
+                m.setAccessible(true);
+                apertiumCode = m;
+            } catch (NoSuchMethodException nsme) {
+                return lang.getLanguageCode();
+            }
+        }
+        return (String) apertiumCode.invoke(this, lang);
+    }
     
     public String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception {
+        //The paragraphs sent by the plugin are translated as a list
+        List<String> parts = BatchTranslation.Decode(BatchTranslation.SplitParagraphs(text));
+        if (parts != null && parts.size() > 1) {
+            List<String> translations = translateTexts(sLang, tLang, parts);
+            if (translations != null) {
+                return BatchTranslation.ToHTML(translations);
+            }
+        }
+        return request(sLang, tLang, text, "html");
+    }
 
-        Method apertiumCode = ApertiumTranslate.class.getDeclaredMethod("apertiumCode", Language.class);
-        apertiumCode.setAccessible(true);
-        
-        String trText = text;
+    public Future<List<String>> getBatchTranslation(final Language sLang, final Language tLang,
+            final List<String> texts) {
+        return BatchTranslation.Submit(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                List<String> translations = translateTexts(sLang, tLang, texts);
+                if (translations == null) {
+                    return BatchTranslation.Recover(ApertiumTranslateEdithints.this, sLang, tLang, texts,
+                            request(sLang, tLang, BatchTranslation.ToHTML(texts), "html"));
+                }
+                return translations;
+            }
+        });
+    }
+
+    /**
+     * Method that translates a list of plain texts in a single request. Apertium
+     * keeps the line breaks of plain texts, so the texts are sent as the lines
+     * of a text.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param texts Texts to be translated.
+     * @return Returns the translation of every text, or <code>null</code> if
+     * the answer has not one line for every text.
+     */
+    protected List<String> translateTexts(Language sLang, Language tLang, List<String> texts) throws Exception {
+        if (texts.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String text : texts) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(text.replace('\r', ' ').replace('\n', ' '));
+        }
+        String[] lines = request(sLang, tLang, sb.toString(), "txt").split("\n", -1);
+        if (lines.length != texts.size()) {
+            return null;
+        }
+        List<String> translations = new ArrayList<String>(lines.length);
+        for (String line : lines) {
+            translations.add(line.trim());
+        }
+        return translations;
+    }
+
+    /**
+     * Method that sends a text to Apertium. The JSON escapes of the response
+     * are decoded by <code>JSONReader</code> while it is read; the HTML
+     * entities are kept, and decoded only once by the caller (see
+     * <code>BatchTranslation.Decode</code>).
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param text Text to be translated.
+     * @param format Format of the text (<code>html</code> or <code>txt</code>).
+     * @return Returns the translation.
+     */
+    private String request(Language sLang, Language tLang, String text, String format) throws Exception {
 
-        String sourceLang = (String) apertiumCode.invoke(this,sLang);
-        String targetLang = (String) apertiumCode.invoke(this,tLang);
+        String trText = text;
 
-        String url2 = GT_URL2.replace("#sourceLang#", sourceLang).replace("#targetLang#", targetLang);
-        String url = GT_URL + URLEncoder.encode(trText, "UTF-8") + url2 + "&format=html&markUnknown=no";
+        String sourceLang = getApertiumCode(sLang);
+        String targetLang = getApertiumCode(tLang);
 
-        String v;
-        try {
-            v = WikiGet.getURL(url);
-        } catch (IOException e) {
-            return e.getLocalizedMessage();
+        String url;
+        if (serviceURL == null) {
+            String url2 = GT_URL2.replace("#sourceLang#", sourceLang).replace("#targetLang#", targetLang);
+            url = GT_URL + URLEncoder.encode(trText, "UTF-8") + url2 + "&format=" + format + "&markUnknown=no";
+        } else {
+            url = serviceURL + "?q=" + URLEncoder.encode(trText, "UTF-8") + "&langpair="
+                    + URLEncoder.encode(sourceLang + "|" + targetLang, "UTF-8")
+                    + "&format=" + format + "&markUnknown=no";
         }
-        while (true) {
-            Matcher m = RE_UNICODE.matcher(v);
-            if (!m.find()) {
-                break;
-            }
-            String g = m.group();
-            char c = (char) Integer.parseInt(m.group(1), 16);
-            v = v.replace(g, Character.toString(c));
+
+        String tr = null;
+        String details = null;
+        String code = "";
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        int status = conn.getResponseCode();
+        if (status >= 400) {
+            //Overloaded, failing or rejecting service: reported so the request
+            //can be retried or the engine skipped for a while
+            long retryAfter = TranslationServiceException.parseRetryAfter(conn);
+            conn.disconnect();
+            throw new TranslationServiceException(status, retryAfter);
         }
-        v = v.replace("&quot;", "&#34;");
-        v = v.replace("&nbsp;", "&#160;");
-        v = v.replace("&amp;", "&#38;");
-        v = v.replace("\\/", "/");
-        v = v.replace("\\\"", "\"");
-        
-        while (true) {
-            Matcher m = RE_HTML.matcher(v);
-            if (!m.find()) {
-                break;
+        Reader in = new InputStreamReader(conn.getInputStream(), "UTF-8");
+        try {
+            //e.g. {"responseData":{"translatedText":"..."},"responseDetails":null,"responseStatus":200}
+            JSONReader json = new JSONReader(in);
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("responseData") && json.peek() == JSONReader.Token.BEGIN_OBJECT) {
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        if (json.nextName().equals("translatedText")) {
+                            tr = json.nextString();
+                        } else {
+                            json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                } else if (name.equals("responseDetails")) {
+                    details = json.nextString();
+                } else if (name.equals("responseStatus")) {
+                    code = json.nextString();
+                } else {
+                    json.skipValue();
+                }
             }
-            String g = m.group();
-            char c = (char) Integer.parseInt(m.group(1));
-            v = v.replace(g, Character.toString(c));
+        } finally {
+            in.close();
         }
 
-        int beg = v.indexOf(MARK_BEG) + MARK_BEG.length();
-        int end = v.indexOf(MARK_END, beg);
-        if (end < 0) {
+        if (tr == null) {
             //no translation found. e.g. {"responseData":{"translatedText":null},"responseDetails":"Not supported pair","responseStatus":451}
-            Matcher m = RE_DETAILS.matcher(v);
-            if (!m.find()) {
+            if (details == null) {
                 return "";
             }
-            String details = m.group(1);
-            String code = "";
-            m = RE_STATUS.matcher(v);
-            if (m.find()) {
-                code = m.group(1);
+            int errorStatus = -1;
+            try {
+                errorStatus = Integer.parseInt(code);
+            } catch (NumberFormatException nfe) {
             }
-            return StaticUtils.format(OStrings.getString("APERTIUM_ERROR"), code, details);
+            throw new TranslationServiceException(errorStatus, 0,
+                    StaticUtils.format(OStrings.getString("APERTIUM_ERROR"), code, details));
+        }
+        if (tr.endsWith("\n")) {
+            tr = tr.substring(0, tr.length() - 1);
         }
-        String tr = v.substring(beg, end - 2); // Remove \n
         return tr;
     }
 }
@@ -0,0 +1,437 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.plugins.edithints.EntityDecoder;
+import org.omegat.util.Language;
+
+/**
+ * Methods shared by the implementations of
+ * <code>IMachineTranslationEdithints.getBatchTranslation</code>. The lists of
+ * texts go through the layers wrapping the systems (caches, batching, etc.)
+ * as lists; only the systems without a native way of translating a list send
+ * them as the paragraphs of an HTML text.
+ * <p>
+ * Systems sometimes merge or split paragraphs, so the answer has not one
+ * paragraph for every text. Instead of losing the whole answer, the
+ * paragraphs at its beginning and end which can be matched unambiguously
+ * with the texts are kept, and only the texts in between are requested again,
+ * in halves, until every half is answered correctly or has a single text.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class BatchTranslation {
+
+    /**
+     * Layer wrapping a machine translation system. The lists of texts are
+     * translated by the layers synchronously, so a request going through
+     * several layers runs in a single thread of the pool.
+     */
+    public interface Layer extends IMachineTranslationEdithints {
+
+        /**
+         * Method that translates a list of texts in the current thread.
+         * @param sLang Source language.
+         * @param tLang Target language.
+         * @param texts Plain texts to be translated.
+         * @return Returns the plain translation of every text, in the same
+         * order.
+         * @throws Exception if the translation fails.
+         */
+        List<String> translateList(Language sLang, Language tLang, List<String> texts) throws Exception;
+    }
+
+    private BatchTranslation() {
+    }
+
+    /**
+     * Method that runs a translation task in the pool of threads of the
+     * requests, with the priority of the current thread.
+     * @param task Task to be run.
+     * @return Returns the request sent.
+     */
+    public static Future<List<String>> Submit(Callable<List<String>> task) {
+        return TranslationExecutor.getExecutor().submit(RequestPriority.propagate(task));
+    }
+
+    /**
+     * Method that translates a list of texts asynchronously through a layer.
+     * @param layer Layer.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param texts Texts to be translated.
+     * @return Returns the request sent.
+     */
+    public static Future<List<String>> Submit(final Layer layer, final Language sLang,
+            final Language tLang, final List<String> texts) {
+        return Submit(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                return layer.translateList(sLang, tLang, texts);
+            }
+        });
+    }
+
+    /**
+     * Method that translates a list of texts in the current thread. Layers
+     * translate it directly; for the rest of systems, the current thread waits
+     * for the request, which is cancelled if the thread is interrupted.
+     * @param mt Machine translation system.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param texts Texts to be translated.
+     * @return Returns the translation of every text.
+     * @throws Exception if the system fails.
+     */
+    public static List<String> Translate(IMachineTranslationEdithints mt, Language sLang,
+            Language tLang, List<String> texts) throws Exception {
+        if (texts.isEmpty()) {
+            return Collections.<String>emptyList();
+        }
+        if (mt instanceof Layer) {
+            return ((Layer) mt).translateList(sLang, tLang, texts);
+        }
+        Future<List<String>> request = mt.getBatchTranslation(sLang, tLang, texts);
+        try {
+            return request.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        } finally {
+            request.cancel(true);
+        }
+    }
+
+    /**
+     * Method that translates an HTML text through a layer: the paragraphs of
+     * the text are translated as a list. Texts which are not a list of
+     * paragraphs are sent to the wrapped system unchanged.
+     * @param layer Layer.
+     * @param mt Machine translation system wrapped by the layer.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param html HTML text.
+     * @return Returns the HTML translation.
+     * @throws Exception if the translation fails.
+     */
+    public static String TranslateHTML(Layer layer, IMachineTranslationEdithints mt,
+            Language sLang, Language tLang, String html) throws Exception {
+        List<String> parts = Decode(SplitParagraphs(html));
+        if (parts == null) {
+            return mt.getHTMLTranslation(sLang, tLang, html);
+        }
+        return ToHTML(layer.translateList(sLang, tLang, parts));
+    }
+
+    /**
+     * Method that builds the HTML text for a list of plain texts, with one
+     * paragraph per text. The characters <code>&amp;</code>,
+     * <code>&lt;</code> and <code>&gt;</code> are escaped, so
+     * <code>Decode(SplitParagraphs(ToHTML(texts)))</code> gives back the
+     * texts.
+     * @param texts Plain texts.
+     * @return Returns the HTML text.
+     */
+    public static String ToHTML(List<String> texts) {
+        StringBuilder sb = new StringBuilder("<html>");
+        for (String text : texts) {
+            sb.append("<p>");
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '&') {
+                    sb.append("&amp;");
+                } else if (c == '<') {
+                    sb.append("&lt;");
+                } else if (c == '>') {
+                    sb.append("&gt;");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append("</p>");
+        }
+        sb.append("</html>");
+        return sb.toString();
+    }
+
+    /**
+     * Method that splits a text of the form
+     * <code>&lt;html&gt;&lt;p&gt;...&lt;/p&gt;&lt;p&gt;...&lt;/p&gt;&lt;/html&gt;</code>
+     * into the contents of its paragraphs, without decoding them.
+     * @param html Text to be split.
+     * @return Returns the contents of the paragraphs, or <code>null</code> if
+     * the text has not the expected form.
+     */
+    public static List<String> SplitParagraphs(String html) {
+        if (html == null) {
+            return null;
+        }
+        String body = html.trim();
+        if (body.startsWith("<html>")) {
+            body = body.substring("<html>".length());
+        }
+        if (body.endsWith("</html>")) {
+            body = body.substring(0, body.length() - "</html>".length());
+        }
+        List<String> parts = new ArrayList<String>();
+        if (body.length() == 0) {
+            return parts;
+        }
+        if (!body.startsWith("<p>") || !body.endsWith("</p>")) {
+            return null;
+        }
+        int start = "<p>".length();
+        int end = body.length() - "</p>".length();
+        while (true) {
+            int next = body.indexOf("</p><p>", start);
+            if (next < 0 || next > end) {
+                parts.add(body.substring(start, end));
+                return parts;
+            }
+            parts.add(body.substring(start, next));
+            start = next + "</p><p>".length();
+        }
+    }
+
+    /**
+     * Method that splits the HTML translation of a list of texts into the
+     * plain translation of every text. If the answer has not one paragraph
+     * for every text, the paragraphs which can be matched unambiguously are
+     * kept and the rest of texts are requested again (see
+     * <code>Bisect</code>).
+     * @param mt Machine translation system used for the new requests.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param texts Texts sent.
+     * @param html Translation returned by the system.
+     * @return Returns the translation of every text, with its HTML entities
+     * decoded; texts which could not be recovered have an empty translation.
+     * @throws PartCountException if the answer has not one paragraph for every
+     * text and no translation could be recovered.
+     */
+    public static List<String> Recover(IMachineTranslationEdithints mt, Language sLang,
+            Language tLang, List<String> texts, String html) throws PartCountException {
+        return Recover(mt, sLang, tLang, texts, html, Long.MAX_VALUE);
+    }
+
+    /**
+     * Method that splits the HTML translation of a list of texts into the
+     * plain translation of every text, as <code>Recover</code> above, but
+     * waiting for the new requests only until a deadline. The requests still
+     * running when the deadline expires are cancelled and their texts are left
+     * without translation, so this method can be called from a thread which
+     * must not block, such as the event dispatch thread.
+     * @param mt Machine translation system used for the new requests.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param texts Texts sent.
+     * @param html Translation returned by the system.
+     * @param deadline Time (as in <code>System.currentTimeMillis()</code>)
+     * until which the new requests are waited for, or
+     * <code>Long.MAX_VALUE</code> to send them in the current thread without
+     * limit.
+     * @return Returns the translation of every text, with its HTML entities
+     * decoded; texts which could not be recovered have an empty translation.
+     * @throws PartCountException if the answer has not one paragraph for every
+     * text and no translation could be recovered.
+     */
+    public static List<String> Recover(IMachineTranslationEdithints mt, Language sLang,
+            Language tLang, List<String> texts, String html, long deadline) throws PartCountException {
+        List<String> parts = Decode(SplitParagraphs(html));
+        if (parts != null && parts.size() == texts.size()) {
+            return parts;
+        }
+        int n = texts.size();
+        String[] result = new String[n];
+        int from = 0;
+        int to = n;
+        if (parts != null && !parts.isEmpty() && n > 1) {
+            int m = parts.size();
+            int shift = n - m;
+            double ratio = (double) CountWords(parts, 0, m) / Math.max(1, CountWords(texts, 0, n));
+            //The texts from the beginning, while they fit better their own
+            //paragraph than a merge (or split) at that point; at least one
+            //text is left for the middle, where the error is
+            while (from < n - 1 && from < m
+                    && Fits(texts, from, from + 1, parts, from, from + 1, ratio)
+                    && !Fits(texts, from, Math.min(n, from + 1 + Math.max(0, shift)),
+                            parts, from, Math.min(m, from + 1 + Math.max(0, -shift)), ratio)) {
+                result[from] = parts.get(from);
+                from++;
+            }
+            //The same from the end
+            while (to - 1 > from && to - 1 - shift >= from
+                    && Fits(texts, to - 1, to, parts, to - 1 - shift, to - shift, ratio)
+                    && !Fits(texts, Math.max(from, to - 1 - Math.max(0, shift)), to,
+                            parts, Math.max(from, to - 1 - shift - Math.max(0, -shift)), to - shift, ratio)) {
+                result[to - 1] = parts.get(to - 1 - shift);
+                to--;
+            }
+        }
+        Bisect(mt, sLang, tLang, texts, from, to, result, deadline);
+        boolean recovered = false;
+        for (int i = 0; i < n; i++) {
+            if (result[i] == null) {
+                result[i] = "";
+            } else {
+                recovered = true;
+            }
+        }
+        if (!recovered) {
+            throw new PartCountException(n, (parts == null) ? 0 : parts.size());
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Method that requests again the translation of a range of texts. If the
+     * answer has not one paragraph for every text, each half of the range is
+     * requested on its own; a single text takes the whole answer. Texts whose
+     * request fails, or is not answered before the deadline, are left without
+     * translation.
+     * @param result Translations of the texts, where the new ones are set.
+     * @param deadline Time until which the requests are waited for.
+     */
+    private static void Bisect(final IMachineTranslationEdithints mt, final Language sLang,
+            final Language tLang, List<String> texts, int from, int to, String[] result, long deadline) {
+        if (from >= to || System.currentTimeMillis() >= deadline) {
+            return;
+        }
+        final String html = ToHTML(texts.subList(from, to));
+        List<String> parts;
+        if (deadline == Long.MAX_VALUE) {
+            try {
+                parts = Decode(SplitParagraphs(mt.getHTMLTranslation(sLang, tLang, html)));
+            } catch (Exception ex) {
+                return;
+            }
+        } else {
+            Future<List<String>> request = Submit(new Callable<List<String>>() {
+                public List<String> call() throws Exception {
+                    return Decode(SplitParagraphs(mt.getHTMLTranslation(sLang, tLang, html)));
+                }
+            });
+            try {
+                parts = request.get(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                //Failed or not answered in time
+                return;
+            } finally {
+                request.cancel(true);
+            }
+        }
+        if (parts != null && parts.size() == to - from) {
+            for (int i = from; i < to; i++) {
+                result[i] = parts.get(i - from);
+            }
+        } else if (to - from == 1) {
+            if (parts != null) {
+                StringBuilder sb = new StringBuilder();
+                for (String part : parts) {
+                    sb.append(sb.length() > 0 ? " " : "").append(part.trim());
+                }
+                result[from] = sb.toString();
+            }
+        } else {
+            int middle = (from + to) / 2;
+            Bisect(mt, sLang, tLang, texts, from, middle, result, deadline);
+            Bisect(mt, sLang, tLang, texts, middle, to, result, deadline);
+        }
+    }
+
+    /**
+     * Method that tells if some paragraphs of the answer are a plausible
+     * translation of some texts, by the number of words of both: the number
+     * of words of the translation, divided by the ratio between languages,
+     * must be closer to that of the texts than to that of the texts with a
+     * word more or less.
+     * @param ratio Ratio between the number of words of the whole answer and
+     * the number of words of all the texts.
+     */
+    private static boolean Fits(List<String> texts, int tfrom, int tto, List<String> parts,
+            int pfrom, int pto, double ratio) {
+        if (tfrom >= tto || pfrom >= pto) {
+            return false;
+        }
+        double expected = CountWords(texts, tfrom, tto);
+        double obtained = CountWords(parts, pfrom, pto) / ratio;
+        return Math.abs(obtained - expected) < 0.5 * Math.max(1, expected / 3.0) + 0.5;
+    }
+
+    private static int CountWords(List<String> texts, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            String text = texts.get(i);
+            boolean word = false;
+            for (int j = 0; j < text.length(); j++) {
+                boolean space = Character.isWhitespace(text.charAt(j));
+                if (!space && !word) {
+                    count++;
+                }
+                word = !space;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method that decodes the HTML entities of a list of texts.
+     * @param parts Texts, or <code>null</code>.
+     * @return Returns the texts decoded, or <code>null</code>.
+     */
+    public static List<String> Decode(List<String> parts) {
+        if (parts == null) {
+            return null;
+        }
+        List<String> decoded = new ArrayList<String>(parts.size());
+        for (String part : parts) {
+            decoded.add(EntityDecoder.decode(part));
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,239 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.util.Language;
+
+/**
+ * Machine translation system protected by a circuit breaker. This class wraps
+ * an <code>IMachineTranslationEdithints</code> object and tracks the failures
+ * of its requests for each language pair. After several consecutive failures
+ * (or as soon as the language pair is reported as not supported) the circuit
+ * of the pair is opened: requests fail immediately with a
+ * <code>CircuitOpenException</code> until a cool-down period expires; then a
+ * single request is let through to probe the system. If the probe fails, the
+ * cool-down is doubled.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class CircuitBreakerTranslateEdithints implements BatchTranslation.Layer {
+
+    /** Consecutive failures that open the circuit. */
+    private static final int FAILURE_THRESHOLD = 3;
+
+    /** Initial cool-down (in milliseconds) of an open circuit. */
+    private static final long COOL_DOWN = 30000;
+
+    /** Maximum cool-down (in milliseconds), also used for unsupported pairs. */
+    private static final long MAX_COOL_DOWN = 600000;
+
+    /** States of a circuit. */
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /** Circuit of a language pair. */
+    private static class Circuit {
+        State state = State.CLOSED;
+        int failures = 0;
+        long coolDown = COOL_DOWN;
+        long openUntil = 0;
+
+        synchronized boolean allowRequest() {
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+                //Only the first request after the cool-down probes the system
+                state = State.HALF_OPEN;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void onSuccess() {
+            state = State.CLOSED;
+            failures = 0;
+            coolDown = COOL_DOWN;
+        }
+
+        synchronized void onFailure(boolean unsupported) {
+            failures++;
+            if (state == State.HALF_OPEN) {
+                coolDown = Math.min(coolDown * 2, MAX_COOL_DOWN);
+                open();
+            } else if (unsupported) {
+                coolDown = MAX_COOL_DOWN;
+                open();
+            } else if (failures >= FAILURE_THRESHOLD) {
+                open();
+            }
+        }
+
+        /** Method called when a request is abandoned before it finishes. */
+        synchronized void onAbandoned() {
+            if (state == State.HALF_OPEN) {
+                //The probe was not completed: the next request will probe again
+                state = State.OPEN;
+                openUntil = 0;
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + coolDown;
+        }
+
+        synchronized String describe() {
+            switch (state) {
+                case OPEN:
+                    long left = Math.max(0, openUntil - System.currentTimeMillis());
+                    return "suspended, retry in " + ((left + 999) / 1000) + " s";
+                case HALF_OPEN:
+                    return "probing";
+                default:
+                    return failures == 0 ? "ok" : "ok (" + failures + " recent failures)";
+            }
+        }
+    }
+
+    /** Machine translation system wrapped. */
+    private final IMachineTranslationEdithints mt;
+
+    /** Circuits for each language pair. */
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+
+    /**
+     * Constructor of the class.
+     * @param mt Machine translation system to be wrapped.
+     */
+    public CircuitBreakerTranslateEdithints(IMachineTranslationEdithints mt) {
+        this.mt = mt;
+    }
+
+    public String getName() {
+        return mt.getName();
+    }
+
+    public String getTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return mt.getTranslation(sLang, tLang, text);
+    }
+
+    public Future<List<String>> getBatchTranslation(Language sLang, Language tLang, List<String> texts) {
+        return BatchTranslation.Submit(this, sLang, tLang, texts);
+    }
+
+    public List<String> translateList(final Language sLang, final Language tLang,
+            final List<String> texts) throws Exception {
+        return Call(sLang, tLang, new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                return BatchTranslation.Translate(mt, sLang, tLang, texts);
+            }
+        });
+    }
+
+    public String getHTMLTranslation(final Language sLang, final Language tLang,
+            final String text) throws Exception {
+        return Call(sLang, tLang, new Callable<String>() {
+            public String call() throws Exception {
+                return mt.getHTMLTranslation(sLang, tLang, text);
+            }
+        });
+    }
+
+    /**
+     * Method that sends a request through the circuit of its language pair.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param request Request to the wrapped system.
+     * @return Returns the answer to the request.
+     * @throws CircuitOpenException if the circuit is open.
+     * @throws Exception if the request fails.
+     */
+    private <T> T Call(Language sLang, Language tLang, Callable<T> request) throws Exception {
+        String pair = sLang.getLanguageCode() + "-" + tLang.getLanguageCode();
+        Circuit circuit = circuits.get(pair);
+        if (circuit == null) {
+            Circuit created = new Circuit();
+            circuit = circuits.putIfAbsent(pair, created);
+            if (circuit == null) {
+                circuit = created;
+            }
+        }
+        if (!circuit.allowRequest()) {
+            throw new CircuitOpenException(getName(), pair);
+        }
+        try {
+            T result = request.call();
+            circuit.onSuccess();
+            return result;
+        } catch (Exception ex) {
+            //Requests cancelled (e.g. because of the latency budget) are not failures
+            if (ex instanceof InterruptedException || ex instanceof InterruptedIOException
+                    || Thread.currentThread().isInterrupted()) {
+                circuit.onAbandoned();
+            } else {
+                circuit.onFailure(TranslationServiceException.getStatus(ex)
+                        == TranslationServiceException.UNSUPPORTED_PAIR);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Method that returns a description of the state of the circuit of each
+     * language pair used so far.
+     * @return Returns one line per language pair.
+     */
+    public List<String> describeCircuits() {
+        Map<String, Circuit> sorted = new TreeMap<String, Circuit>(circuits);
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, Circuit> e : sorted.entrySet()) {
+            lines.add(e.getKey() + ": " + e.getValue().describe());
+        }
+        return lines;
+    }
+
+    /**
+     * Method that closes all the circuits, so the requests are sent again.
+     */
+    public void reset() {
+        circuits.clear();
+    }
+}
@@ -0,0 +1,186 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.util.Language;
+
+/**
+ * Machine translation system that coalesces the sub-segments in flight.
+ * This class wraps an <code>IMachineTranslationEdithints</code> object so that,
+ * when several threads ask for the translation of the same sub-segment in the
+ * same language pair at the same time, only the first of them sends it to the
+ * actual system; the rest wait for the same result (or exception) and only
+ * send the sub-segments that nobody has in flight. If the thread sending a
+ * sub-segment abandons its request, the threads waiting for it send it again.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class CoalescingTranslateEdithints implements BatchTranslation.Layer {
+
+    /** Machine translation system wrapped. */
+    private final IMachineTranslationEdithints mt;
+
+    /** Sub-segments in flight, identified by the system, the language pair and the sub-segment. */
+    private final ConcurrentMap<String, Pending> inflight = new ConcurrentHashMap<String, Pending>();
+
+    /**
+     * Constructor of the class.
+     * @param mt Machine translation system to be wrapped.
+     */
+    public CoalescingTranslateEdithints(IMachineTranslationEdithints mt) {
+        this.mt = mt;
+    }
+
+    /**
+     * Method that returns the machine translation system wrapped.
+     * @return Returns the machine translation system wrapped.
+     */
+    public IMachineTranslationEdithints getTranslator() {
+        return mt;
+    }
+
+    public String getName() {
+        return mt.getName();
+    }
+
+    public String getTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return mt.getTranslation(sLang, tLang, text);
+    }
+
+    public Future<List<String>> getBatchTranslation(Language sLang, Language tLang, List<String> texts) {
+        return BatchTranslation.Submit(this, sLang, tLang, texts);
+    }
+
+    public String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return BatchTranslation.TranslateHTML(this, mt, sLang, tLang, text);
+    }
+
+    public List<String> translateList(Language sLang, Language tLang, List<String> texts) throws Exception {
+        List<Future<String>> waits = new ArrayList<Future<String>>(texts.size());
+        //Sub-segments nobody has in flight, sent by this thread
+        Map<String, Pending> owned = new LinkedHashMap<String, Pending>();
+        List<String> sent = new ArrayList<String>();
+        for (String text : texts) {
+            String key = mt.getName() + '\u0000' + sLang.getLanguageCode() + '\u0000'
+                    + tLang.getLanguageCode() + '\u0000' + text;
+            Pending pending = owned.get(key);
+            if (pending == null) {
+                Pending created = new Pending();
+                pending = inflight.putIfAbsent(key, created);
+                if (pending == null) {
+                    pending = created;
+                    owned.put(key, created);
+                    sent.add(text);
+                }
+            }
+            waits.add(pending);
+        }
+        if (!owned.isEmpty()) {
+            try {
+                List<String> translated = BatchTranslation.Translate(mt, sLang, tLang, sent);
+                int pos = 0;
+                for (Pending pending : owned.values()) {
+                    pending.complete(translated.get(pos++));
+                }
+            } catch (Exception ex) {
+                if (!(ex instanceof InterruptedException) && !Thread.currentThread().isInterrupted()) {
+                    for (Pending pending : owned.values()) {
+                        pending.fail(ex);
+                    }
+                }
+                throw ex;
+            } finally {
+                for (Map.Entry<String, Pending> e : owned.entrySet()) {
+                    //The request was abandoned: the other threads send it again
+                    e.getValue().cancel(false);
+                    inflight.remove(e.getKey(), e.getValue());
+                }
+            }
+        }
+        String[] result = new String[texts.size()];
+        List<Integer> abandoned = new ArrayList<Integer>();
+        for (int i = 0; i < result.length; i++) {
+            try {
+                result[i] = waits.get(i).get();
+            } catch (CancellationException ex) {
+                abandoned.add(i);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw ex;
+            }
+        }
+        if (!abandoned.isEmpty()) {
+            List<String> again = new ArrayList<String>(abandoned.size());
+            for (int i : abandoned) {
+                again.add(texts.get(i));
+            }
+            List<String> translated = translateList(sLang, tLang, again);
+            for (int i = 0; i < abandoned.size(); i++) {
+                result[abandoned.get(i)] = translated.get(i);
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    /** Translation of a sub-segment in flight, set by the thread sending it. */
+    private static class Pending extends FutureTask<String> {
+
+        Pending() {
+            super(new Callable<String>() {
+                public String call() {
+                    throw new IllegalStateException("Set by the thread sending the request");
+                }
+            });
+        }
+
+        void complete(String value) {
+            set(value);
+        }
+
+        void fail(Exception ex) {
+            setException(ex);
+        }
+    }
+}
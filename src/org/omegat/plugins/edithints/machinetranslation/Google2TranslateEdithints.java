@@ -25,6 +25,16 @@
 
 package org.omegat.plugins.edithints.machinetranslation;
 
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import org.omegat.core.machinetranslators.*;
 import org.omegat.gui.exttrans.IMachineTranslationEdithints;
 import org.omegat.util.Language;
@@ -33,12 +43,32 @@ import org.omegat.util.Preferences;
 /**
  * Support of Google Translate API v.2 machine translation.
  * https://code.google.com/apis/language/translate/v2/getting_started.html
+ * <p>
+ * Lists of texts are translated natively, with a <code>q</code> parameter for
+ * every text, when the API key is set (system property
+ * <code>google.api.key</code>); otherwise, or if the answer has not one
+ * translation for every text, they are sent as an HTML text.
  * 
  * @author Alex Buloichik (alex73mail@gmail.com)
  * @author Didier Briel
  * @author Briac Pilpre
  */
 public class Google2TranslateEdithints extends Google2Translate implements IMachineTranslationEdithints {
+
+    /** URL of the service. */
+    protected static final String GT_URL = "https://www.googleapis.com/language/translate/v2";
+
+    /** System property with the API key. */
+    protected static final String PROPERTY_API_KEY = "google.api.key";
+
+    /** Maximum number of texts in a request accepted by the service. */
+    private static final int MAX_TEXTS = 128;
+
+    /** Connection timeout in milliseconds. */
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    /** Read timeout in milliseconds. */
+    private static final int READ_TIMEOUT = 30000;
     
     @Override
     protected String getPreferenceName() {
@@ -46,6 +76,127 @@ public class Google2TranslateEdithints extends Google2Translate implements IMach
     }
 
     public String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception {
+        //The paragraphs sent by the plugin are translated as a list
+        List<String> parts = BatchTranslation.Decode(BatchTranslation.SplitParagraphs(text));
+        if (parts != null && parts.size() > 1 && System.getProperty(PROPERTY_API_KEY) != null) {
+            List<String> translations = translateTexts(sLang, tLang, parts);
+            if (translations != null) {
+                return BatchTranslation.ToHTML(translations);
+            }
+        }
         return super.translate(sLang, tLang, text);
     }
+
+    public Future<List<String>> getBatchTranslation(final Language sLang, final Language tLang,
+            final List<String> texts) {
+        return BatchTranslation.Submit(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                List<String> translations = (System.getProperty(PROPERTY_API_KEY) != null)
+                        ? translateTexts(sLang, tLang, texts) : null;
+                if (translations == null) {
+                    return BatchTranslation.Recover(Google2TranslateEdithints.this, sLang, tLang, texts,
+                            Google2TranslateEdithints.super.translate(sLang, tLang, BatchTranslation.ToHTML(texts)));
+                }
+                return translations;
+            }
+        });
+    }
+
+    /**
+     * Method that translates a list of plain texts with as few requests as
+     * possible.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param texts Texts to be translated.
+     * @return Returns the translation of every text, or <code>null</code> if
+     * the service did not return one translation for every text.
+     */
+    protected List<String> translateTexts(Language sLang, Language tLang, List<String> texts) throws Exception {
+        List<String> translations = new ArrayList<String>(texts.size());
+        for (int from = 0; from < texts.size(); from += MAX_TEXTS) {
+            List<String> chunk = texts.subList(from, Math.min(texts.size(), from + MAX_TEXTS));
+            List<String> translated = request(sLang, tLang, chunk);
+            if (translated.size() != chunk.size()) {
+                return null;
+            }
+            translations.addAll(translated);
+        }
+        return translations;
+    }
+
+    /**
+     * Method that sends a request with a list of texts.
+     * @return Returns the translations in the answer.
+     */
+    private List<String> request(Language sLang, Language tLang, List<String> texts) throws Exception {
+        StringBuilder query = new StringBuilder();
+        query.append("key=").append(URLEncoder.encode(System.getProperty(PROPERTY_API_KEY), "UTF-8"));
+        query.append("&source=").append(URLEncoder.encode(sLang.getLanguageCode(), "UTF-8"));
+        query.append("&target=").append(URLEncoder.encode(tLang.getLanguageCode(), "UTF-8"));
+        query.append("&format=text");
+        for (String text : texts) {
+            query.append("&q=").append(URLEncoder.encode(text, "UTF-8"));
+        }
+        byte[] body = query.toString().getBytes("UTF-8");
+
+        //Sent as POST, so long lists do not exceed the limits of the URL
+        HttpURLConnection conn = (HttpURLConnection) new URL(GT_URL).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("X-HTTP-Method-Override", "GET");
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(body.length);
+        OutputStream out = conn.getOutputStream();
+        out.write(body);
+        out.close();
+        int status = conn.getResponseCode();
+        if (status >= 400) {
+            long retryAfter = TranslationServiceException.parseRetryAfter(conn);
+            conn.disconnect();
+            throw new TranslationServiceException(status, retryAfter);
+        }
+
+        //e.g. {"data":{"translations":[{"translatedText":"..."},{"translatedText":"..."}]}}
+        List<String> translations = new ArrayList<String>(texts.size());
+        Reader in = new InputStreamReader(conn.getInputStream(), "UTF-8");
+        try {
+            JSONReader json = new JSONReader(in);
+            json.beginObject();
+            while (json.hasNext()) {
+                if (!json.nextName().equals("data")) {
+                    json.skipValue();
+                    continue;
+                }
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (!json.nextName().equals("translations")) {
+                        json.skipValue();
+                        continue;
+                    }
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        String translation = "";
+                        json.beginObject();
+                        while (json.hasNext()) {
+                            if (json.nextName().equals("translatedText")) {
+                                translation = json.nextString();
+                            } else {
+                                json.skipValue();
+                            }
+                        }
+                        json.endObject();
+                        translations.add(translation);
+                    }
+                    json.endArray();
+                }
+                json.endObject();
+            }
+            json.endObject();
+        } finally {
+            in.close();
+        }
+        return translations;
+    }
 }
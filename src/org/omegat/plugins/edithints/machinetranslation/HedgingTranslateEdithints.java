@@ -0,0 +1,181 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.util.Language;
+
+/**
+ * Machine translation system that sends hedged requests. This class wraps an
+ * <code>IMachineTranslationEdithints</code> object and tracks the latency of
+ * its requests; when a request takes longer than the 95th percentile of the
+ * latencies observed, a duplicate request is sent as a background request and
+ * the first answer received is used. If the system wrapped is a
+ * <code>RateLimitedTranslateEdithints</code>, no duplicate is sent while it
+ * is holding back the requests: a slow answer is then caused by the service
+ * asking us to slow down, and a duplicate would only add to its load.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class HedgingTranslateEdithints implements BatchTranslation.Layer {
+
+    /** Percentile of the latency after which a hedged request is sent. */
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    /** Minimum delay (in milliseconds) before sending a hedged request. */
+    private static final long MIN_HEDGE_DELAY = 50;
+
+    /** Machine translation system wrapped. */
+    private final IMachineTranslationEdithints mt;
+
+    /** Rate limiter of the system, if <code>mt</code> is one. */
+    private final RateLimitedTranslateEdithints limiter;
+
+    /** Latencies of the last requests to <code>mt</code>. */
+    private final LatencyTracker latencies = new LatencyTracker(200, 20);
+
+    /**
+     * Constructor of the class.
+     * @param mt Machine translation system to be wrapped.
+     */
+    public HedgingTranslateEdithints(IMachineTranslationEdithints mt) {
+        this.mt = mt;
+        this.limiter = (mt instanceof RateLimitedTranslateEdithints)
+                ? (RateLimitedTranslateEdithints) mt : null;
+    }
+
+    /**
+     * Method that returns the tracker of the latencies of the system.
+     * @return Returns the tracker of the latencies of the system.
+     */
+    public LatencyTracker getLatencies() {
+        return latencies;
+    }
+
+    public String getName() {
+        return mt.getName();
+    }
+
+    public String getTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return mt.getTranslation(sLang, tLang, text);
+    }
+
+    public Future<List<String>> getBatchTranslation(Language sLang, Language tLang, List<String> texts) {
+        return BatchTranslation.Submit(this, sLang, tLang, texts);
+    }
+
+    public List<String> translateList(final Language sLang, final Language tLang,
+            final List<String> texts) throws Exception {
+        return Call(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                return BatchTranslation.Translate(mt, sLang, tLang, texts);
+            }
+        });
+    }
+
+    public String getHTMLTranslation(final Language sLang, final Language tLang,
+            final String text) throws Exception {
+        return Call(new Callable<String>() {
+            public String call() throws Exception {
+                return mt.getHTMLTranslation(sLang, tLang, text);
+            }
+        });
+    }
+
+    /**
+     * Method that sends a request, and a duplicate of it if the answer takes
+     * longer than usual. The duplicate is speculative, so it is sent as a
+     * background request (see <code>RequestPriority</code>): it cannot use the
+     * capacity that the rate limiter reserves for the requests of the active
+     * entry.
+     * @param task Request to the wrapped system.
+     * @return Returns the first answer received.
+     * @throws Exception if every request sent fails.
+     */
+    private <T> T Call(final Callable<T> task) throws Exception {
+        Callable<T> request = new Callable<T>() {
+            public T call() throws Exception {
+                long start = System.currentTimeMillis();
+                T result = task.call();
+                latencies.add(System.currentTimeMillis() - start);
+                return result;
+            }
+        };
+
+        long delay = latencies.percentile(HEDGE_PERCENTILE);
+        //Not enough information about the latency yet: no hedging
+        if (delay < 0) {
+            return request.call();
+        }
+
+        CompletionService<T> cs = new ExecutorCompletionService<T>(
+                TranslationExecutor.getExecutor());
+        Future<T> primary = cs.submit(RequestPriority.propagate(request));
+        Future<T> hedge = null;
+        int outstanding = 1;
+        try {
+            Future<T> done = cs.poll(Math.max(delay, MIN_HEDGE_DELAY), TimeUnit.MILLISECONDS);
+            if (done == null && (limiter == null || !limiter.isThrottled())) {
+                hedge = cs.submit(RequestPriority.propagate(request, true));
+                outstanding++;
+            }
+            while (true) {
+                if (done == null) {
+                    done = cs.take();
+                }
+                outstanding--;
+                try {
+                    return done.get();
+                } catch (ExecutionException ex) {
+                    //If the other request is still running, its answer is used
+                    if (outstanding == 0) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof Exception) {
+                            throw (Exception) cause;
+                        }
+                        throw ex;
+                    }
+                }
+                done = null;
+            }
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+}
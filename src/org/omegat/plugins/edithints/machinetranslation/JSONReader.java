@@ -0,0 +1,409 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal streaming (pull) reader of JSON documents. This class reads the JSON
+ * response of a machine translation system directly from the stream of the
+ * HTTP connection, token by token, so the response never needs to be buffered
+ * as a whole. Only the values explicitly asked for with
+ * <code>nextString</code> are built; the rest are skipped with
+ * <code>skipValue</code> without creating any object.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class JSONReader {
+
+    /** Types of the tokens that can be found in a JSON document. */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING,
+        NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /** Stream from which the JSON document is read. */
+    private final Reader in;
+
+    /** Buffer of characters read from <code>in</code>. */
+    private final char[] buffer = new char[4096];
+
+    /** Position of the next character in <code>buffer</code>. */
+    private int pos = 0;
+
+    /** Number of valid characters in <code>buffer</code>. */
+    private int limit = 0;
+
+    /**
+     * Stack of the nested structures: <code>true</code> for objects and
+     * <code>false</code> for arrays.
+     */
+    private boolean[] stack = new boolean[32];
+
+    /** Number of elements in <code>stack</code>. */
+    private int depth = 0;
+
+    /** Tells if the next string found inside an object is a name. */
+    private boolean expectingName = false;
+
+    /** Buffer reused for decoding strings. */
+    private final StringBuilder sb = new StringBuilder();
+
+    /**
+     * Constructor of the class.
+     * @param in Stream from which the JSON document will be read.
+     */
+    public JSONReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Method that returns the type of the next token without consuming it.
+     * @return Returns the type of the next token.
+     * @throws IOException if the stream cannot be read or is not valid JSON.
+     */
+    public Token peek() throws IOException {
+        int c = peekChar();
+        switch (c) {
+            case -1:
+                return Token.END_DOCUMENT;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case '"':
+                return inObject() && expectingName ? Token.NAME : Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                throw new IOException("Unexpected character in JSON: " + (char) c);
+        }
+    }
+
+    /**
+     * Method that tells if there are more elements in the current object or
+     * array.
+     * @return Returns <code>true</code> if the current structure has more
+     * elements.
+     * @throws IOException if the stream cannot be read.
+     */
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+        push(true);
+        expectingName = true;
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+        pop();
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+        push(false);
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+        pop();
+    }
+
+    /**
+     * Method that reads the name of the next member of an object.
+     * @return Returns the name.
+     * @throws IOException if the next token is not a name.
+     */
+    public String nextName() throws IOException {
+        if (peek() != Token.NAME) {
+            throw new IOException("Expected a name in JSON");
+        }
+        String name = readString();
+        expectingName = false;
+        return name;
+    }
+
+    /**
+     * Method that reads the next value as a string. Numbers and booleans are
+     * returned with their literal text.
+     * @return Returns the value, or <code>null</code> if the value is JSON
+     * <code>null</code>.
+     * @throws IOException if the next token is not a primitive value.
+     */
+    public String nextString() throws IOException {
+        Token t = peek();
+        String value;
+        if (t == Token.STRING) {
+            value = readString();
+        } else if (t == Token.NUMBER || t == Token.BOOLEAN) {
+            value = readLiteral();
+        } else if (t == Token.NULL) {
+            readLiteral();
+            value = null;
+        } else {
+            throw new IOException("Expected a value in JSON but found " + t);
+        }
+        valueRead();
+        return value;
+    }
+
+    /**
+     * Method that skips the next value, including nested objects and arrays,
+     * without building any object.
+     * @throws IOException if the stream cannot be read.
+     */
+    public void skipValue() throws IOException {
+        Token t = peek();
+        if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+            int level = 0;
+            do {
+                t = peek();
+                switch (t) {
+                    case BEGIN_OBJECT:
+                        beginObject();
+                        level++;
+                        break;
+                    case BEGIN_ARRAY:
+                        beginArray();
+                        level++;
+                        break;
+                    case END_OBJECT:
+                        endObject();
+                        level--;
+                        break;
+                    case END_ARRAY:
+                        endArray();
+                        level--;
+                        break;
+                    case NAME:
+                        skipString();
+                        expectingName = false;
+                        break;
+                    case END_DOCUMENT:
+                        throw new IOException("Unterminated JSON structure");
+                    default:
+                        skipPrimitive(t);
+                }
+            } while (level > 0);
+        } else if (t == Token.NAME) {
+            skipString();
+            expectingName = false;
+        } else {
+            skipPrimitive(t);
+        }
+    }
+
+    private void skipPrimitive(Token t) throws IOException {
+        if (t == Token.STRING) {
+            skipString();
+        } else {
+            while (!isLiteralEnd(peekRaw())) {
+                pos++;
+            }
+        }
+        valueRead();
+    }
+
+    private boolean inObject() {
+        return depth > 0 && stack[depth - 1];
+    }
+
+    private void push(boolean object) {
+        if (depth == stack.length) {
+            boolean[] bigger = new boolean[depth * 2];
+            System.arraycopy(stack, 0, bigger, 0, depth);
+            stack = bigger;
+        }
+        stack[depth++] = object;
+    }
+
+    private void pop() {
+        depth--;
+        valueRead();
+    }
+
+    /** Method called after a complete value has been consumed. */
+    private void valueRead() {
+        expectingName = inObject();
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peekChar() != expected) {
+            throw new IOException("Expected '" + expected + "' in JSON");
+        }
+        pos++;
+    }
+
+    /**
+     * Method that returns the next significant character without consuming it.
+     * Whitespace and the separators ',' and ':' are skipped.
+     */
+    private int peekChar() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[pos];
+            if (c == ',' || c == ':' || isWhitespace(c)) {
+                pos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    /** Method that returns the next character without consuming it. */
+    private int peekRaw() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private int readChar() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            pos = limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private static boolean isLiteralEnd(int c) {
+        return c == -1 || c == ',' || c == '}' || c == ']' || c == ':' || isWhitespace(c);
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /** Method that reads an unquoted literal (number, boolean or null). */
+    private String readLiteral() throws IOException {
+        sb.setLength(0);
+        while (!isLiteralEnd(peekRaw())) {
+            sb.append(buffer[pos++]);
+        }
+        return sb.toString();
+    }
+
+    /** Method that reads and unescapes a quoted string. */
+    private String readString() throws IOException {
+        expect('"');
+        sb.setLength(0);
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            sb.append(buffer, start, pos - start);
+            int c = readChar();
+            if (c == '"') {
+                return sb.toString();
+            } else if (c == '\\') {
+                sb.append(readEscape());
+            } else if (c == -1) {
+                throw new IOException("Unterminated string in JSON");
+            } else {
+                sb.append((char) c);
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        expect('"');
+        while (true) {
+            int c = readChar();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c == -1) {
+                throw new IOException("Unterminated string in JSON");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = readChar();
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int d = Character.digit(readChar(), 16);
+                    if (d < 0) {
+                        throw new IOException("Invalid unicode escape in JSON");
+                    }
+                    code = code * 16 + d;
+                }
+                return (char) code;
+            case -1:
+                throw new IOException("Unterminated string in JSON");
+            default:
+                return (char) c;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.util.Arrays;
+
+/**
+ * Tracker of the latency of the last requests to a machine translation system.
+ * This class keeps a sliding window with the latencies of the last requests
+ * and computes percentiles on it.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class LatencyTracker {
+
+    /** Latencies (in milliseconds) of the last requests. */
+    private final long[] window;
+
+    /** Number of latencies registered (saturates at the window size). */
+    private int count = 0;
+
+    /** Position where the next latency will be stored. */
+    private int next = 0;
+
+    /** Minimum number of samples needed for computing percentiles. */
+    private final int minSamples;
+
+    /**
+     * Constructor of the class.
+     * @param size Number of requests in the sliding window.
+     * @param minSamples Minimum number of samples needed before percentiles
+     * are computed.
+     */
+    public LatencyTracker(int size, int minSamples) {
+        this.window = new long[size];
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Method that registers the latency of a request.
+     * @param millis Latency in milliseconds.
+     */
+    public synchronized void add(long millis) {
+        window[next] = millis;
+        next = (next + 1) % window.length;
+        if (count < window.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Method that returns a percentile of the latencies in the window.
+     * @param p Percentile, between 0 and 1.
+     * @return Returns the latency in milliseconds, or -1 if there are not
+     * enough samples yet.
+     */
+    public long percentile(double p) {
+        long[] sorted;
+        synchronized (this) {
+            if (count < minSamples) {
+                return -1;
+            }
+            sorted = new long[count];
+            System.arraycopy(window, 0, sorted, 0, count);
+        }
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+    }
+}
@@ -24,6 +24,16 @@
 
 package org.omegat.plugins.edithints.machinetranslation;
 
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import org.omegat.core.machinetranslators.*;
 import org.omegat.gui.exttrans.IMachineTranslationEdithints;
 import org.omegat.util.Language;
@@ -34,11 +44,39 @@ import org.omegat.util.Preferences;
  * 
  * http://www.microsofttranslator.com/dev/
  * http://msdn.microsoft.com/en-us/library/ff512421.aspx
+ * <p>
+ * Lists of texts are translated natively, as an array of texts in a single
+ * request to the Translator Text API v3, when the subscription key is set
+ * (system property <code>microsoft.api.subscription_key</code>, and
+ * <code>microsoft.api.region</code> for regional resources); otherwise, or
+ * if the answer has not one translation for every text, they are sent as an
+ * HTML text.
  * 
  * @author Alex Buloichik (alex73mail@gmail.com)
  * @author Didier Briel
  */
 public class MicrosoftTranslateEdithints extends MicrosoftTranslate implements IMachineTranslationEdithints {
+
+    /** URL of the service. */
+    protected static final String MT_URL = "https://api.cognitive.microsofttranslator.com/translate?api-version=3.0";
+
+    /** System property with the subscription key. */
+    protected static final String PROPERTY_SUBSCRIPTION_KEY = "microsoft.api.subscription_key";
+
+    /** System property with the region of the subscription. */
+    protected static final String PROPERTY_REGION = "microsoft.api.region";
+
+    /** Maximum number of texts in a request accepted by the service. */
+    private static final int MAX_TEXTS = 1000;
+
+    /** Maximum characters in a request accepted by the service. */
+    private static final int MAX_CHARS = 50000;
+
+    /** Connection timeout in milliseconds. */
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    /** Read timeout in milliseconds. */
+    private static final int READ_TIMEOUT = 30000;
     
     @Override
     protected String getPreferenceName() {
@@ -46,6 +84,155 @@ public class MicrosoftTranslateEdithints extends MicrosoftTranslate implements I
     }
 
     public String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception {
+        //The paragraphs sent by the plugin are translated as a list
+        List<String> parts = BatchTranslation.Decode(BatchTranslation.SplitParagraphs(text));
+        if (parts != null && parts.size() > 1 && System.getProperty(PROPERTY_SUBSCRIPTION_KEY) != null) {
+            List<String> translations = translateTexts(sLang, tLang, parts);
+            if (translations != null) {
+                return BatchTranslation.ToHTML(translations);
+            }
+        }
         return super.translate(sLang, tLang, text);
     }
+
+    public Future<List<String>> getBatchTranslation(final Language sLang, final Language tLang,
+            final List<String> texts) {
+        return BatchTranslation.Submit(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                List<String> translations = (System.getProperty(PROPERTY_SUBSCRIPTION_KEY) != null)
+                        ? translateTexts(sLang, tLang, texts) : null;
+                if (translations == null) {
+                    return BatchTranslation.Recover(MicrosoftTranslateEdithints.this, sLang, tLang, texts,
+                            MicrosoftTranslateEdithints.super.translate(sLang, tLang, BatchTranslation.ToHTML(texts)));
+                }
+                return translations;
+            }
+        });
+    }
+
+    /**
+     * Method that translates a list of plain texts with as few requests as
+     * possible.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param texts Texts to be translated.
+     * @return Returns the translation of every text, or <code>null</code> if
+     * the service did not return one translation for every text.
+     */
+    protected List<String> translateTexts(Language sLang, Language tLang, List<String> texts) throws Exception {
+        List<String> translations = new ArrayList<String>(texts.size());
+        int from = 0;
+        while (from < texts.size()) {
+            int to = from;
+            int chars = 0;
+            while (to < texts.size() && to - from < MAX_TEXTS
+                    && (to == from || chars + texts.get(to).length() <= MAX_CHARS)) {
+                chars += texts.get(to).length();
+                to++;
+            }
+            List<String> chunk = texts.subList(from, to);
+            List<String> translated = request(sLang, tLang, chunk);
+            if (translated.size() != chunk.size()) {
+                return null;
+            }
+            translations.addAll(translated);
+            from = to;
+        }
+        return translations;
+    }
+
+    /**
+     * Method that sends a request with an array of texts.
+     * @return Returns the translations in the answer.
+     */
+    private List<String> request(Language sLang, Language tLang, List<String> texts) throws Exception {
+        //e.g. [{"Text":"..."},{"Text":"..."}]
+        StringBuilder json = new StringBuilder("[");
+        for (String text : texts) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"Text\":");
+            quote(text, json);
+            json.append('}');
+        }
+        json.append(']');
+        byte[] body = json.toString().getBytes("UTF-8");
+
+        String url = MT_URL + "&from=" + URLEncoder.encode(sLang.getLanguageCode(), "UTF-8")
+                + "&to=" + URLEncoder.encode(tLang.getLanguageCode(), "UTF-8");
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Ocp-Apim-Subscription-Key", System.getProperty(PROPERTY_SUBSCRIPTION_KEY));
+        if (System.getProperty(PROPERTY_REGION) != null) {
+            conn.setRequestProperty("Ocp-Apim-Subscription-Region", System.getProperty(PROPERTY_REGION));
+        }
+        conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(body.length);
+        OutputStream out = conn.getOutputStream();
+        out.write(body);
+        out.close();
+        int status = conn.getResponseCode();
+        if (status >= 400) {
+            long retryAfter = TranslationServiceException.parseRetryAfter(conn);
+            conn.disconnect();
+            throw new TranslationServiceException(status, retryAfter);
+        }
+
+        //e.g. [{"translations":[{"text":"...","to":"es"}]},{"translations":[...]}]
+        List<String> translations = new ArrayList<String>(texts.size());
+        Reader in = new InputStreamReader(conn.getInputStream(), "UTF-8");
+        try {
+            JSONReader reader = new JSONReader(in);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String translation = "";
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("translations")) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("text")) {
+                                translation = reader.nextString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+                translations.add(translation);
+            }
+            reader.endArray();
+        } finally {
+            in.close();
+        }
+        return translations;
+    }
+
+    /** Method that appends a text as a JSON string. */
+    private static void quote(String text, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
 }
@@ -0,0 +1,69 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when the answer of a machine translation system to a list
+ * of texts does not contain one translation for every text, so the
+ * translations cannot be matched with the texts.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class PartCountException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of texts sent. */
+    private final int expected;
+
+    /** Number of translations obtained. */
+    private final int obtained;
+
+    /**
+     * Constructor of the class.
+     * @param expected Number of texts sent.
+     * @param obtained Number of translations obtained.
+     */
+    public PartCountException(int expected, int obtained) {
+        super("Sub-segments not correctly translated: expected " + expected + ", obtained " + obtained);
+        this.expected = expected;
+        this.obtained = obtained;
+    }
+
+    public int getExpected() {
+        return expected;
+    }
+
+    public int getObtained() {
+        return obtained;
+    }
+}
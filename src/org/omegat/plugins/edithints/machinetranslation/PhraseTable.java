@@ -0,0 +1,197 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Read-only bilingual phrase table stored in a memory-mapped binary file. The
+ * file is built by <code>PhraseTableCompiler</code> and contains the entries
+ * sorted by the UTF-8 bytes of their source phrase, so look-ups are binary
+ * searches performed directly on the mapped bytes: the table is never loaded
+ * into the heap and its pages are shared by all the processes that map it.
+ * <p>
+ * Layout of the file (big-endian): the magic number, the version, the number
+ * of entries <i>n</i>, <i>n</i> offsets to the entries and the entries
+ * themselves, each of them made of the length of the source phrase (short),
+ * its UTF-8 bytes, the length of the target phrase (short) and its UTF-8 bytes.
+ * Offsets are ints and the file is mapped in a single buffer, so tables larger
+ * than 2 GB are rejected.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class PhraseTable {
+
+    /** Magic number identifying phrase table files ("EHPT"). */
+    static final int MAGIC = 0x45485054;
+
+    /** Version of the format of the file. */
+    static final int VERSION = 1;
+
+    /** Size of the header: magic number, version and number of entries. */
+    static final int HEADER_SIZE = 12;
+
+    /** Contents of the file. */
+    private final ByteBuffer buffer;
+
+    /** Number of entries in the table. */
+    private final int size;
+
+    /**
+     * Constructor of the class, which maps the file in memory.
+     * @param file Compiled phrase table.
+     * @throws IOException if the file cannot be read or is not a phrase table.
+     */
+    public PhraseTable(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than the 2 GB supported for phrase tables");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a compiled phrase table");
+            }
+            if (mapped.getInt(4) != VERSION) {
+                throw new IOException(file + ": unsupported phrase table version " + mapped.getInt(4));
+            }
+            buffer = mapped;
+            size = mapped.getInt(8);
+        } finally {
+            //The mapping remains valid after closing the file
+            raf.close();
+        }
+    }
+
+    /**
+     * Method that returns the number of entries in the table.
+     * @return Returns the number of entries in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method that normalises a phrase as done when the table is compiled:
+     * lowercased and with single spaces between words.
+     * @param phrase Phrase to be normalised.
+     * @return Returns the normalised phrase.
+     */
+    public static String normalise(String phrase) {
+        return phrase.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Method that returns the translation of a phrase.
+     * @param phrase Phrase to be translated (normalised with
+     * <code>normalise</code>).
+     * @return Returns the translation, or <code>null</code> if the phrase is
+     * not in the table.
+     */
+    public String lookup(String phrase) throws IOException {
+        byte[] key = phrase.getBytes("UTF-8");
+        int idx = lowerBound(key);
+        if (idx < size && compare(entryOffset(idx), key, false) == 0) {
+            int offset = entryOffset(idx);
+            int keyLength = buffer.getShort(offset) & 0xffff;
+            return readString(offset + 2 + keyLength);
+        }
+        return null;
+    }
+
+    /**
+     * Method that tells if some phrase in the table starts with a given
+     * prefix.
+     * @param prefix Prefix (normalised with <code>normalise</code>).
+     * @return Returns <code>true</code> if at least one phrase starts with the
+     * prefix.
+     */
+    public boolean hasPrefix(String prefix) throws IOException {
+        byte[] key = prefix.getBytes("UTF-8");
+        int idx = lowerBound(key);
+        return idx < size && compare(entryOffset(idx), key, true) == 0;
+    }
+
+    /** Method that returns the index of the first entry not smaller than the key. */
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(entryOffset(mid), key, false) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int entryOffset(int idx) {
+        return buffer.getInt(HEADER_SIZE + 4 * idx);
+    }
+
+    /**
+     * Method that compares the source phrase of an entry with a key, byte by
+     * byte as unsigned values (which is the order of the code points).
+     * @param prefix If <code>true</code>, an entry starting with the key is
+     * considered equal to it.
+     */
+    private int compare(int offset, byte[] key, boolean prefix) {
+        int length = buffer.getShort(offset) & 0xffff;
+        int start = offset + 2;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int diff = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        if (prefix && length >= key.length) {
+            return 0;
+        }
+        return length - key.length;
+    }
+
+    private String readString(int offset) throws IOException {
+        int length = buffer.getShort(offset) & 0xffff;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, "UTF-8");
+    }
+}
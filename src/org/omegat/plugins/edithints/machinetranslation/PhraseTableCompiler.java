@@ -0,0 +1,200 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiler of bilingual phrase tables into the binary format read by
+ * <code>PhraseTable</code>. The input is a UTF-8 text file with one entry per
+ * line: the source phrase and the target phrase separated by a tab (any
+ * further column, such as a probability, is ignored). Only phrases of up to
+ * <code>MAX_NGRAM</code> words on both sides are kept and, when a phrase
+ * appears several times, the first translation is kept, so the input should
+ * be sorted by decreasing probability.
+ * <p>
+ * Usage: <code>PhraseTableCompiler input.txt output.bin [reverse]</code>
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class PhraseTableCompiler {
+
+    /** Maximum length (in words) of the phrases kept. */
+    public static final int MAX_NGRAM = 3;
+
+    /** Comparator of UTF-8 byte arrays as unsigned values. */
+    private static final Comparator<byte[]> BYTES_ORDER = new Comparator<byte[]>() {
+        public int compare(byte[] a, byte[] b) {
+            int n = Math.min(a.length, b.length);
+            for (int i = 0; i < n; i++) {
+                int diff = (a[i] & 0xff) - (b[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private PhraseTableCompiler() {
+    }
+
+    /**
+     * Method that compiles a phrase table.
+     * @param input Text file with the phrase table.
+     * @param output Binary file to be written.
+     * @param reverse If <code>true</code>, the columns are swapped, so the
+     * table translates from the target language into the source language.
+     * @return Returns the number of entries written.
+     * @throws IOException if the files cannot be read or written, or the
+     * compiled table would be larger than 2 GB.
+     */
+    public static int compile(File input, File output, boolean reverse) throws IOException {
+        Map<String, String> entries = new HashMap<String, String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(input), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\t");
+                if (columns.length < 2) {
+                    continue;
+                }
+                String source = PhraseTable.normalise(reverse ? columns[1] : columns[0]);
+                String target = reverse ? columns[0] : columns[1];
+                target = target.trim().replaceAll("\\s+", " ");
+                if (source.length() == 0 || target.length() == 0
+                        || countWords(source) > MAX_NGRAM || countWords(target) > MAX_NGRAM) {
+                    continue;
+                }
+                if (!entries.containsKey(source)) {
+                    entries.put(source, target);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        List<byte[][]> sorted = new ArrayList<byte[][]>(entries.size());
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            byte[] key = e.getKey().getBytes("UTF-8");
+            byte[] value = e.getValue().getBytes("UTF-8");
+            if (key.length <= 0xffff && value.length <= 0xffff) {
+                sorted.add(new byte[][]{key, value});
+            }
+        }
+        Collections.sort(sorted, new Comparator<byte[][]>() {
+            public int compare(byte[][] a, byte[][] b) {
+                return BYTES_ORDER.compare(a[0], b[0]);
+            }
+        });
+
+        //Entries are addressed with int offsets and the whole file is mapped in
+        //a single buffer, so tables are limited to 2 GB
+        long length = PhraseTable.HEADER_SIZE + 4L * sorted.size();
+        for (byte[][] entry : sorted) {
+            length += 4 + entry[0].length + entry[1].length;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException(input + ": the compiled phrase table would take " + length
+                    + " bytes, more than the 2 GB supported; split it by language pair or prune it");
+        }
+
+        //Written to a temporary file first, which then replaces the table in a
+        //single atomic rename, so a table being mapped by other processes is
+        //never seen half written nor missing
+        File tmp = File.createTempFile(output.getName(), ".tmp", output.getAbsoluteFile().getParentFile());
+        boolean done = false;
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp)));
+            try {
+                out.writeInt(PhraseTable.MAGIC);
+                out.writeInt(PhraseTable.VERSION);
+                out.writeInt(sorted.size());
+                int offset = PhraseTable.HEADER_SIZE + 4 * sorted.size();
+                for (byte[][] entry : sorted) {
+                    out.writeInt(offset);
+                    offset += 4 + entry[0].length + entry[1].length;
+                }
+                for (byte[][] entry : sorted) {
+                    out.writeShort(entry[0].length);
+                    out.write(entry[0]);
+                    out.writeShort(entry[1].length);
+                    out.write(entry[1]);
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            done = true;
+        } finally {
+            if (!done) {
+                tmp.delete();
+            }
+        }
+        return sorted.size();
+    }
+
+    private static int countWords(String phrase) {
+        int count = 1;
+        for (int i = 0; i < phrase.length(); i++) {
+            if (phrase.charAt(i) == ' ') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PhraseTableCompiler input.txt output.bin [reverse]");
+            System.exit(1);
+        }
+        boolean reverse = args.length > 2 && args[2].equals("reverse");
+        int n = compile(new File(args[0]), new File(args[1]), reverse);
+        System.out.println(n + " entries written to " + args[1]);
+    }
+}
@@ -0,0 +1,267 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.plugins.edithints.EntityDecoder;
+import org.omegat.util.Language;
+import org.omegat.util.Log;
+
+/**
+ * Offline machine translation system based on bilingual phrase tables. This
+ * class translates the sub-segments (n-grams of up to three words) sent by the
+ * plugin by looking them up in memory-mapped phrase tables
+ * (<code>PhraseTable</code>), so no network is needed. The tables are read
+ * from a directory containing, for each language pair, either a compiled table
+ * <code>sl-tl.bin</code> or a text table <code>sl-tl.txt</code> (or
+ * <code>tl-sl.txt</code>, which is used reversed). Text tables are compiled
+ * in the background when the project is loaded (see <code>prepare</code>);
+ * large tables are better compiled beforehand with
+ * <code>PhraseTableCompiler</code>. Phrases not found in the table are translated by the
+ * longest phrases found from left to right; if some word cannot be
+ * translated, the translation of the sub-segment is left empty.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class PhraseTableTranslateEdithints implements IMachineTranslationEdithints {
+
+    /** Directory containing the phrase tables. */
+    private final File directory;
+
+    /** Phrase tables already opened, by language pair. */
+    private final ConcurrentMap<String, PhraseTable> tables = new ConcurrentHashMap<String, PhraseTable>();
+
+    /** Language pairs whose table is being opened in the background. */
+    private final ConcurrentMap<String, Boolean> compiling = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Constructor of the class.
+     * @param directory Directory containing the phrase tables.
+     */
+    public PhraseTableTranslateEdithints(File directory) {
+        this.directory = directory;
+    }
+
+    public String getName() {
+        return "Phrase table";
+    }
+
+    public String getTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return translate(getTable(sLang, tLang), text);
+    }
+
+    public Future<List<String>> getBatchTranslation(final Language sLang, final Language tLang,
+            final List<String> texts) {
+        return BatchTranslation.Submit(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                return translate(getTable(sLang, tLang), texts);
+            }
+        });
+    }
+
+    public String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception {
+        List<String> parts = BatchTranslation.Decode(BatchTranslation.SplitParagraphs(text));
+        if (parts == null) {
+            //Not a list of paragraphs: translated as a single one
+            parts = Collections.singletonList(EntityDecoder.decode(text));
+        }
+        return BatchTranslation.ToHTML(translate(getTable(sLang, tLang), parts));
+    }
+
+    /**
+     * Method that translates a list of phrases.
+     * @return Returns the translation of every phrase, empty if some word
+     * cannot be translated.
+     */
+    static List<String> translate(PhraseTable table, List<String> phrases) throws IOException {
+        List<String> translations = new ArrayList<String>(phrases.size());
+        for (String phrase : phrases) {
+            String translation = translate(table, phrase);
+            translations.add(translation == null ? "" : translation);
+        }
+        return translations;
+    }
+
+    /**
+     * Method that translates a phrase: as a whole if it is in the table or
+     * otherwise by the longest phrases in the table, from left to right.
+     * @return Returns the translation, or <code>null</code> if some word
+     * cannot be translated.
+     */
+    static String translate(PhraseTable table, String phrase) throws IOException {
+        String normalised = PhraseTable.normalise(phrase);
+        if (normalised.length() == 0) {
+            return "";
+        }
+        String whole = table.lookup(normalised);
+        if (whole != null) {
+            return whole;
+        }
+        String[] words = normalised.split(" ");
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < words.length) {
+            String best = null;
+            int bestEnd = i;
+            StringBuilder candidate = new StringBuilder();
+            for (int j = i; j < words.length && j - i < PhraseTableCompiler.MAX_NGRAM; j++) {
+                if (j > i) {
+                    candidate.append(' ');
+                }
+                candidate.append(words[j]);
+                String key = candidate.toString();
+                String tr = table.lookup(key);
+                if (tr != null) {
+                    best = tr;
+                    bestEnd = j + 1;
+                }
+                //No longer phrase can be found with this beginning
+                if (!table.hasPrefix(key + " ")) {
+                    break;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(best);
+            i = bestEnd;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that opens the phrase tables of a language pair, in both
+     * directions, in a background thread, compiling them first if needed. It
+     * is called when the project is loaded, so the requests do not wait for
+     * the compilation.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     */
+    public void prepare(Language sLang, Language tLang) {
+        String sl = sLang.getLanguageCode();
+        String tl = tLang.getLanguageCode();
+        prepare(sl, tl);
+        prepare(tl, sl);
+    }
+
+    /** Method that opens the phrase table of a language pair in a background thread. */
+    private void prepare(final String sl, final String tl) {
+        final String pair = sl + "-" + tl;
+        if (tables.containsKey(pair) || compiling.putIfAbsent(pair, Boolean.TRUE) != null) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    open(sl, tl);
+                } catch (TranslationServiceException tse) {
+                    //No table for the pair: the requests will fail the same way
+                } catch (IOException ioe) {
+                    Log.log("EditHints: could not compile the phrase table for " + pair);
+                    Log.log(ioe);
+                } finally {
+                    compiling.remove(pair);
+                }
+            }
+        }, "EditHints phrase table " + pair);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Method that returns the phrase table for a language pair. Tables are
+     * never compiled here: if the table has to be compiled, its compilation is
+     * started in the background (see <code>prepare</code>) and the request
+     * fails until it finishes.
+     * @throws TranslationServiceException if there is no table for the pair
+     * or it is being compiled.
+     */
+    private PhraseTable getTable(Language sLang, Language tLang) throws IOException, TranslationServiceException {
+        String sl = sLang.getLanguageCode();
+        String tl = tLang.getLanguageCode();
+        String pair = sl + "-" + tl;
+        PhraseTable table = tables.get(pair);
+        if (table != null) {
+            return table;
+        }
+        if (compiling.containsKey(pair) || needsCompiling(sl, tl)) {
+            prepare(sl, tl);
+            throw new TranslationServiceException(HttpURLConnection.HTTP_UNAVAILABLE, 0,
+                    "The phrase table for " + pair + " is being compiled");
+        }
+        return open(sl, tl);
+    }
+
+    /** Method that tells if the text table of a language pair has to be compiled. */
+    private boolean needsCompiling(String sl, String tl) {
+        File bin = new File(directory, sl + "-" + tl + ".bin");
+        File txt = new File(directory, sl + "-" + tl + ".txt");
+        File reversed = new File(directory, tl + "-" + sl + ".txt");
+        return (txt.exists() && (!bin.exists() || bin.lastModified() < txt.lastModified()))
+                || (!bin.exists() && reversed.exists());
+    }
+
+    /**
+     * Method that opens the phrase table of a language pair, compiling it
+     * first if needed.
+     * @throws TranslationServiceException if there is no table for the pair.
+     */
+    private PhraseTable open(String sl, String tl) throws IOException, TranslationServiceException {
+        String pair = sl + "-" + tl;
+        File bin = new File(directory, pair + ".bin");
+        File txt = new File(directory, pair + ".txt");
+        File reversed = new File(directory, tl + "-" + sl + ".txt");
+        if (txt.exists() && (!bin.exists() || bin.lastModified() < txt.lastModified())) {
+            PhraseTableCompiler.compile(txt, bin, false);
+        } else if (!bin.exists() && reversed.exists()) {
+            PhraseTableCompiler.compile(reversed, bin, true);
+        }
+        if (!bin.exists()) {
+            throw new TranslationServiceException(TranslationServiceException.UNSUPPORTED_PAIR, 0,
+                    "No phrase table for " + pair + " in " + directory);
+        }
+        PhraseTable table = new PhraseTable(bin);
+        PhraseTable opened = tables.putIfAbsent(pair, table);
+        return (opened == null) ? table : opened;
+    }
+}
@@ -0,0 +1,384 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.plugins.edithints.EntityDecoder;
+import org.omegat.util.Language;
+
+/**
+ * Machine translation system run as a local program. The program is started
+ * once for every language pair and kept alive: every sub-segment is written
+ * as a line to its standard input and its translation is expected as a line
+ * in its standard output, in the same order. All the sub-segments of a
+ * request are written at once by a thread of the process and requests from
+ * several threads are pipelined, so the program never waits for the plugin.
+ * If the program dies, stops answering or writes unexpected output, the
+ * requests pending fail and the program is started again for the next
+ * request.
+ * <p>
+ * The command is given as a template where <code>{sl}</code> and
+ * <code>{tl}</code> are replaced by the language codes; arguments with spaces
+ * can be quoted. The program must write every translation as soon as it has
+ * read the line: most programs buffer their output when it is not a terminal,
+ * so the requests would time out. If the command has the argument
+ * <code>-z</code>, a NUL character is written after the lines of every request
+ * and removed from the output; this is the null-flushing mode of Apertium,
+ * which then writes out everything translated when it reads a NUL character,
+ * for instance <code>apertium -z -u {sl}-{tl}</code>.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class ProcessTranslateEdithints implements IMachineTranslationEdithints {
+
+    /** Maximum time (in milliseconds) to wait for the translations of a request. */
+    static final long TIMEOUT = 30000;
+
+    /** Processes running, destroyed when the virtual machine exits. */
+    private static final Set<Process> LIVE = Collections.synchronizedSet(new HashSet<Process>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("EditHints process cleanup") {
+            @Override
+            public void run() {
+                synchronized (LIVE) {
+                    for (Process process : LIVE) {
+                        process.destroy();
+                    }
+                }
+            }
+        });
+    }
+
+    /** Template of the command. */
+    private final String command;
+
+    /** Processes started, by language pair. */
+    private final Map<String, Channel> channels = new HashMap<String, Channel>();
+
+    /**
+     * Constructor of the class.
+     * @param command Template of the command, where <code>{sl}</code> and
+     * <code>{tl}</code> are replaced by the language codes.
+     */
+    public ProcessTranslateEdithints(String command) {
+        this.command = command;
+    }
+
+    public String getName() {
+        return "Local command";
+    }
+
+    public String getTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return getChannel(sLang, tLang).translate(new String[]{text})[0];
+    }
+
+    public Future<List<String>> getBatchTranslation(final Language sLang, final Language tLang,
+            final List<String> texts) {
+        return BatchTranslation.Submit(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                return Arrays.asList(getChannel(sLang, tLang).translate(
+                        texts.toArray(new String[texts.size()])));
+            }
+        });
+    }
+
+    public String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception {
+        List<String> parts = BatchTranslation.Decode(BatchTranslation.SplitParagraphs(text));
+        if (parts == null) {
+            //Not a list of paragraphs: translated as a single one
+            parts = Collections.singletonList(EntityDecoder.decode(text));
+        }
+        return BatchTranslation.ToHTML(Arrays.asList(getChannel(sLang, tLang).translate(
+                parts.toArray(new String[parts.size()]))));
+    }
+
+    /**
+     * Method that stops all the processes started by this system.
+     */
+    public synchronized void close() {
+        for (Channel channel : channels.values()) {
+            channel.fail(new IOException("Translation system closed"));
+        }
+        channels.clear();
+    }
+
+    /**
+     * Method that returns the process for a language pair, starting it if it
+     * was not running.
+     */
+    private synchronized Channel getChannel(Language sLang, Language tLang) throws IOException {
+        String sl = sLang.getLanguageCode();
+        String tl = tLang.getLanguageCode();
+        String pair = sl + "-" + tl;
+        Channel channel = channels.get(pair);
+        if (channel == null || !channel.isAlive()) {
+            channel = new Channel(parseCommand(command, sl, tl));
+            channels.put(pair, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Method that splits the template of a command into its arguments and
+     * replaces the language codes. Arguments can be quoted with double quotes.
+     * @param template Template of the command.
+     * @param sl Source language code.
+     * @param tl Target language code.
+     * @return Returns the arguments of the command.
+     */
+    static List<String> parseCommand(String template, String sl, String tl) throws IOException {
+        List<String> args = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        boolean inArg = false;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inArg = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inArg) {
+                    args.add(sb.toString().replace("{sl}", sl).replace("{tl}", tl));
+                    sb.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                sb.append(c);
+                inArg = true;
+            }
+        }
+        if (quoted) {
+            throw new IOException("Unbalanced quotes in command: " + template);
+        }
+        if (inArg) {
+            args.add(sb.toString().replace("{sl}", sl).replace("{tl}", tl));
+        }
+        if (args.isEmpty()) {
+            throw new IOException("No command configured");
+        }
+        return args;
+    }
+
+    /** Request waiting for the translations of its lines. */
+    private static class Request {
+        final String[] results;
+        int received = 0;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile IOException error = null;
+
+        Request(int lines) {
+            results = new String[lines];
+        }
+    }
+
+    /**
+     * Running process, with a thread writing the lines of the requests to its
+     * input and a thread reading its output and assigning every line to the
+     * oldest request pending. Only the queue of requests pending is shared
+     * with the reader, so the process can write while lines are written to it.
+     */
+    private static class Channel {
+        private final Process process;
+        private final Writer stdin;
+        private final boolean nullFlush;
+        private final LinkedList<Request> pending = new LinkedList<Request>();
+        private final BlockingQueue<String[]> outbox = new LinkedBlockingQueue<String[]>();
+        private final Thread writer;
+        private boolean alive = true;
+
+        Channel(List<String> args) throws IOException {
+            process = new ProcessBuilder(args).start();
+            LIVE.add(process);
+            nullFlush = args.contains("-z");
+            stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), "UTF-8"));
+            final BufferedReader stdout = new BufferedReader(new InputStreamReader(
+                    process.getInputStream(), "UTF-8"));
+            Thread reader = new Thread("EditHints process reader " + args.get(0)) {
+                @Override
+                public void run() {
+                    read(stdout);
+                }
+            };
+            reader.setDaemon(true);
+            reader.start();
+            writer = new Thread("EditHints process writer " + args.get(0)) {
+                @Override
+                public void run() {
+                    write();
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+            //The error output is discarded, but it must be read so the
+            //process does not block when the pipe is full
+            final InputStream stderr = process.getErrorStream();
+            Thread drainer = new Thread("EditHints process stderr " + args.get(0)) {
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[1024];
+                    try {
+                        while (stderr.read(buffer) >= 0) {
+                        }
+                    } catch (IOException ioe) {
+                    }
+                }
+            };
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+
+        synchronized boolean isAlive() {
+            return alive;
+        }
+
+        /**
+         * Method that sends some lines to the process and waits for their
+         * translations.
+         */
+        String[] translate(String[] lines) throws IOException, InterruptedException {
+            Request request = new Request(lines.length);
+            if (lines.length == 0) {
+                return request.results;
+            }
+            synchronized (this) {
+                if (!alive) {
+                    throw new IOException("Translation process not running");
+                }
+                //Requests are queued in the same order their lines are written
+                pending.add(request);
+                outbox.add(lines);
+            }
+            if (!request.done.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+                fail(new IOException("Translation process did not answer in " + TIMEOUT + " ms"));
+            }
+            if (request.error != null) {
+                throw request.error;
+            }
+            return request.results;
+        }
+
+        private void write() {
+            try {
+                while (true) {
+                    String[] lines = outbox.take();
+                    for (String line : lines) {
+                        stdin.write(line.replace('\r', ' ').replace('\n', ' ').replace('\u0000', ' '));
+                        stdin.write('\n');
+                    }
+                    if (nullFlush) {
+                        stdin.write('\u0000');
+                    }
+                    //The lines of the requests queued meanwhile are flushed together
+                    if (outbox.isEmpty()) {
+                        stdin.flush();
+                    }
+                }
+            } catch (InterruptedException ie) {
+                //The process was stopped
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+        }
+
+        private void read(BufferedReader stdout) {
+            try {
+                String line;
+                while ((line = stdout.readLine()) != null) {
+                    if (nullFlush) {
+                        //The NUL characters are written after the last line of every request
+                        line = line.replace("\u0000", "");
+                    }
+                    Request done = null;
+                    synchronized (this) {
+                        Request head = pending.peek();
+                        if (head == null) {
+                            if (alive) {
+                                fail(new IOException("Unexpected output from the translation process: " + line));
+                            }
+                            return;
+                        }
+                        head.results[head.received++] = line;
+                        if (head.received == head.results.length) {
+                            done = pending.poll();
+                        }
+                    }
+                    if (done != null) {
+                        done.done.countDown();
+                    }
+                }
+                fail(new IOException("Translation process exited"));
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+        }
+
+        /**
+         * Method that stops the process and makes all the requests pending
+         * fail with an error.
+         */
+        synchronized void fail(IOException error) {
+            if (!alive) {
+                return;
+            }
+            alive = false;
+            for (Request request : pending) {
+                request.error = error;
+                request.done.countDown();
+            }
+            pending.clear();
+            outbox.clear();
+            writer.interrupt();
+            LIVE.remove(process);
+            process.destroy();
+        }
+    }
+}
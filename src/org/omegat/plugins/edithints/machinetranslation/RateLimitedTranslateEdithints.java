@@ -0,0 +1,173 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.util.Language;
+
+/**
+ * Machine translation system with adaptive rate limiting. This class wraps an
+ * <code>IMachineTranslationEdithints</code> object so that every request
+ * takes a token from a <code>TokenBucket</code>. When the service answers
+ * that it is overloaded (HTTP 429) the rate is reduced and the
+ * <code>Retry-After</code> delay is honoured; overloaded and failing (5xx)
+ * requests are retried with exponential backoff and random jitter.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class RateLimitedTranslateEdithints implements BatchTranslation.Layer {
+
+    /** Maximum number of retries for a request. */
+    private static final int MAX_RETRIES = 3;
+
+    /** Base delay (in milliseconds) of the exponential backoff. */
+    private static final long BASE_BACKOFF = 200;
+
+    /** Random generator for the jitter of the backoff. */
+    private static final Random random = new Random();
+
+    /** Machine translation system wrapped. */
+    private final IMachineTranslationEdithints mt;
+
+    /** Bucket limiting the rate of the requests to <code>mt</code>. */
+    private final TokenBucket bucket;
+
+    /** Number of requests waiting to be retried. */
+    private final AtomicInteger retrying = new AtomicInteger();
+
+    /**
+     * Constructor of the class with the default limits: 10 requests per
+     * second (adapting between 0.5 and 20), bursts of 10 requests and 3 of
+     * them reserved to the active entry.
+     * @param mt Machine translation system to be wrapped.
+     */
+    public RateLimitedTranslateEdithints(IMachineTranslationEdithints mt) {
+        this(mt, new TokenBucket(10, 0.5, 20, 10, 3));
+    }
+
+    /**
+     * Constructor of the class.
+     * @param mt Machine translation system to be wrapped.
+     * @param bucket Bucket limiting the rate of the requests.
+     */
+    public RateLimitedTranslateEdithints(IMachineTranslationEdithints mt, TokenBucket bucket) {
+        this.mt = mt;
+        this.bucket = bucket;
+    }
+
+    public TokenBucket getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Method that tells if the requests to the system are being held back,
+     * either by the bucket or because some request is waiting to be retried
+     * after the service failed or asked to slow down.
+     * @return Returns <code>true</code> if the requests are being held back.
+     */
+    public boolean isThrottled() {
+        return retrying.get() > 0 || bucket.isThrottled();
+    }
+
+    public String getName() {
+        return mt.getName();
+    }
+
+    public String getTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return mt.getTranslation(sLang, tLang, text);
+    }
+
+    public Future<List<String>> getBatchTranslation(Language sLang, Language tLang, List<String> texts) {
+        return BatchTranslation.Submit(this, sLang, tLang, texts);
+    }
+
+    public List<String> translateList(final Language sLang, final Language tLang,
+            final List<String> texts) throws Exception {
+        return Call(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                return BatchTranslation.Translate(mt, sLang, tLang, texts);
+            }
+        });
+    }
+
+    public String getHTMLTranslation(final Language sLang, final Language tLang,
+            final String text) throws Exception {
+        return Call(new Callable<String>() {
+            public String call() throws Exception {
+                return mt.getHTMLTranslation(sLang, tLang, text);
+            }
+        });
+    }
+
+    /**
+     * Method that sends a request when the bucket allows it, retrying it if
+     * the service is overloaded or fails.
+     * @param request Request to the wrapped system.
+     * @return Returns the answer to the request.
+     * @throws Exception if the request fails and cannot be retried.
+     */
+    private <T> T Call(Callable<T> request) throws Exception {
+        boolean background = RequestPriority.isBackground();
+        for (int attempt = 0;; attempt++) {
+            bucket.acquire(background);
+            try {
+                T result = request.call();
+                bucket.onSuccess();
+                return result;
+            } catch (Exception ex) {
+                int status = TranslationServiceException.getStatus(ex);
+                if (!TranslationServiceException.isRetryable(status) || attempt >= MAX_RETRIES) {
+                    throw ex;
+                }
+                long retryAfter = (ex instanceof TranslationServiceException)
+                        ? ((TranslationServiceException) ex).getRetryAfter() : 0;
+                if (status == TranslationServiceException.TOO_MANY_REQUESTS) {
+                    bucket.onThrottled(retryAfter);
+                }
+                //Full jitter: random delay between 0 and the exponential backoff
+                long backoff = BASE_BACKOFF << attempt;
+                long delay;
+                synchronized (random) {
+                    delay = (long) (random.nextDouble() * backoff);
+                }
+                retrying.incrementAndGet();
+                try {
+                    Thread.sleep(Math.max(delay, retryAfter));
+                } finally {
+                    retrying.decrementAndGet();
+                }
+            }
+        }
+    }
+}
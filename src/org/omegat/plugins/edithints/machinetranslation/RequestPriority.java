@@ -0,0 +1,103 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Priority of the requests sent by the current thread. Requests for the
+ * active entry are foreground requests; speculative requests, such as the
+ * duplicates sent by <code>HedgingTranslateEdithints</code>, are background
+ * requests, which cannot use the capacity that the rate limiters reserve for
+ * the active entry (see <code>TokenBucket</code>). Since the priority is kept
+ * per thread, it must be propagated with <code>propagate</code> when a
+ * request is handed over to another thread.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class RequestPriority {
+
+    /** Priority of the requests of each thread. */
+    private static final ThreadLocal<Boolean> background = new ThreadLocal<Boolean>();
+
+    private RequestPriority() {
+    }
+
+    /**
+     * Method that tells if the requests of the current thread are background
+     * requests.
+     * @return Returns <code>true</code> for background requests.
+     */
+    public static boolean isBackground() {
+        return Boolean.TRUE.equals(background.get());
+    }
+
+    /**
+     * Method that sets the priority of the requests of the current thread.
+     * @param value <code>true</code> for background requests.
+     */
+    public static void setBackground(boolean value) {
+        if (value) {
+            background.set(Boolean.TRUE);
+        } else {
+            background.remove();
+        }
+    }
+
+    /**
+     * Method that wraps a task so that it runs with the priority of the
+     * current thread, whichever the thread that finally runs it.
+     * @param task Task to be wrapped.
+     * @return Returns the wrapped task.
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        return propagate(task, isBackground());
+    }
+
+    /**
+     * Method that wraps a task so that it runs with the given priority,
+     * whichever the thread that finally runs it.
+     * @param task Task to be wrapped.
+     * @param value <code>true</code> for background requests.
+     * @return Returns the wrapped task.
+     */
+    public static <T> Callable<T> propagate(final Callable<T> task, final boolean value) {
+        return new Callable<T>() {
+            public T call() throws Exception {
+                boolean former = isBackground();
+                setBackground(value);
+                try {
+                    return task.call();
+                } finally {
+                    setBackground(former);
+                }
+            }
+        };
+    }
+}
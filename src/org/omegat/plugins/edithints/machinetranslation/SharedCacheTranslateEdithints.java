@@ -0,0 +1,136 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.util.Language;
+
+/**
+ * Machine translation system that looks the translations up in a cache shared
+ * by a team before requesting them. This class wraps an
+ * <code>IMachineTranslationEdithints</code> object: the sub-segments of a
+ * request are looked up together in the shared cache (a
+ * <code>TranslationCacheServer</code>), only the ones it does not know are
+ * sent to the system, and their translations are published to the cache for
+ * the rest of the team.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class SharedCacheTranslateEdithints implements BatchTranslation.Layer {
+
+    /** Machine translation system wrapped. */
+    private final IMachineTranslationEdithints mt;
+
+    /** Client of the shared cache. */
+    private final TranslationCacheClient cache;
+
+    /**
+     * Constructor of the class.
+     * @param mt Machine translation system to be wrapped.
+     * @param cache Client of the shared cache.
+     */
+    public SharedCacheTranslateEdithints(IMachineTranslationEdithints mt, TranslationCacheClient cache) {
+        this.mt = mt;
+        this.cache = cache;
+    }
+
+    /**
+     * Method that returns the machine translation system wrapped.
+     * @return Returns the machine translation system wrapped.
+     */
+    public IMachineTranslationEdithints getTranslator() {
+        return mt;
+    }
+
+    public String getName() {
+        return mt.getName();
+    }
+
+    public String getTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return mt.getTranslation(sLang, tLang, text);
+    }
+
+    public Future<List<String>> getBatchTranslation(Language sLang, Language tLang, List<String> texts) {
+        return BatchTranslation.Submit(this, sLang, tLang, texts);
+    }
+
+    public String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return BatchTranslation.TranslateHTML(this, mt, sLang, tLang, text);
+    }
+
+    public List<String> translateList(Language sLang, Language tLang, List<String> texts) throws Exception {
+        if (!cache.isAvailable()) {
+            return BatchTranslation.Translate(mt, sLang, tLang, texts);
+        }
+        List<String> keys = new ArrayList<String>(texts.size());
+        for (String text : texts) {
+            keys.add(TranslationCacheClient.getKey(mt.getName(), sLang, tLang, text));
+        }
+        String[] found = cache.lookup(keys);
+        //Sub-segments to be sent, with their keys; repeated ones are sent once
+        Map<String, String> missing = new LinkedHashMap<String, String>();
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] == null) {
+                missing.put(keys.get(i), texts.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return Arrays.asList(found);
+        }
+        List<String> translated = BatchTranslation.Translate(mt, sLang, tLang,
+                new ArrayList<String>(missing.values()));
+        Map<String, String> obtained = new LinkedHashMap<String, String>();
+        int pos = 0;
+        for (String key : missing.keySet()) {
+            obtained.put(key, translated.get(pos++));
+        }
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] == null) {
+                found[i] = obtained.get(keys.get(i));
+            }
+        }
+        //Empty translations may come from a temporary problem of the system
+        Iterator<String> it = obtained.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().trim().length() == 0) {
+                it.remove();
+            }
+        }
+        cache.publish(obtained);
+        return Arrays.asList(found);
+    }
+}
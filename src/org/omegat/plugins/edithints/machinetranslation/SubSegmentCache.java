@@ -0,0 +1,497 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.omegat.util.Language;
+
+/**
+ * Cache of the translations of the sub-segments obtained from the machine
+ * translation systems, identified by the system, the language pair and the
+ * text of the sub-segment. The least recently used translations are dropped
+ * when the limit is reached.
+ * <p>
+ * The cache can be exported to a file and imported back, so a translator
+ * joining a project can start with the cache of a colleague. These
+ * translations of the sub-segments (the n-grams of up to three words of the
+ * segments) are all the evidence obtained from the machine translation
+ * systems, so with them the hints are computed again without any request.
+ * The other caches are not exported: the recommendations kept by
+ * <code>RecommendationCache</code> depend on the options of each translator
+ * and are cheap to compute from the evidence, and the evidence from the
+ * translation memories is built from the memories of the project. The file is
+ * compressed with GZIP and contains a header (magic number, version and
+ * number of translations, or -1 if it was not known when the file was
+ * written) followed by pairs of key and translation, from the least to the
+ * most recently used, and an empty key marking its end. Both directions are
+ * streamed: the entries are written and read one by one, so the size of the
+ * file is not limited by the memory available. When a file has more
+ * translations than the capacity of the cache, those which would be dropped
+ * at once are skipped without being decoded.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class SubSegmentCache {
+
+    /** Magic number of the files ("EHSC"). */
+    public static final int MAGIC = 0x45485343;
+
+    /** Version of the format of the files. */
+    public static final int VERSION = 1;
+
+    /** Default maximum number of translations kept. */
+    public static final int DEFAULT_CAPACITY = 500000;
+
+    /** Size of the buffers used to read and write the files. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Number of entries added at once when a file is imported. */
+    private static final int IMPORT_CHUNK = 4096;
+
+    /** Maximum number of translations kept. */
+    private final int capacity;
+
+    /** Translations, in order of access (least recently used first). */
+    private final Map<String, String> entries;
+
+    /** Number of sub-segments found. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of sub-segments not found. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Constructor of the class, with the default capacity. */
+    public SubSegmentCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param capacity Maximum number of translations kept.
+     */
+    public SubSegmentCache(final int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, String>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Method that builds the key of a translation.
+     * @param name Name of the machine translation system.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param text Text of the sub-segment, as sent to the system.
+     * @return Returns the key of the translation.
+     */
+    public static String Key(String name, Language sLang, Language tLang, String text) {
+        return name + '\t' + sLang.getLanguageCode() + '\t' + tLang.getLanguageCode() + '\t' + text;
+    }
+
+    /**
+     * Method that returns the translation of a sub-segment.
+     * @param key Key of the translation (see <code>Key</code>).
+     * @return Returns the translation, or <code>null</code> if it is not in
+     * the cache.
+     */
+    public String get(String key) {
+        String value;
+        synchronized (this) {
+            value = entries.get(key);
+        }
+        (value == null ? misses : hits).incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Method that adds the translation of a sub-segment.
+     * @param key Key of the translation (see <code>Key</code>).
+     * @param value Translation of the sub-segment.
+     */
+    public synchronized void put(String key, String value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * Method that returns the number of translations in the cache.
+     * @return Returns the number of translations.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Method that removes all the translations from the cache. */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Method that describes the use of the cache.
+     * @return Returns a line with the size, hits and misses of the cache.
+     */
+    public String describe() {
+        long h = hits.get();
+        long m = misses.get();
+        String line = size() + " sub-segments, " + h + " hits, " + m + " misses";
+        if (h + m > 0) {
+            line += " (" + (100 * h / (h + m)) + "%)";
+        }
+        return line;
+    }
+
+    /**
+     * Method that exports the cache to a file.
+     * @param file File to be written.
+     * @return Returns the number of translations written.
+     * @throws IOException if the file cannot be written.
+     */
+    public int Export(File file) throws IOException {
+        List<Map.Entry<String, String>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<Map.Entry<String, String>>(entries.entrySet());
+        }
+        //Written to a temporary file first, so a previous export is not lost
+        //if this one fails
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = new Writer(new FileOutputStream(tmp), snapshot.size());
+        boolean done = false;
+        try {
+            for (Map.Entry<String, String> entry : snapshot) {
+                writer.write(entry.getKey(), entry.getValue());
+            }
+            writer.close();
+            done = true;
+        } finally {
+            if (!done) {
+                writer.abort();
+                tmp.delete();
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot write " + file);
+        }
+        return snapshot.size();
+    }
+
+    /**
+     * Method that imports the translations of a file into the cache. The
+     * translations already in the cache are replaced by those in the file.
+     * @param file File to be read.
+     * @return Returns the number of translations read.
+     * @throws IOException if the file cannot be read or has not a supported
+     * format.
+     */
+    public long Import(File file) throws IOException {
+        Reader reader = new Reader(new FileInputStream(file));
+        long count = 0;
+        try {
+            //The oldest translations would be dropped by the newest ones
+            for (long skip = reader.getCount() - capacity; skip > 0 && reader.skip(); skip--) {
+                count++;
+            }
+            List<String> chunk = new ArrayList<String>(2 * IMPORT_CHUNK);
+            while (reader.next()) {
+                chunk.add(reader.getKey());
+                chunk.add(reader.getValue());
+                if (chunk.size() == 2 * IMPORT_CHUNK) {
+                    count += Add(chunk);
+                }
+            }
+            count += Add(chunk);
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /** Method that adds a list of keys and translations, and empties it. */
+    private int Add(List<String> chunk) {
+        synchronized (this) {
+            for (int i = 0; i < chunk.size(); i += 2) {
+                entries.put(chunk.get(i), chunk.get(i + 1));
+            }
+        }
+        int added = chunk.size() / 2;
+        chunk.clear();
+        return added;
+    }
+
+    /**
+     * Writer of cache files, which writes the translations as they are given.
+     */
+    public static class Writer {
+
+        private final DataOutputStream out;
+
+        /**
+         * Constructor of the class, which writes the header.
+         * @param stream Stream where the file is written.
+         * @param count Number of translations which will be written, or -1 if
+         * it is not known.
+         * @throws IOException if the header cannot be written.
+         */
+        public Writer(OutputStream stream, long count) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(stream, BUFFER), BUFFER));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(count);
+        }
+
+        /**
+         * Method that writes a translation.
+         * @param key Key of the translation (it cannot be empty).
+         * @param value Translation.
+         * @throws IOException if the translation cannot be written.
+         */
+        public void write(String key, String value) throws IOException {
+            if (key.length() == 0) {
+                throw new IllegalArgumentException("Empty key");
+            }
+            WriteString(key);
+            WriteString(value);
+        }
+
+        /**
+         * Method that writes the end of the file and closes it.
+         * @throws IOException if the file cannot be written.
+         */
+        public void close() throws IOException {
+            WriteString("");
+            out.close();
+        }
+
+        /** Method that closes the file after an error. */
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+            }
+        }
+
+        private void WriteString(String s) throws IOException {
+            byte[] bytes = s.getBytes("UTF-8");
+            int n = bytes.length;
+            while ((n & ~0x7f) != 0) {
+                out.write((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            out.write(n);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reader of cache files, which reads the translations one by one.
+     */
+    public static class Reader {
+
+        private final DataInputStream in;
+
+        private final int version;
+
+        private final long count;
+
+        private byte[] buffer = new byte[256];
+
+        private String key = null;
+
+        private String value = null;
+
+        /**
+         * Constructor of the class, which reads and checks the header.
+         * @param stream Stream from which the file is read.
+         * @throws IOException if the header cannot be read or the format is not
+         * supported.
+         */
+        public Reader(InputStream stream) throws IOException {
+            InputStream gzip;
+            try {
+                gzip = new GZIPInputStream(stream, BUFFER);
+            } catch (IOException ioe) {
+                stream.close();
+                throw new IOException("Not an edit hints cache file");
+            }
+            in = new DataInputStream(new BufferedInputStream(gzip, BUFFER));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not an edit hints cache file");
+                }
+                version = in.readInt();
+                if (version < 1 || version > VERSION) {
+                    throw new IOException("Unsupported version of edit hints cache file: " + version);
+                }
+                count = in.readLong();
+            } catch (IOException ioe) {
+                in.close();
+                throw ioe;
+            }
+        }
+
+        /**
+         * Method that returns the version of the format of the file.
+         * @return Returns the version of the file.
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * Method that returns the number of translations in the file, as
+         * written in its header.
+         * @return Returns the number of translations, or -1 if it is not known.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Method that skips the next translation without decoding it.
+         * @return Returns <code>false</code> if the end of the file has been
+         * reached.
+         * @throws IOException if the file cannot be read or is truncated.
+         */
+        public boolean skip() throws IOException {
+            key = null;
+            value = null;
+            int n = ReadLength();
+            if (n == 0) {
+                value = "";
+                return false;
+            }
+            Skip(n);
+            Skip(ReadLength());
+            return true;
+        }
+
+        /**
+         * Method that reads the next translation.
+         * @return Returns <code>false</code> if the end of the file has been
+         * reached.
+         * @throws IOException if the file cannot be read or is truncated.
+         */
+        public boolean next() throws IOException {
+            if (key == null && value != null) {
+                return false;
+            }
+            key = ReadString();
+            if (key.length() == 0) {
+                key = null;
+                value = "";
+                return false;
+            }
+            value = ReadString();
+            return true;
+        }
+
+        /**
+         * Method that returns the key of the translation read.
+         * @return Returns the key of the translation.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Method that returns the translation read.
+         * @return Returns the translation.
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Method that closes the file.
+         * @throws IOException if the file cannot be closed.
+         */
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String ReadString() throws IOException {
+            int n = ReadLength();
+            if (n > buffer.length) {
+                buffer = new byte[Math.max(n, 2 * buffer.length)];
+            }
+            in.readFully(buffer, 0, n);
+            return new String(buffer, 0, n, "UTF-8");
+        }
+
+        private void Skip(int n) throws IOException {
+            while (n > 0) {
+                int skipped = in.skipBytes(n);
+                if (skipped <= 0) {
+                    throw new EOFException("Truncated edit hints cache file");
+                }
+                n -= skipped;
+            }
+        }
+
+        private int ReadLength() throws IOException {
+            int n = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.read();
+                if (b < 0) {
+                    throw new EOFException("Truncated edit hints cache file");
+                }
+                n |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0 && shift < 32);
+            if (n < 0) {
+                throw new IOException("Corrupted edit hints cache file");
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command-line tool for the files exported from <code>SubSegmentCache</code>.
+ * All the commands stream the files, so they work with files of any size.
+ * <ul>
+ * <li><code>info cache.gz</code>: prints the version of the file and the
+ * number of translations by system and language pair.</li>
+ * <li><code>merge output.gz input.gz...</code>: joins several files; when
+ * they are imported, the translations of the last files replace those of the
+ * first ones.</li>
+ * <li><code>dump cache.gz output.tsv</code>: writes the translations as text,
+ * one per line: system, source language, target language, sub-segment and
+ * translation separated by tabs.</li>
+ * <li><code>load input.tsv cache.gz</code>: builds a file from a text file
+ * written by <code>dump</code>.</li>
+ * </ul>
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class SubSegmentCacheTool {
+
+    private SubSegmentCacheTool() {
+    }
+
+    /**
+     * Method that prints the version and contents of a file.
+     * @param file File exported from the cache.
+     * @throws IOException if the file cannot be read.
+     */
+    public static void info(File file) throws IOException {
+        SubSegmentCache.Reader reader = new SubSegmentCache.Reader(new FileInputStream(file));
+        Map<String, Long> counts = new HashMap<String, Long>();
+        long total = 0;
+        try {
+            while (reader.next()) {
+                String key = reader.getKey();
+                int tab = key.indexOf('\t');
+                tab = key.indexOf('\t', tab + 1);
+                tab = key.indexOf('\t', tab + 1);
+                String group = (tab < 0) ? key : key.substring(0, tab);
+                Long n = counts.get(group);
+                counts.put(group, (n == null) ? 1 : n + 1);
+                total++;
+            }
+        } finally {
+            reader.close();
+        }
+        System.out.println(file + ": version " + reader.getVersion() + ", " + total + " translations");
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            System.out.println("  " + e.getKey().replace('\t', ' ') + ": " + e.getValue());
+        }
+    }
+
+    /**
+     * Method that joins several files.
+     * @param output File to be written.
+     * @param inputs Files to be joined.
+     * @return Returns the number of translations written.
+     * @throws IOException if the files cannot be read or written.
+     */
+    public static long merge(File output, File[] inputs) throws IOException {
+        //The headers are read first to write the number of translations
+        long total = 0;
+        for (File input : inputs) {
+            SubSegmentCache.Reader reader = new SubSegmentCache.Reader(new FileInputStream(input));
+            total = (total < 0 || reader.getCount() < 0) ? -1 : total + reader.getCount();
+            reader.close();
+        }
+        SubSegmentCache.Writer writer = new SubSegmentCache.Writer(new FileOutputStream(output), total);
+        long count = 0;
+        boolean done = false;
+        try {
+            for (File input : inputs) {
+                SubSegmentCache.Reader reader = new SubSegmentCache.Reader(new FileInputStream(input));
+                try {
+                    while (reader.next()) {
+                        writer.write(reader.getKey(), reader.getValue());
+                        count++;
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            writer.close();
+            done = true;
+        } finally {
+            if (!done) {
+                writer.abort();
+                output.delete();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method that writes the translations of a file as text.
+     * @param input File exported from the cache.
+     * @param output Text file to be written.
+     * @return Returns the number of translations written.
+     * @throws IOException if the files cannot be read or written.
+     */
+    public static long dump(File input, File output) throws IOException {
+        SubSegmentCache.Reader reader = new SubSegmentCache.Reader(new FileInputStream(input));
+        long count = 0;
+        try {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(output), "UTF-8"), 1 << 16);
+            try {
+                while (reader.next()) {
+                    writer.write(reader.getKey());
+                    writer.write('\t');
+                    writer.write(escape(reader.getValue()));
+                    writer.write('\n');
+                    count++;
+                }
+            } finally {
+                writer.close();
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * Method that builds a file from a text file written by <code>dump</code>.
+     * Lines without five columns are skipped.
+     * @param input Text file to be read.
+     * @param output File to be written.
+     * @return Returns the number of translations written.
+     * @throws IOException if the files cannot be read or written.
+     */
+    public static long load(File input, File output) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(input), "UTF-8"), 1 << 16);
+        long count = 0;
+        try {
+            SubSegmentCache.Writer writer = new SubSegmentCache.Writer(new FileOutputStream(output), -1);
+            boolean done = false;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int last = line.lastIndexOf('\t');
+                    String key = (last < 0) ? "" : line.substring(0, last);
+                    if (key.split("\t", -1).length != 4) {
+                        continue;
+                    }
+                    writer.write(key, unescape(line.substring(last + 1)));
+                    count++;
+                }
+                writer.close();
+                done = true;
+            } finally {
+                if (!done) {
+                    writer.abort();
+                    output.delete();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    private static String escape(String s) {
+        if (s.indexOf('\\') < 0 && s.indexOf('\t') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            return s;
+        }
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("info")) {
+            for (int i = 1; i < args.length; i++) {
+                info(new File(args[i]));
+            }
+        } else if (args.length >= 3 && args[0].equals("merge")) {
+            File[] inputs = new File[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                inputs[i - 2] = new File(args[i]);
+            }
+            System.out.println(merge(new File(args[1]), inputs) + " translations written to " + args[1]);
+        } else if (args.length == 3 && args[0].equals("dump")) {
+            System.out.println(dump(new File(args[1]), new File(args[2])) + " translations written to " + args[2]);
+        } else if (args.length == 3 && args[0].equals("load")) {
+            System.out.println(load(new File(args[1]), new File(args[2])) + " translations written to " + args[2]);
+        } else {
+            System.err.println("Usage: SubSegmentCacheTool info cache.gz...");
+            System.err.println("       SubSegmentCacheTool merge output.gz input.gz...");
+            System.err.println("       SubSegmentCacheTool dump cache.gz output.tsv");
+            System.err.println("       SubSegmentCacheTool load input.tsv cache.gz");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.omegat.gui.exttrans.IMachineTranslationEdithints;
+import org.omegat.util.Language;
+
+/**
+ * Machine translation system that keeps the translation of every sub-segment
+ * in a <code>SubSegmentCache</code>. This class wraps an
+ * <code>IMachineTranslationEdithints</code> object; only the sub-segments
+ * not found in the cache are sent to the system, and their translations are
+ * merged with those found.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class SubSegmentCacheTranslateEdithints implements BatchTranslation.Layer {
+
+    /** Machine translation system wrapped. */
+    private final IMachineTranslationEdithints mt;
+
+    /** Cache of the translations of the sub-segments. */
+    private final SubSegmentCache cache;
+
+    /**
+     * Constructor of the class.
+     * @param mt Machine translation system to be wrapped.
+     * @param cache Cache of the translations of the sub-segments.
+     */
+    public SubSegmentCacheTranslateEdithints(IMachineTranslationEdithints mt, SubSegmentCache cache) {
+        this.mt = mt;
+        this.cache = cache;
+    }
+
+    /**
+     * Method that returns the machine translation system wrapped.
+     * @return Returns the machine translation system wrapped.
+     */
+    public IMachineTranslationEdithints getTranslator() {
+        return mt;
+    }
+
+    public String getName() {
+        return mt.getName();
+    }
+
+    public String getTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return mt.getTranslation(sLang, tLang, text);
+    }
+
+    public Future<List<String>> getBatchTranslation(Language sLang, Language tLang, List<String> texts) {
+        return BatchTranslation.Submit(this, sLang, tLang, texts);
+    }
+
+    public String getHTMLTranslation(Language sLang, Language tLang, String text) throws Exception {
+        return BatchTranslation.TranslateHTML(this, mt, sLang, tLang, text);
+    }
+
+    public List<String> translateList(Language sLang, Language tLang, List<String> texts) throws Exception {
+        String[] found = new String[texts.size()];
+        //Sub-segments to be sent, with their keys; repeated ones are sent once
+        Map<String, String> missing = new LinkedHashMap<String, String>();
+        for (int i = 0; i < found.length; i++) {
+            String key = SubSegmentCache.Key(mt.getName(), sLang, tLang, texts.get(i));
+            if (!missing.containsKey(key)) {
+                found[i] = cache.get(key);
+                if (found[i] == null) {
+                    missing.put(key, texts.get(i));
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return Arrays.asList(found);
+        }
+        List<String> translated = BatchTranslation.Translate(mt, sLang, tLang,
+                new ArrayList<String>(missing.values()));
+        Map<String, String> obtained = new HashMap<String, String>();
+        int pos = 0;
+        for (String key : missing.keySet()) {
+            String translation = translated.get(pos++);
+            obtained.put(key, translation);
+            //Empty translations may come from a temporary problem of the system
+            if (translation.trim().length() > 0) {
+                cache.put(key, translation);
+            }
+        }
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] == null) {
+                found[i] = obtained.get(SubSegmentCache.Key(mt.getName(), sLang, tLang, texts.get(i)));
+            }
+        }
+        return Arrays.asList(found);
+    }
+}
@@ -0,0 +1,168 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+/**
+ * Adaptive token bucket for limiting the rate of requests to a machine
+ * translation service. The rate decreases multiplicatively each time the
+ * service reports it is overloaded and increases additively with each
+ * successful request. Part of the capacity of the bucket is reserved to
+ * foreground requests (see <code>RequestPriority</code>).
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class TokenBucket {
+
+    /** Minimum rate (requests per second). */
+    private final double minRate;
+
+    /** Maximum rate (requests per second). */
+    private final double maxRate;
+
+    /** Additive increase of the rate after each successful request. */
+    private final double increase;
+
+    /** Maximum number of tokens in the bucket. */
+    private final double capacity;
+
+    /** Tokens that background requests cannot use. */
+    private final double reserved;
+
+    /** Current rate (requests per second). */
+    private double rate;
+
+    /** Tokens currently available. */
+    private double tokens;
+
+    /** Last time (in nanoseconds) the bucket was refilled. */
+    private long lastRefill;
+
+    /** Time (as in <code>System.currentTimeMillis()</code>) until which the service asked not to be called. */
+    private long blockedUntil = 0;
+
+    /**
+     * Constructor of the class.
+     * @param rate Initial rate (requests per second).
+     * @param minRate Minimum rate (requests per second).
+     * @param maxRate Maximum rate (requests per second).
+     * @param capacity Maximum number of tokens (burst size).
+     * @param reserved Tokens reserved to foreground requests.
+     */
+    public TokenBucket(double rate, double minRate, double maxRate, double capacity, double reserved) {
+        this.rate = rate;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.capacity = capacity;
+        this.reserved = reserved;
+        this.increase = maxRate / 100;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Method that waits until a token is available and takes it.
+     * @param background <code>true</code> for background requests.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void acquire(boolean background) throws InterruptedException {
+        while (true) {
+            long wait = tryAcquire(background);
+            if (wait <= 0) {
+                return;
+            }
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Method that takes a token if one is available.
+     * @param background <code>true</code> for background requests.
+     * @return Returns 0 if the token was taken, or the time in milliseconds
+     * to wait before trying again.
+     */
+    synchronized long tryAcquire(boolean background) {
+        long now = System.currentTimeMillis();
+        if (now < blockedUntil) {
+            return blockedUntil - now;
+        }
+        refill();
+        double floor = background ? reserved : 0;
+        if (tokens - 1 >= floor) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((floor + 1 - tokens) * 1000 / rate));
+    }
+
+    /** Method called after a successful request. */
+    public synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + increase);
+    }
+
+    /**
+     * Method called when the service reports it is overloaded.
+     * @param retryAfter Delay in milliseconds asked by the service, or 0.
+     */
+    public synchronized void onThrottled(long retryAfter) {
+        refill();
+        rate = Math.max(minRate, rate / 2);
+        tokens = Math.min(tokens, 0);
+        if (retryAfter > 0) {
+            blockedUntil = Math.max(blockedUntil, System.currentTimeMillis() + retryAfter);
+        }
+    }
+
+    /**
+     * Method that tells if the requests are being held back, because the
+     * service asked not to be called for a while or because there is no token
+     * left.
+     * @return Returns <code>true</code> if a new request would have to wait.
+     */
+    public synchronized boolean isThrottled() {
+        if (System.currentTimeMillis() < blockedUntil) {
+            return true;
+        }
+        refill();
+        return tokens < 1;
+    }
+
+    /**
+     * Method that returns the current rate.
+     * @return Returns the current rate (requests per second).
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+}
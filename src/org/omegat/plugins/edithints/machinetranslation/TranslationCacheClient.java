@@ -0,0 +1,290 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.omegat.util.Language;
+
+/**
+ * Client of a <code>TranslationCacheServer</code> shared by a team. The
+ * service is optional: while no URL is set, or for a while after it fails to
+ * answer, every lookup is a miss, so the translations are requested to the
+ * machine translation systems as usual. Translations are published to the
+ * service in the background.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class TranslationCacheClient {
+
+    /** Connection timeout in milliseconds; the service is expected to be near. */
+    private static final int CONNECT_TIMEOUT = 500;
+
+    /** Read timeout in milliseconds. */
+    private static final int READ_TIMEOUT = 1000;
+
+    /** Time (in milliseconds) the service is not used after it fails. */
+    private static final long SUSPENSION = 30000;
+
+    /** URL of the service (without path), or <code>null</code> if it is not used. */
+    private volatile String serviceURL = null;
+
+    /** Time until which the service is not used because it failed. */
+    private volatile long suspendedUntil = 0;
+
+    /** Number of lookups answered by the service. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of lookups not answered by the service. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Number of failed requests to the service. */
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Method that sets the URL of the service.
+     * @param serviceURL URL of the service, such as
+     * <code>http://cache.example.com:2738</code>, or <code>null</code> to stop
+     * using it.
+     */
+    public void setURL(String serviceURL) {
+        while (serviceURL != null && serviceURL.endsWith("/")) {
+            serviceURL = serviceURL.substring(0, serviceURL.length() - 1);
+        }
+        this.serviceURL = serviceURL;
+        suspendedUntil = 0;
+        hits.set(0);
+        misses.set(0);
+        errors.set(0);
+    }
+
+    /**
+     * Method that returns the URL of the service.
+     * @return Returns the URL of the service, or <code>null</code> if it is not
+     * used.
+     */
+    public String getURL() {
+        return serviceURL;
+    }
+
+    /**
+     * Method that checks if the service can be used now.
+     * @return Returns <code>true</code> if a URL is set and the service has not
+     * failed recently.
+     */
+    public boolean isAvailable() {
+        return serviceURL != null && System.currentTimeMillis() >= suspendedUntil;
+    }
+
+    /**
+     * Method that computes the key of a translation in the service.
+     * @param name Name of the machine translation system.
+     * @param sLang Source language.
+     * @param tLang Target language.
+     * @param text Sub-segment translated.
+     * @return Returns the SHA-1 of the arguments in hexadecimal.
+     */
+    public static String getKey(String name, Language sLang, Language tLang, String text) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha.digest((name + '\u0000' + sLang.getLanguageCode() + '\u0000'
+                    + tLang.getLanguageCode() + '\u0000' + text).getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(TranslationCacheServer.KEY_LENGTH);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (Exception ex) {
+            //SHA-1 and UTF-8 are available in every Java platform
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Method that looks several translations up in the service, in a single
+     * request.
+     * @param keys Keys of the translations.
+     * @return Returns the translation of every key, <code>null</code> for the
+     * ones not stored; all of them are <code>null</code> if the service is not
+     * available.
+     */
+    public String[] lookup(List<String> keys) {
+        String[] values = new String[keys.size()];
+        String base = serviceURL;
+        if (keys.isEmpty() || base == null || System.currentTimeMillis() < suspendedUntil) {
+            return values;
+        }
+        StringBuilder sb = new StringBuilder(keys.size() * (TranslationCacheServer.KEY_LENGTH + 1));
+        for (String key : keys) {
+            sb.append(key).append('\n');
+        }
+        HttpURLConnection conn = null;
+        try {
+            conn = post(base + TranslationCacheServer.LOOKUP_PATH, sb.toString());
+            int status = conn.getResponseCode();
+            if (status != 200) {
+                throw new IOException("Status " + status + " from the translation cache");
+            }
+            String[] lines = new String(drain(conn.getInputStream()), "UTF-8").split("\n", -1);
+            if (lines.length < keys.size()) {
+                throw new IOException("Incomplete answer from the translation cache");
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (lines[i].length() > 0) {
+                    values[i] = TranslationCacheServer.unescape(lines[i]);
+                    hits.incrementAndGet();
+                } else {
+                    misses.incrementAndGet();
+                }
+            }
+            return values;
+        } catch (IOException ioe) {
+            fail(conn);
+            return new String[keys.size()];
+        }
+    }
+
+    /**
+     * Method that stores several translations in the service in the
+     * background, in a single request.
+     * @param values Translations, by key.
+     */
+    public void publish(Map<String, String> values) {
+        final String base = serviceURL;
+        if (values.isEmpty() || base == null || System.currentTimeMillis() < suspendedUntil) {
+            return;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            sb.append(e.getKey()).append('\t');
+            sb.append(TranslationCacheServer.escape(e.getValue())).append('\n');
+        }
+        TranslationExecutor.getExecutor().execute(new Runnable() {
+            public void run() {
+                HttpURLConnection conn = null;
+                try {
+                    conn = post(base + TranslationCacheServer.STORE_PATH, sb.toString());
+                    int status = conn.getResponseCode();
+                    if (status >= 300) {
+                        throw new IOException("Status " + status + " from the translation cache");
+                    }
+                    drain(conn.getInputStream());
+                } catch (IOException ioe) {
+                    fail(conn);
+                }
+            }
+        });
+    }
+
+    /**
+     * Method that sends a request with a body to the service.
+     * @param url URL of the request.
+     * @param body Body of the request.
+     * @return Returns the connection, whose answer is still to be read.
+     */
+    private static HttpURLConnection post(String url, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(bytes.length);
+        OutputStream out = conn.getOutputStream();
+        out.write(bytes);
+        out.close();
+        return conn;
+    }
+
+    /**
+     * Method that describes the use of the service.
+     * @return Returns a line with the hits and misses of the service.
+     */
+    public String describe() {
+        long h = hits.get();
+        long m = misses.get();
+        String line = h + " hits, " + m + " misses";
+        if (h + m > 0) {
+            line += " (" + (100 * h / (h + m)) + "%)";
+        }
+        if (errors.get() > 0) {
+            line += ", " + errors.get() + " errors";
+        }
+        long wait = suspendedUntil - System.currentTimeMillis();
+        if (wait > 0) {
+            line += ", unreachable (retry in " + ((wait + 999) / 1000) + " s)";
+        }
+        return line;
+    }
+
+    /**
+     * Method that suspends the use of the service after a failed request.
+     * @param conn Connection of the request, or <code>null</code>.
+     */
+    private void fail(HttpURLConnection conn) {
+        errors.incrementAndGet();
+        suspendedUntil = System.currentTimeMillis() + SUSPENSION;
+        if (conn != null) {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Method that reads a response completely, so the connection can be
+     * reused.
+     * @param in Stream of the response, or <code>null</code>.
+     * @return Returns the bytes read.
+     */
+    private static byte[] drain(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (in == null) {
+            return out.toByteArray();
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,395 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small HTTP service that keeps the translations obtained by several OmegaT
+ * instances, so a team working for the same client only pays once for every
+ * sub-segment. It is used by <code>SharedCacheTranslateEdithints</code>.
+ * <p>
+ * The protocol is plain HTTP: <code>GET /cache/&lt;key&gt;</code> returns the
+ * translation stored for the key (status 200) or status 404;
+ * <code>PUT /cache/&lt;key&gt;</code> stores the body of the request (UTF-8)
+ * as the translation for the key; <code>GET /stats</code> returns the number
+ * of entries, hits, misses and stores as text. Keys are the SHA-1 (in
+ * hexadecimal) of the system, the language pair and the sub-segment, computed
+ * by the client. The entries are kept in memory and the least recently used
+ * ones are dropped when the limit is reached.
+ * <p>
+ * The sub-segments of an entry are looked up and stored together:
+ * <code>POST /lookup</code> takes one key per line and answers one line per
+ * key, with the translation stored (see <code>escape</code>) or empty if there
+ * is none; <code>POST /store</code> takes one line per translation, with the
+ * key, a tab and the translation (also escaped).
+ * <p>
+ * Usage: <code>java -jar EditHints-CacheServer.jar [port] [max entries]</code>
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class TranslationCacheServer implements HttpHandler {
+
+    /** Path of the entries of the cache. */
+    public static final String CACHE_PATH = "/cache/";
+
+    /** Path of the lookups of several entries. */
+    public static final String LOOKUP_PATH = "/lookup";
+
+    /** Path of the stores of several entries. */
+    public static final String STORE_PATH = "/store";
+
+    /** Path of the statistics of the cache. */
+    public static final String STATS_PATH = "/stats";
+
+    /** Default port of the service. */
+    public static final int DEFAULT_PORT = 2738;
+
+    /** Length of the keys (SHA-1 in hexadecimal). */
+    public static final int KEY_LENGTH = 40;
+
+    /** Maximum size (in bytes) of a translation stored. */
+    private static final int MAX_VALUE = 64 * 1024;
+
+    /** Maximum size (in bytes) of a request with several entries. */
+    private static final int MAX_BATCH = 1024 * 1024;
+
+    /** Translations, in order of access (least recently used first). */
+    private final Map<String, byte[]> entries;
+
+    /** Number of lookups answered. */
+    private long hits = 0;
+
+    /** Number of lookups not answered. */
+    private long misses = 0;
+
+    /** Number of translations stored. */
+    private long stores = 0;
+
+    /** HTTP server. */
+    private HttpServer server;
+
+    /** Threads of the server. */
+    private ExecutorService executor;
+
+    /**
+     * Constructor of the class.
+     * @param maxEntries Maximum number of translations kept.
+     */
+    public TranslationCacheServer(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, byte[]>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Method that starts the server.
+     * @param port Port of the server (0 for any free port).
+     * @throws IOException if the server cannot be started.
+     */
+    public void start(int port) throws IOException {
+        //Without TCP_NODELAY, Nagle's algorithm adds ~40 ms to every response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(CACHE_PATH, this);
+        server.createContext(LOOKUP_PATH, this);
+        server.createContext(STORE_PATH, this);
+        server.createContext(STATS_PATH, this);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /** Method that stops the server. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Method that returns the port where the server is listening.
+     * @return Returns the port of the server.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Method that returns the statistics of the cache.
+     * @return Returns the number of entries, hits, misses and stores, one per
+     * line.
+     */
+    public synchronized String getStats() {
+        return "entries " + entries.size() + "\nhits " + hits + "\nmisses " + misses
+                + "\nstores " + stores + "\n";
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals(STATS_PATH) && method.equals("GET")) {
+                send(exchange, 200, getStats().getBytes("UTF-8"));
+                return;
+            }
+            if (path.equals(LOOKUP_PATH) || path.equals(STORE_PATH)) {
+                if (!method.equals("POST")) {
+                    send(exchange, 405, null);
+                    return;
+                }
+                byte[] body = read(exchange.getRequestBody(), MAX_BATCH);
+                if (body == null) {
+                    send(exchange, 413, null);
+                    return;
+                }
+                String[] lines = new String(body, "UTF-8").split("\n");
+                byte[] answer = path.equals(LOOKUP_PATH) ? lookup(lines) : store(lines);
+                if (answer == null) {
+                    send(exchange, 400, null);
+                } else {
+                    send(exchange, path.equals(LOOKUP_PATH) ? 200 : 204, answer.length == 0 ? null : answer);
+                }
+                return;
+            }
+            String key = path.startsWith(CACHE_PATH) ? path.substring(CACHE_PATH.length()) : "";
+            if (!isKey(key)) {
+                send(exchange, 400, null);
+            } else if (method.equals("GET")) {
+                byte[] value;
+                synchronized (this) {
+                    value = entries.get(key);
+                    if (value == null) {
+                        misses++;
+                    } else {
+                        hits++;
+                    }
+                }
+                send(exchange, (value == null) ? 404 : 200, value);
+            } else if (method.equals("PUT")) {
+                byte[] value = read(exchange.getRequestBody(), MAX_VALUE);
+                if (value == null) {
+                    send(exchange, 413, null);
+                    return;
+                }
+                synchronized (this) {
+                    entries.put(key, value);
+                    stores++;
+                }
+                send(exchange, 204, null);
+            } else {
+                send(exchange, 405, null);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Method that looks up several keys.
+     * @param keys Keys, one per line.
+     * @return Returns the answer, with one line per key, or <code>null</code>
+     * if some key is not valid.
+     */
+    private byte[] lookup(String[] keys) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        synchronized (this) {
+            for (String key : keys) {
+                if (key.length() == 0) {
+                    continue;
+                }
+                if (!isKey(key)) {
+                    return null;
+                }
+                byte[] value = entries.get(key);
+                if (value == null) {
+                    misses++;
+                } else {
+                    hits++;
+                    sb.append(escape(new String(value, "UTF-8")));
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Method that stores several translations.
+     * @param lines Lines with a key, a tab and the translation escaped.
+     * @return Returns an empty answer, or <code>null</code> if some line is
+     * not valid.
+     */
+    private byte[] store(String[] lines) throws IOException {
+        Map<String, byte[]> values = new LinkedHashMap<String, byte[]>();
+        for (String line : lines) {
+            if (line.length() == 0) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            if (tab < 0 || !isKey(line.substring(0, tab))) {
+                return null;
+            }
+            byte[] value = unescape(line.substring(tab + 1)).getBytes("UTF-8");
+            if (value.length > MAX_VALUE) {
+                return null;
+            }
+            values.put(line.substring(0, tab), value);
+        }
+        synchronized (this) {
+            entries.putAll(values);
+            stores += values.size();
+        }
+        return new byte[0];
+    }
+
+    /**
+     * Method that escapes a translation so it fits in a line: backslashes,
+     * line breaks and tabs are written as <code>\\</code>, <code>\n</code>,
+     * <code>\r</code> and <code>\t</code>.
+     * @param text Translation.
+     * @return Returns the translation escaped.
+     */
+    static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that undoes <code>escape</code>.
+     * @param text Translation escaped.
+     * @return Returns the translation.
+     */
+    static String unescape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                c = text.charAt(++i);
+                if (c == 'n') {
+                    c = '\n';
+                } else if (c == 'r') {
+                    c = '\r';
+                } else if (c == 't') {
+                    c = '\t';
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that checks that a key is a SHA-1 in hexadecimal.
+     * @param key Key to check.
+     * @return Returns <code>true</code> if the key is valid.
+     */
+    static boolean isKey(String key) {
+        if (key.length() != KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            char c = key.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that reads the body of a request.
+     * @param in Body of the request.
+     * @param limit Maximum size (in bytes) of the body.
+     * @return Returns the bytes of the body, or <code>null</code> if it is
+     * larger than the limit.
+     */
+    private static byte[] read(InputStream in, int limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+            if (out.size() > limit) {
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            //Otherwise, the connection is not kept alive for the next request
+            exchange.getResponseBody().close();
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxEntries = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        TranslationCacheServer cache = new TranslationCacheServer(maxEntries);
+        cache.start(port);
+        System.out.println("Edit hints translation cache listening on port " + cache.getPort());
+    }
+}
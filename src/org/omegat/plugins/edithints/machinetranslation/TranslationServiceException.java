@@ -0,0 +1,147 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.machinetranslation;
+
+import java.net.HttpURLConnection;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Exception thrown when a machine translation service rejects a request with
+ * an HTTP error status. This class keeps the status code and the delay asked
+ * by the service in the <code>Retry-After</code> header, if any, so the
+ * request can be retried later.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class TranslationServiceException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /** HTTP status "Too Many Requests". */
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    /** Status used by Apertium for language pairs not supported. */
+    public static final int UNSUPPORTED_PAIR = 451;
+
+    /** Message of the exceptions thrown by <code>HttpURLConnection</code>. */
+    private static final Pattern RE_RESPONSE_CODE = Pattern.compile("HTTP response code: (\\d{3})");
+
+    /** HTTP status code returned by the service. */
+    private final int status;
+
+    /** Delay in milliseconds asked by the service, or 0 if none. */
+    private final long retryAfter;
+
+    /**
+     * Constructor of the class.
+     * @param status HTTP status code returned by the service.
+     * @param retryAfter Delay in milliseconds asked by the service, or 0.
+     */
+    public TranslationServiceException(int status, long retryAfter) {
+        this(status, retryAfter, "HTTP response code: " + status);
+    }
+
+    /**
+     * Constructor of the class with a specific message.
+     * @param status Status code returned by the service.
+     * @param retryAfter Delay in milliseconds asked by the service, or 0.
+     * @param message Message of the exception.
+     */
+    public TranslationServiceException(int status, long retryAfter, String message) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Method that tells if the request can be retried later: the service was
+     * overloaded (429) or failed (5xx).
+     * @return Returns <code>true</code> if the request can be retried.
+     */
+    public boolean isRetryable() {
+        return isRetryable(status);
+    }
+
+    /**
+     * Method that tells if a request which failed with a given status can be
+     * retried later.
+     * @param status HTTP status code.
+     * @return Returns <code>true</code> for 429 and 5xx.
+     */
+    public static boolean isRetryable(int status) {
+        return status == TOO_MANY_REQUESTS || (status >= 500 && status < 600);
+    }
+
+    /**
+     * Method that returns the HTTP status of a failed request. It works both
+     * with <code>TranslationServiceException</code> and with the exceptions
+     * thrown by <code>HttpURLConnection</code> in the OmegaT machine
+     * translation systems, whose message contains the status code.
+     * @param ex Exception thrown by the request.
+     * @return Returns the HTTP status, or -1 if it is unknown.
+     */
+    public static int getStatus(Throwable ex) {
+        if (ex instanceof TranslationServiceException) {
+            return ((TranslationServiceException) ex).getStatus();
+        }
+        if (ex == null || ex.getMessage() == null) {
+            return -1;
+        }
+        Matcher m = RE_RESPONSE_CODE.matcher(ex.getMessage());
+        return m.find() ? Integer.parseInt(m.group(1)) : -1;
+    }
+
+    /**
+     * Method that reads the <code>Retry-After</code> header of a response,
+     * which may contain either a number of seconds or a date.
+     * @param conn Connection from which the header is read.
+     * @return Returns the delay asked in milliseconds, or 0 if there is none.
+     */
+    public static long parseRetryAfter(HttpURLConnection conn) {
+        String value = conn.getHeaderField("Retry-After");
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException nfe) {
+            long date = conn.getHeaderFieldDate("Retry-After", 0);
+            return Math.max(0, date - System.currentTimeMillis());
+        }
+    }
+}
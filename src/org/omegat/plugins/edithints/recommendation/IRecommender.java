@@ -0,0 +1,68 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.recommendation;
+
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.translationmemory.TranslationUnit;
+
+/**
+ * Interface of the methods that decide, from the evidence collected for a
+ * translation unit, which words of its target segment should be kept and
+ * which should be changed. The recommendations are computed in batches, so
+ * the words of several matches can be scored in a single call.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public interface IRecommender {
+
+    /** Maximum length of the sub-segments used as evidence. */
+    int MAX_SUBSEGMENT_LENGTH = 3;
+
+    /**
+     * Method that returns the name of the recommender, as shown in the menu.
+     * @return Returns the name of the recommender.
+     */
+    String getName();
+
+    /**
+     * Method that computes the recommendations for several matches. The
+     * evidence of every translation unit must have been collected (see
+     * <code>TranslationUnit.CollectEvidences</code>). The recommenders only
+     * read the codes of the words, so they can be called from several threads
+     * without the lock of <code>Word</code>.
+     * @param sources Source segment of the entry being translated, for every
+     * match.
+     * @param tus Translation units (the matches).
+     * @return Returns, for every match and every word in its target segment,
+     * 1 if it should be kept, -1 if it should be changed and 0 if there is no
+     * evidence.
+     */
+    int[][] Recommend(Segment[] sources, TranslationUnit[] tus);
+}
@@ -0,0 +1,263 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.recommendation;
+
+import es.ua.dlsi.segmentation.Evidence;
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.segmentation.SubSegment;
+import es.ua.dlsi.translationmemory.TranslationUnit;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recommender which computes the same recommendations as
+ * <code>GeometricRecommender</code> (see <code>SimpleRecommender</code>) on
+ * primitive arrays: the segments are arrays with the codes of their words and
+ * the evidence is a flat array with four values (position and length in the
+ * source, position and length in the target) for every sub-segment pair. The
+ * alignment forces are added in the same order as in
+ * <code>GeometricRecommender</code>, so the results are identical.
+ * <p>
+ * The codes of the last source segment are kept, since the same segment is
+ * recommended again and again while a match is edited.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class PackedGeometricRecommender implements IRecommender {
+
+    /** Number of values in the evidence array for every sub-segment pair. */
+    public static final int EVIDENCE_FIELDS = 4;
+
+    /** Last source segment packed and its codes. */
+    private volatile Object[] lastsource = null;
+
+    public String getName() {
+        return "Simple";
+    }
+
+    public int[][] Recommend(Segment[] sources, TranslationUnit[] tus) {
+        int[][] result = new int[tus.length][];
+        for (int m = 0; m < tus.length; m++) {
+            TranslationUnit tu = tus[m];
+            int[] evidence = PackEvidence(tu.getEvidences(), MAX_SUBSEGMENT_LENGTH);
+            result[m] = Recommend(PackSource(sources[m]), Pack(tu.getSource()),
+                    tu.getTarget().size(), evidence, evidence.length / EVIDENCE_FIELDS,
+                    SimpleRecommender.THRESHOLD);
+        }
+        return result;
+    }
+
+    /**
+     * Method that returns the codes of a source segment, reusing those of the
+     * last one if it is the same object.
+     */
+    private int[] PackSource(Segment source) {
+        Object[] last = lastsource;
+        if (last != null && last[0] == source) {
+            return (int[]) last[1];
+        }
+        int[] codes = Pack(source);
+        lastsource = new Object[]{source, codes};
+        return codes;
+    }
+
+    /**
+     * Method that returns the codes of the words of a segment.
+     * @param segment Segment.
+     * @return Returns the code of every word.
+     */
+    public static int[] Pack(Segment segment) {
+        List<Integer> codes = segment.getSentenceCodes();
+        int[] packed = new int[codes.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = codes.get(i);
+        }
+        return packed;
+    }
+
+    /**
+     * Method that packs the evidence of a translation unit, in the order in
+     * which it is iterated, leaving out the sub-segments longer than the
+     * maximum length.
+     * @param evidences Evidence of the translation unit.
+     * @param maxlen Maximum length of the sub-segments.
+     * @return Returns the position and length in the source and the position
+     * and length in the target of every sub-segment pair.
+     */
+    public static int[] PackEvidence(Set<Evidence> evidences, int maxlen) {
+        int[] packed = new int[evidences.size() * EVIDENCE_FIELDS];
+        int e = 0;
+        for (Evidence evidence : evidences) {
+            SubSegment source = evidence.getSegment();
+            SubSegment target = evidence.getTranslation();
+            if (source.getLength() > maxlen || target.getLength() > maxlen) {
+                continue;
+            }
+            packed[e++] = source.getPosition();
+            packed[e++] = source.getLength();
+            packed[e++] = target.getPosition();
+            packed[e++] = target.getLength();
+        }
+        if (e < packed.length) {
+            int[] trimmed = new int[e];
+            System.arraycopy(packed, 0, trimmed, 0, e);
+            return trimmed;
+        }
+        return packed;
+    }
+
+    /**
+     * Method that computes the recommendation for the words of the target
+     * segment of a translation unit.
+     * @param source Codes of the words of the segment being translated.
+     * @param tusource Codes of the words of the source segment of the
+     * translation unit.
+     * @param targetlength Number of words of the target segment of the
+     * translation unit.
+     * @param evidence Sub-segment pairs (see <code>PackEvidence</code>).
+     * @param count Number of sub-segment pairs.
+     * @param threshold Fraction of the alignment force which must come from
+     * words which are not edited for keeping a word.
+     * @return Returns, for every word in the target segment, 1 if it should be
+     * kept, -1 if it should be changed and 0 if there is no evidence.
+     */
+    public static int[] Recommend(int[] source, int[] tusource, int targetlength,
+            int[] evidence, int count, double threshold) {
+        int ms = tusource.length;
+        int mt = targetlength;
+        //Alignment forces, a row for every source word
+        double[] forces = new double[ms * mt];
+        for (int e = 0, offset = 0; e < count; e++, offset += EVIDENCE_FIELDS) {
+            int spos = evidence[offset];
+            int slen = evidence[offset + 1];
+            int tpos = evidence[offset + 2];
+            int tlen = evidence[offset + 3];
+            double force = 1.0 / ((double) slen * (double) tlen);
+            for (int k = 0; k < slen; k++) {
+                int row = (spos + k) * mt + tpos;
+                for (int l = 0; l < tlen; l++) {
+                    forces[row + l] += force;
+                }
+            }
+        }
+
+        boolean[] matched = new boolean[ms];
+        Match(source, tusource, matched);
+
+        int[] result = new int[mt];
+        for (int j = 0; j < mt; j++) {
+            double keep = 0;
+            double total = 0;
+            for (int i = 0, cell = j; i < ms; i++, cell += mt) {
+                total += forces[cell];
+                if (matched[i]) {
+                    keep += forces[cell];
+                }
+            }
+            if (total > 0) {
+                result[j] = (keep / total >= threshold) ? 1 : -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method that finds the words of the source segment of the translation
+     * unit which are kept in the segment being translated, following the
+     * edit distance between both as <code>Segment.EditDistance</code> does.
+     * @param a Codes of the words of the segment being translated.
+     * @param b Codes of the words of the source segment of the translation
+     * unit.
+     * @param matched Set to <code>true</code> for the words of <code>b</code>
+     * which are kept.
+     * @return Returns the edit distance.
+     */
+    static int Match(int[] a, int[] b, boolean[] matched) {
+        int n = a.length;
+        int m = b.length;
+        int w = m + 1;
+        int[] d = new int[(n + 1) * w];
+        for (int i = 0; i <= n; i++) {
+            d[i * w] = i;
+        }
+        for (int j = 0; j <= m; j++) {
+            d[j] = j;
+        }
+        for (int i = 1, row = w; i <= n; i++, row += w) {
+            int code = a[i - 1];
+            int left = d[row];
+            for (int j = 1; j <= m; j++) {
+                int diagonal = d[row - w + j - 1];
+                if (code == b[j - 1]) {
+                    left = diagonal;
+                } else {
+                    int up = d[row - w + j];
+                    int min = (up < left) ? up : left;
+                    left = ((diagonal < min) ? diagonal : min) + 1;
+                }
+                d[row + j] = left;
+            }
+        }
+
+        //The path is followed backwards with the same preferences as
+        //Segment.EditDistance
+        int i = n;
+        int j = m;
+        while (j > 0) {
+            if (i == 0) {
+                matched[j - 1] = false;
+                j--;
+                continue;
+            }
+            int diagonal = d[(i - 1) * w + j - 1];
+            int up = d[(i - 1) * w + j];
+            int left = d[i * w + j - 1];
+            if (diagonal < up) {
+                if (diagonal <= left) {
+                    if (a[i - 1] == b[j - 1]) {
+                        matched[j - 1] = true;
+                    }
+                    i--;
+                    j--;
+                } else {
+                    j--;
+                }
+            } else if (up <= left) {
+                if (a[i - 1] == b[j - 1]) {
+                    matched[j - 1] = true;
+                }
+                i--;
+            } else {
+                j--;
+            }
+        }
+        return d[n * w + m];
+    }
+}
@@ -0,0 +1,167 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.recommendation;
+
+import es.ua.dlsi.features.FeaturesComputer;
+import es.ua.dlsi.features.GeometricStyleMNFeatures;
+import es.ua.dlsi.features.MNFeatures;
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.translationmemory.TranslationUnit;
+import es.ua.dlsi.utils.Pair;
+import java.util.List;
+
+/**
+ * Recommender which uses a perceptron on the features computed by
+ * <code>FeaturesComputer</code>, as <code>PerceptronRecommend</code> and
+ * <code>GeometricStlypePerceptronRecommend</code> do when only the words with
+ * evidence are recommended. The features of all the words of all the matches
+ * in a call are gathered in a single matrix, which is scored at once.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class PerceptronRecommender implements IRecommender {
+
+    /** Features on which the perceptron works. */
+    public enum Features {
+        /** Features of <code>MNFeatures</code> (<code>PerceptronRecommend</code>). */
+        MN,
+        /**
+         * Features of <code>GeometricStyleMNFeatures</code>
+         * (<code>GeometricStlypePerceptronRecommend</code>).
+         */
+        GEOMETRIC_STYLE
+    }
+
+    /** Number of features for sub-segments up to the maximum length. */
+    public static final int FEATURES = 2 * MAX_SUBSEGMENT_LENGTH * MAX_SUBSEGMENT_LENGTH;
+
+    /** Name of the recommender. */
+    private final String name;
+
+    /** Features used. */
+    private final Features features;
+
+    /** Weights of the perceptron. */
+    private final PerceptronWeights weights;
+
+    /**
+     * Constructor of the class.
+     * @param name Name of the recommender.
+     * @param features Features used.
+     * @param weights Weights of the perceptron, one for every feature.
+     */
+    public PerceptronRecommender(String name, Features features, PerceptronWeights weights) {
+        if (weights.size() != FEATURES) {
+            throw new IllegalArgumentException("Expected " + FEATURES + " weights, found "
+                    + weights.size());
+        }
+        this.name = name;
+        this.features = features;
+        this.weights = weights;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Features getFeatures() {
+        return features;
+    }
+
+    public PerceptronWeights getWeights() {
+        return weights;
+    }
+
+    public int[][] Recommend(Segment[] sources, TranslationUnit[] tus) {
+        int rows = 0;
+        for (TranslationUnit tu : tus) {
+            rows += tu.getTarget().size();
+        }
+        double[] matrix = new double[rows * FEATURES];
+        boolean[] evidence = new boolean[rows];
+        int row = 0;
+        for (int m = 0; m < tus.length; m++) {
+            List<Pair<String, double[]>> computed = Compute(sources[m], tus[m]);
+            int size = tus[m].getTarget().size();
+            for (int j = 0; j < size; j++, row++) {
+                //Words without evidence have no features
+                double[] f = (j < computed.size()) ? computed.get(j).getSecond() : null;
+                if (f != null) {
+                    System.arraycopy(f, 0, matrix, row * FEATURES, FEATURES);
+                    evidence[row] = true;
+                }
+            }
+        }
+        double[] scores = weights.Score(matrix, rows);
+
+        int[][] result = new int[tus.length][];
+        row = 0;
+        for (int m = 0; m < tus.length; m++) {
+            result[m] = new int[tus[m].getTarget().size()];
+            for (int j = 0; j < result[m].length; j++, row++) {
+                if (evidence[row]) {
+                    result[m][j] = (scores[row] >= PerceptronWeights.THRESHOLD) ? 1 : -1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method that computes the features of the words of the target segment of
+     * a translation unit.
+     * @return Returns the features of every word, or <code>null</code> for the
+     * words without evidence.
+     */
+    private List<Pair<String, double[]>> Compute(Segment source, TranslationUnit tu) {
+        FeaturesComputer computer;
+        double score = Score(source, tu.getSource());
+        if (features == Features.GEOMETRIC_STYLE) {
+            computer = new GeometricStyleMNFeatures(source, tu, MAX_SUBSEGMENT_LENGTH, score);
+        } else {
+            computer = new MNFeatures(source, tu, MAX_SUBSEGMENT_LENGTH, score);
+        }
+        return computer.Compute(null, true);
+    }
+
+    /**
+     * Method that computes the fuzzy match score between the segment being
+     * translated and the source segment of a match.
+     * @return Returns the score, between 0 and 1.
+     */
+    static double Score(Segment source, Segment matchsource) {
+        int max = Math.max(source.size(), matchsource.size());
+        if (max == 0) {
+            return 1;
+        }
+        return 1.0 - (double) Segment.OmegaTEditDistance(source.getSentenceCodes(),
+                matchsource.getSentenceCodes()) / max;
+    }
+}
@@ -0,0 +1,154 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.recommendation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Weights of a perceptron used for recommending: a bias and a weight for
+ * every feature. A word is kept if the probability given by the perceptron,
+ * <code>1/(1+exp(-(bias+w·f)))</code>, reaches the threshold.
+ * <p>
+ * The weights are read from a text file with the bias followed by the
+ * weights, separated by blanks or new lines; the lines starting with
+ * <code>#</code> are ignored.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class PerceptronWeights {
+
+    /** Threshold of the probability for keeping a word. */
+    public static final double THRESHOLD = 0.5;
+
+    /** Bias of the perceptron. */
+    private final double bias;
+
+    /** Weight of every feature. */
+    private final double[] weights;
+
+    /**
+     * Constructor of the class.
+     * @param bias Bias of the perceptron.
+     * @param weights Weight of every feature.
+     */
+    public PerceptronWeights(double bias, double[] weights) {
+        this.bias = bias;
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Method that reads the weights from a file.
+     * @param file File with the bias followed by the weights.
+     * @param size Number of features expected.
+     * @return Returns the weights read.
+     * @throws IOException if the file cannot be read or has not one weight
+     * for every feature.
+     */
+    public static PerceptronWeights Load(File file, int size) throws IOException {
+        List<Double> values = new ArrayList<Double>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                for (String value : line.split("\\s+")) {
+                    try {
+                        values.add(Double.valueOf(value));
+                    } catch (NumberFormatException ex) {
+                        throw new IOException(file + ": wrong weight \"" + value + "\"");
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (values.size() != size + 1) {
+            throw new IOException(file + ": expected a bias and " + size + " weights, found "
+                    + values.size() + " values");
+        }
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            weights[i] = values.get(i + 1);
+        }
+        return new PerceptronWeights(values.get(0), weights);
+    }
+
+    /**
+     * Method that returns the number of features.
+     * @return Returns the number of weights.
+     */
+    public int size() {
+        return weights.length;
+    }
+
+    /**
+     * Method that computes the probability of keeping a word for several
+     * words at once.
+     * @param features Features of the words, one row of <code>size()</code>
+     * values after another.
+     * @param rows Number of words.
+     * @return Returns the probability of keeping every word.
+     */
+    public double[] Score(double[] features, int rows) {
+        double[] scores = new double[rows];
+        int n = weights.length;
+        for (int r = 0, offset = 0; r < rows; r++, offset += n) {
+            double z = bias;
+            for (int i = 0; i < n; i++) {
+                z += features[offset + i] * weights[i];
+            }
+            scores[r] = 1.0 / (1.0 + Math.exp(-z));
+        }
+        return scores;
+    }
+
+    /**
+     * Method that returns a copy of the weights, to be passed to the
+     * recommenders of <code>WKRecommending</code>.
+     * @return Returns the weight of every feature.
+     */
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    public double getBias() {
+        return bias;
+    }
+}
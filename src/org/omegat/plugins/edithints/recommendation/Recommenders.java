@@ -0,0 +1,156 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.recommendation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry of the recommenders available in the plugin and of the one chosen
+ * in the menu. The geometric recommender is always available; the perceptron
+ * recommenders are available once their weights are loaded from a directory
+ * (see <code>LoadWeights</code>), which is done once at startup and again only
+ * when another directory is chosen.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class Recommenders {
+
+    /** Name of the file with the weights of the perceptron on MN features. */
+    public static final String PERCEPTRON_WEIGHTS = "perceptron.weights";
+
+    /**
+     * Name of the file with the weights of the perceptron on geometric-style
+     * MN features.
+     */
+    public static final String GEOMETRIC_PERCEPTRON_WEIGHTS = "geometric-perceptron.weights";
+
+    /** Geometric recommender, on primitive arrays. */
+    private static final IRecommender simple = new PackedGeometricRecommender();
+
+    /** Perceptron on MN features, or <code>null</code> if not loaded. */
+    private static volatile IRecommender perceptron = null;
+
+    /**
+     * Perceptron on geometric-style MN features, or <code>null</code> if not
+     * loaded.
+     */
+    private static volatile IRecommender geometricperceptron = null;
+
+    /** Recommender chosen. */
+    private static volatile IRecommender active = simple;
+
+    private Recommenders() {
+    }
+
+    public static IRecommender getSimple() {
+        return simple;
+    }
+
+    public static IRecommender getPerceptron() {
+        return perceptron;
+    }
+
+    public static IRecommender getGeometricPerceptron() {
+        return geometricperceptron;
+    }
+
+    /**
+     * Method that returns the recommender chosen.
+     * @return Returns the recommender used for the hints.
+     */
+    public static IRecommender getActive() {
+        return active;
+    }
+
+    /**
+     * Method that chooses the recommender used for the hints.
+     * @param recommender Recommender to be used.
+     */
+    public static void setActive(IRecommender recommender) {
+        active = recommender;
+    }
+
+    /**
+     * Method that returns the recommenders which can be chosen.
+     * @return Returns the geometric recommender and the perceptron recommenders
+     * whose weights are loaded.
+     */
+    public static List<IRecommender> getAvailable() {
+        List<IRecommender> available = new ArrayList<IRecommender>();
+        available.add(simple);
+        IRecommender p = perceptron;
+        if (p != null) {
+            available.add(p);
+        }
+        p = geometricperceptron;
+        if (p != null) {
+            available.add(p);
+        }
+        return available;
+    }
+
+    /**
+     * Method that loads the weights of the perceptron recommenders from a
+     * directory, which contains the files <code>PERCEPTRON_WEIGHTS</code> and
+     * <code>GEOMETRIC_PERCEPTRON_WEIGHTS</code> (any of them may be missing).
+     * If the recommender chosen is no longer available, the geometric one is
+     * chosen.
+     * @param dir Directory with the weights.
+     * @return Returns the errors found when reading the files, if any.
+     */
+    public static List<String> LoadWeights(File dir) {
+        List<String> errors = new ArrayList<String>();
+        perceptron = Load(new File(dir, PERCEPTRON_WEIGHTS), "Perceptron",
+                PerceptronRecommender.Features.MN, errors);
+        geometricperceptron = Load(new File(dir, GEOMETRIC_PERCEPTRON_WEIGHTS),
+                "Geometric-style perceptron", PerceptronRecommender.Features.GEOMETRIC_STYLE, errors);
+        if (!getAvailable().contains(active)) {
+            active = simple;
+        }
+        return errors;
+    }
+
+    private static IRecommender Load(File file, String name, PerceptronRecommender.Features features,
+            List<String> errors) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return new PerceptronRecommender(name, features,
+                    PerceptronWeights.Load(file, PerceptronRecommender.FEATURES));
+        } catch (IOException ex) {
+            errors.add(ex.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.recommendation;
+
+import es.ua.dlsi.recommendation.GeometricRecommender;
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.translationmemory.TranslationUnit;
+
+/**
+ * Recommender which uses the geometric method of
+ * <code>GeometricRecommender</code>: a word is kept if most of the alignment
+ * force received from the sub-segments which cover it comes from words of the
+ * source segment which are not edited. The plugin uses
+ * <code>PackedGeometricRecommender</code>, which gives the same results; this
+ * one is kept as the reference.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class SimpleRecommender implements IRecommender {
+
+    /** Threshold of the fraction of alignment force for keeping a word. */
+    public static final double THRESHOLD = 0.5;
+
+    public String getName() {
+        return "Simple (WKRecommending)";
+    }
+
+    public int[][] Recommend(Segment[] sources, TranslationUnit[] tus) {
+        int[][] result = new int[tus.length][];
+        for (int m = 0; m < tus.length; m++) {
+            result[m] = GeometricRecommender.MakeRecommendation(sources[m], tus[m],
+                    MAX_SUBSEGMENT_LENGTH, false, null, null, THRESHOLD);
+        }
+        return result;
+    }
+}
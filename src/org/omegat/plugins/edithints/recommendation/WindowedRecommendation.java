@@ -0,0 +1,206 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+
+package org.omegat.plugins.edithints.recommendation;
+
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.segmentation.Word;
+import es.ua.dlsi.translationmemory.SegmentDictionary;
+import es.ua.dlsi.translationmemory.TranslationUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that computes the recommendations for long translation units by
+ * windows. Collecting the evidence of a translation unit and recommending on
+ * it grow faster than its length, so the target segment of a long unit is
+ * split into overlapping windows of <code>WINDOW</code> words, each of them
+ * paired with the proportional part of the source segment of the unit and of
+ * the segment being translated, widened by <code>OVERLAP</code> words on both
+ * sides. The evidence is collected and the recommendation computed for every
+ * window in parallel, and every word takes the decision of the window whose
+ * centre is closest to it (the first one in case of a tie), so the result
+ * does not depend on the order in which the windows finish.
+ * <p>
+ * The windows only use the words of the segments, whose codes are already
+ * assigned, so they do not need the lock of <code>Word</code>.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class WindowedRecommendation {
+
+    /** Maximum number of target words in a window. */
+    public static final int WINDOW = 40;
+
+    /** Number of words shared by consecutive windows. */
+    public static final int OVERLAP = 10;
+
+    /** Pool of threads for the windows, one for every processor. */
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "edithints-recommender-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private WindowedRecommendation() {
+    }
+
+    /**
+     * Method that collects the evidence of a translation unit and computes
+     * the recommendation for the words of its target segment, by windows if
+     * the unit is longer than a window.
+     * @param recommender Recommender used.
+     * @param source Segment being translated.
+     * @param tu Translation unit (the match).
+     * @param sd Evidence obtained for the translation unit.
+     * @return Returns, for every word in the target segment, 1 if it should be
+     * kept, -1 if it should be changed and 0 if there is no evidence, or
+     * <code>null</code> if the thread was interrupted.
+     */
+    public static int[] Recommend(IRecommender recommender, Segment source,
+            TranslationUnit tu, SegmentDictionary sd) {
+        return Recommend(recommender, source, tu, sd, executor);
+    }
+
+    /**
+     * Method that collects the evidence of a translation unit and computes
+     * the recommendation for the words of its target segment, by windows if
+     * the unit is longer than a window, running the windows in a given pool
+     * of threads.
+     * @param recommender Recommender used.
+     * @param source Segment being translated.
+     * @param tu Translation unit (the match).
+     * @param sd Evidence obtained for the translation unit.
+     * @param pool Threads where the windows are run.
+     * @return Returns, for every word in the target segment, 1 if it should be
+     * kept, -1 if it should be changed and 0 if there is no evidence, or
+     * <code>null</code> if the thread was interrupted.
+     */
+    public static int[] Recommend(final IRecommender recommender, Segment source,
+            TranslationUnit tu, final SegmentDictionary sd, ExecutorService pool) {
+        final List<Word> swords = tu.getSource().getSentence();
+        final List<Word> twords = tu.getTarget().getSentence();
+        final List<Word> words = source.getSentence();
+        int ms = swords.size();
+        int mt = twords.size();
+        int n = words.size();
+        //Units with an empty side cannot be split proportionally
+        if (Math.max(ms, mt) <= WINDOW || ms == 0 || mt == 0) {
+            tu.CollectEvidences(sd, IRecommender.MAX_SUBSEGMENT_LENGTH, false);
+            return recommender.Recommend(new Segment[]{source}, new TranslationUnit[]{tu})[0];
+        }
+
+        final List<int[]> windows = Windows(n, ms, mt);
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(windows.size());
+        for (final int[] w : windows) {
+            tasks.add(new Callable<int[]>() {
+                public int[] call() {
+                    TranslationUnit window = new TranslationUnit(Window(swords, w[2], w[3]),
+                            Window(twords, w[4], w[5]));
+                    window.CollectEvidences(sd, IRecommender.MAX_SUBSEGMENT_LENGTH, false);
+                    return recommender.Recommend(new Segment[]{Window(words, w[0], w[1])},
+                            new TranslationUnit[]{window})[0];
+                }
+            });
+        }
+        List<int[]> results = new ArrayList<int[]>(windows.size());
+        try {
+            for (Future<int[]> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+
+        int[] result = new int[mt];
+        for (int j = 0; j < mt; j++) {
+            int best = 0;
+            for (int k = 1; k < windows.size(); k++) {
+                if (Distance(windows.get(k), j) < Distance(windows.get(best), j)) {
+                    best = k;
+                }
+            }
+            int[] w = windows.get(best);
+            result[j] = results.get(best)[j - w[4]];
+        }
+        return result;
+    }
+
+    /**
+     * Method that splits a translation unit into windows.
+     * @param n Number of words of the segment being translated.
+     * @param ms Number of words of the source segment of the unit (not 0).
+     * @param mt Number of words of the target segment of the unit (not 0).
+     * @return Returns, for every window, the first and last (excluded)
+     * positions in the segment being translated, in the source segment of
+     * the unit and in its target segment.
+     */
+    static List<int[]> Windows(int n, int ms, int mt) {
+        List<int[]> windows = new ArrayList<int[]>();
+        int step = WINDOW - OVERLAP;
+        for (int t0 = 0; ; t0 += step) {
+            int t1 = Math.min(mt, t0 + WINDOW);
+            int s0 = Math.max(0, (int) ((long) t0 * ms / mt) - OVERLAP);
+            int s1 = Math.min(ms, (int) (((long) t1 * ms + mt - 1) / mt) + OVERLAP);
+            int n0 = Math.max(0, (int) ((long) s0 * n / ms) - OVERLAP);
+            int n1 = Math.min(n, (int) (((long) s1 * n + ms - 1) / ms) + OVERLAP);
+            windows.add(new int[]{n0, n1, s0, s1, t0, t1});
+            if (t1 == mt) {
+                return windows;
+            }
+        }
+    }
+
+    /**
+     * Method that returns twice the distance between a target word and the
+     * centre of a window.
+     */
+    private static int Distance(int[] window, int j) {
+        return Math.abs(2 * j + 1 - window[4] - window[5]);
+    }
+
+    private static Segment Window(List<Word> words, int from, int to) {
+        return new Segment(new ArrayList<Word>(words.subList(from, to)));
+    }
+}
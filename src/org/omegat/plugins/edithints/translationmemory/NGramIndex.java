@@ -0,0 +1,231 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.translationmemory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Read-only inverted index of the n-grams of one of the sides of a set of
+ * translation memories, stored in a memory-mapped binary file built by
+ * <code>NGramIndexBuilder</code>. For every n-gram the index stores the number
+ * of translation units containing it and the sorted list of their
+ * identifiers, so the co-occurrence of a source and a target n-gram is
+ * computed by intersecting two lists read directly from the mapped bytes.
+ * N-grams appearing in too many translation units are stored without their
+ * list, since they give no useful evidence.
+ * <p>
+ * Layout of the file (big-endian): the magic number, the version, the
+ * fingerprint of the translation memories indexed, the number of n-grams
+ * <i>n</i>, the position of the offsets table, the entries sorted by the UTF-8
+ * bytes of their n-gram and, finally, the <i>n</i> offsets to the entries.
+ * Every entry is made of the length of the n-gram (short), its UTF-8 bytes,
+ * the number of translation units containing it (int), the length of the list
+ * (int) and the list, written as the variable-length differences between
+ * consecutive identifiers.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class NGramIndex {
+
+    /** Magic number identifying n-gram index files ("EHTI"). */
+    static final int MAGIC = 0x45485449;
+
+    /** Version of the format of the file. */
+    static final int VERSION = 1;
+
+    /** Size of the header. */
+    static final int HEADER_SIZE = 24;
+
+    /** Contents of the file. */
+    private final ByteBuffer buffer;
+
+    /** Fingerprint of the translation memories indexed. */
+    private final long fingerprint;
+
+    /** Number of n-grams in the index. */
+    private final int size;
+
+    /** Position of the table of offsets. */
+    private final int offsets;
+
+    /**
+     * Constructor of the class, which maps the file in memory.
+     * @param file Index file.
+     * @throws IOException if the file cannot be read or is not an index.
+     */
+    public NGramIndex(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an n-gram index");
+            }
+            if (mapped.getInt(4) != VERSION) {
+                throw new IOException(file + ": unsupported n-gram index version " + mapped.getInt(4));
+            }
+            buffer = mapped;
+            fingerprint = mapped.getLong(8);
+            size = mapped.getInt(16);
+            offsets = mapped.getInt(20);
+        } finally {
+            //The mapping remains valid after closing the file
+            raf.close();
+        }
+    }
+
+    /**
+     * Method that returns the fingerprint of the translation memories
+     * indexed.
+     * @return Returns the fingerprint given to the builder.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Method that returns the number of n-grams in the index.
+     * @return Returns the number of n-grams in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method that normalises an n-gram as done when the index is built:
+     * lowercased and with single spaces between words.
+     * @param ngram N-gram to be normalised.
+     * @return Returns the normalised n-gram.
+     */
+    public static String normalise(String ngram) {
+        return ngram.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Method that returns the identifiers of the translation units containing
+     * an n-gram.
+     * @param ngram N-gram (normalised with <code>normalise</code>).
+     * @return Returns the sorted identifiers, or <code>null</code> if the
+     * n-gram is not in the index or is too frequent to have its list stored.
+     */
+    public int[] postings(String ngram) throws IOException {
+        byte[] key = ngram.getBytes("UTF-8");
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(entryOffset(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid;
+            } else {
+                return readPostings(entryOffset(mid));
+            }
+        }
+        return null;
+    }
+
+    private int entryOffset(int idx) {
+        return buffer.getInt(offsets + 4 * idx);
+    }
+
+    /**
+     * Method that compares the n-gram of an entry with a key, byte by byte as
+     * unsigned values (which is the order of the code points).
+     */
+    private int compare(int offset, byte[] key) {
+        int length = buffer.getShort(offset) & 0xffff;
+        int start = offset + 2;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int diff = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+    private int[] readPostings(int offset) {
+        int pos = offset + 2 + (buffer.getShort(offset) & 0xffff);
+        int count = buffer.getInt(pos);
+        int bytes = buffer.getInt(pos + 4);
+        if (bytes == 0) {
+            return null;
+        }
+        pos += 8;
+        int[] result = new int[count];
+        int last = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(pos++);
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            last += delta;
+            result[i] = last;
+        }
+        return result;
+    }
+
+    /**
+     * Method that returns the number of identifiers shared by two sorted
+     * lists.
+     * @param a First list.
+     * @param b Second list.
+     * @return Returns the size of the intersection of both lists.
+     */
+    public static int intersection(int[] a, int[] b) {
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,383 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.translationmemory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Class that builds an <code>NGramIndex</code> file. The n-grams of the
+ * translation units are added in increasing order of identifier; they are
+ * accumulated in memory and, every time the memory used grows over a limit,
+ * written to a sorted temporary run. When all the translation units have
+ * been added, the runs are merged into the index, so memories of any size can
+ * be indexed with a bounded amount of heap.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class NGramIndexBuilder {
+
+    /** Number of identifiers kept in memory before writing a run. */
+    static final int RUN_LIMIT = 2000000;
+
+    /**
+     * Maximum number of translation units for which the list of an n-gram is
+     * stored; more frequent n-grams are kept only with their frequency.
+     */
+    public static final int MAX_POSTINGS = 5000;
+
+    /** Order of the UTF-8 bytes of the n-grams, as unsigned values. */
+    static final Comparator<byte[]> BYTES_ORDER = new Comparator<byte[]>() {
+        public int compare(byte[] a, byte[] b) {
+            int n = Math.min(a.length, b.length);
+            for (int i = 0; i < n; i++) {
+                int diff = (a[i] & 0xff) - (b[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    /** File where the index is written. */
+    private final File output;
+
+    /** Fingerprint of the translation memories indexed. */
+    private final long fingerprint;
+
+    /** Identifiers of the translation units containing each n-gram, in memory. */
+    private Map<String, IntList> current = new HashMap<String, IntList>();
+
+    /** Number of identifiers in <code>current</code>. */
+    private int pending = 0;
+
+    /** Temporary runs written so far. */
+    private final List<File> runs = new ArrayList<File>();
+
+    /** Last identifier added. */
+    private int last = -1;
+
+    /**
+     * Constructor of the class.
+     * @param output File where the index is written.
+     * @param fingerprint Fingerprint of the translation memories indexed,
+     * stored in the index to detect when it is out of date.
+     */
+    public NGramIndexBuilder(File output, long fingerprint) {
+        this.output = output;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Method that adds the n-grams of a translation unit.
+     * @param id Identifier of the translation unit, greater than the
+     * identifiers added before.
+     * @param ngrams Different n-grams of the translation unit (normalised with
+     * <code>NGramIndex.normalise</code>).
+     * @throws IOException if a temporary run cannot be written.
+     */
+    public void add(int id, Collection<String> ngrams) throws IOException {
+        if (id <= last) {
+            throw new IllegalArgumentException("Identifiers must be added in increasing order");
+        }
+        last = id;
+        for (String ngram : ngrams) {
+            IntList list = current.get(ngram);
+            if (list == null) {
+                list = new IntList();
+                current.put(ngram, list);
+            }
+            list.add(id);
+        }
+        pending += ngrams.size();
+        if (pending >= RUN_LIMIT) {
+            writeRun();
+        }
+    }
+
+    /**
+     * Method that merges the runs and writes the index. The index is written
+     * to a temporary file first, so an index being mapped is never seen half
+     * written. The temporary runs are deleted even if the index cannot be
+     * written.
+     * @return Returns the number of n-grams in the index.
+     * @throws IOException if the index cannot be written.
+     */
+    public int finish() throws IOException {
+        try {
+            writeRun();
+            return merge();
+        } finally {
+            abort();
+        }
+    }
+
+    /**
+     * Method that discards the n-grams added and deletes the temporary runs.
+     */
+    public void abort() {
+        current = new HashMap<String, IntList>();
+        pending = 0;
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    /** Method that writes the n-grams in memory to a sorted temporary run. */
+    private void writeRun() throws IOException {
+        if (current.isEmpty()) {
+            return;
+        }
+        List<byte[]> keys = new ArrayList<byte[]>(current.size());
+        Map<byte[], IntList> lists = new HashMap<byte[], IntList>(current.size() * 2);
+        for (Map.Entry<String, IntList> e : current.entrySet()) {
+            byte[] key = e.getKey().getBytes("UTF-8");
+            if (key.length <= 0xffff) {
+                keys.add(key);
+                lists.put(key, e.getValue());
+            }
+        }
+        byte[][] sorted = keys.toArray(new byte[keys.size()][]);
+        Arrays.sort(sorted, BYTES_ORDER);
+
+        File run = new File(output.getPath() + ".run" + runs.size());
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run)));
+        try {
+            for (byte[] key : sorted) {
+                IntList list = lists.get(key);
+                out.writeShort(key.length);
+                out.write(key);
+                out.writeInt(list.size);
+                for (int i = 0; i < list.size; i++) {
+                    out.writeInt(list.data[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        current = new HashMap<String, IntList>();
+        pending = 0;
+    }
+
+    /** Method that merges the runs into the index. */
+    private int merge() throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(Math.max(1, runs.size()), new Comparator<Run>() {
+            public int compare(Run a, Run b) {
+                int cmp = BYTES_ORDER.compare(a.key, b.key);
+                //Equal n-grams are taken in the order of the runs, which keeps
+                //the identifiers sorted
+                return (cmp != 0) ? cmp : a.order - b.order;
+            }
+        });
+        File tmp = new File(output.getPath() + ".tmp");
+        File offsetsTmp = new File(output.getPath() + ".offsets");
+        DataOutputStream out = null;
+        DataOutputStream offsets = null;
+        int count = 0;
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new Run(runs.get(i), i);
+                if (run.next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsTmp)));
+            //The header is completed when the index has been written
+            out.write(new byte[NGramIndex.HEADER_SIZE]);
+            long position = NGramIndex.HEADER_SIZE;
+            ByteArrayOutputStream postings = new ByteArrayOutputStream();
+            while (!queue.isEmpty()) {
+                Run first = queue.poll();
+                byte[] key = first.key;
+                postings.reset();
+                int frequency = 0;
+                int previous = 0;
+                Run run = first;
+                while (true) {
+                    for (int i = 0; i < run.ids.size; i++) {
+                        frequency++;
+                        if (frequency <= MAX_POSTINGS) {
+                            writeVarInt(postings, run.ids.data[i] - previous);
+                            previous = run.ids.data[i];
+                        }
+                    }
+                    if (run.next()) {
+                        queue.add(run);
+                    } else {
+                        run.close();
+                    }
+                    if (queue.isEmpty() || BYTES_ORDER.compare(queue.peek().key, key) != 0) {
+                        break;
+                    }
+                    run = queue.poll();
+                }
+                int length = (frequency <= MAX_POSTINGS) ? postings.size() : 0;
+                if (position + 10 + key.length + length > Integer.MAX_VALUE) {
+                    throw new IOException("The n-gram index would exceed 2 GB");
+                }
+                offsets.writeInt((int) position);
+                out.writeShort(key.length);
+                out.write(key);
+                out.writeInt(frequency);
+                out.writeInt(length);
+                if (length > 0) {
+                    postings.writeTo(out);
+                }
+                position += 10 + key.length + length;
+                count++;
+            }
+            offsets.close();
+            offsets = null;
+
+            //The table of offsets is appended after the entries
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(offsetsTmp)));
+            try {
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(in.readInt());
+                }
+            } finally {
+                in.close();
+            }
+            out.close();
+            out = null;
+
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                raf.writeInt(NGramIndex.MAGIC);
+                raf.writeInt(NGramIndex.VERSION);
+                raf.writeLong(fingerprint);
+                raf.writeInt(count);
+                raf.writeInt((int) position);
+            } finally {
+                raf.close();
+            }
+        } finally {
+            for (Run run : queue) {
+                run.close();
+            }
+            if (out != null) {
+                out.close();
+            }
+            if (offsets != null) {
+                offsets.close();
+            }
+            offsetsTmp.delete();
+        }
+        if (output.exists() && !output.delete()) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + output);
+        }
+        if (!tmp.renameTo(output)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + output);
+        }
+        return count;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Growable list of identifiers. */
+    private static class IntList {
+        int[] data = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+
+    /** Reader of a temporary run, positioned on one of its n-grams. */
+    private static class Run {
+        final int order;
+        final DataInputStream in;
+        byte[] key;
+        final IntList ids = new IntList();
+
+        Run(File file, int order) throws IOException {
+            this.order = order;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        /** Method that reads the next n-gram; returns false at the end of the run. */
+        boolean next() throws IOException {
+            int length;
+            try {
+                length = in.readUnsignedShort();
+            } catch (EOFException eof) {
+                return false;
+            }
+            key = new byte[length];
+            in.readFully(key);
+            int n = in.readInt();
+            ids.size = 0;
+            for (int i = 0; i < n; i++) {
+                ids.add(in.readInt());
+            }
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/******************************************************************************
+ EditHints OmegaT plugin - Plugin for OmegaT (htpp://www.omegat.org) to provide
+                           edit hints on the translation proposals by a
+                           translation memory by using machine translation to
+                           detect the parts of the proposal to be edited and
+                           those to keep untouched. The method used here is
+                           described by Esplà-Gomis, Sánchez-Martínez, and
+                           Forcada in "Using machine translation in
+                           computer-aided translation to suggest the target-side
+                           words to change" (XIII Machine Translation Summit, p
+                           172-179, Xiamen, Xina, 2011).
+
+ Copyright (C) 2013-2014 Universitat d'Alacant [www.ua.es]
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ **************************************************************************/
+
+package org.omegat.plugins.edithints.translationmemory;
+
+import es.ua.dlsi.segmentation.Segment;
+import es.ua.dlsi.segmentation.SubSegment;
+import es.ua.dlsi.translationmemory.SegmentDictionary;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.omegat.core.Core;
+import org.omegat.core.CoreEvents;
+import org.omegat.core.data.ExternalTMX;
+import org.omegat.core.data.IProject;
+import org.omegat.core.data.ProjectProperties;
+import org.omegat.core.data.TMXEntry;
+import org.omegat.core.events.IProjectEventListener;
+import org.omegat.tokenizer.ITokenizer;
+import org.omegat.util.Log;
+import org.omegat.util.Token;
+
+/**
+ * Class that obtains sub-segment evidence from the translation memories
+ * loaded by the project, without any machine translation system. When the
+ * project is loaded, the n-grams of both sides of the translation units are
+ * indexed in two <code>NGramIndex</code> files in the internal folder of the
+ * project; the index is rebuilt only when the translation memories change.
+ * A source and a target sub-segment are taken as mutual translations when
+ * they appear together in enough translation units, measured with the Dice
+ * coefficient of the translation units containing them.
+ * @author Miquel Esplà Gomis [mespla@dlsi.ua.es]
+ */
+public class TMEvidenceProvider {
+
+    /** Maximum length of the n-grams indexed (as the sub-segments compared). */
+    public static final int MAX_NGRAM = 3;
+
+    /** Minimum number of translation units shared by a pair of sub-segments. */
+    static final int MIN_COOCCURRENCES = 2;
+
+    /** Minimum Dice coefficient of a pair of sub-segments. */
+    static final double MIN_DICE = 0.3;
+
+    /** Number of translation units indexed between checks for cancellation. */
+    private static final int CANCEL_CHECK = 1000;
+
+    /** Folder, inside the internal folder of the project, where the index is stored. */
+    private static final String INDEX_DIR = "edithints";
+
+    /** Source-side and target-side indexes, or <code>null</code> if not available. */
+    private volatile NGramIndex[] indexes = null;
+
+    /** Tells if the evidence from the translation memories is used. */
+    private volatile boolean enabled = false;
+
+    /** Identifier of the last indexing started; older ones are abandoned. */
+    private volatile int generation = 0;
+
+    /** Description of the state of the index. */
+    private volatile String status = "not indexed";
+
+    /**
+     * Constructor of the class, which registers the listener that indexes the
+     * translation memories when a project is loaded.
+     */
+    public TMEvidenceProvider() {
+        CoreEvents.registerProjectChangeListener(new IProjectEventListener() {
+            public void onProjectChanged(PROJECT_CHANGE_TYPE eventType) {
+                switch (eventType) {
+                    case LOAD:
+                        if (enabled) {
+                            StartIndexing();
+                        }
+                        break;
+                    case CLOSE:
+                        StopIndexing();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+    }
+
+    /**
+     * Method that enables or disables the evidence from the translation
+     * memories. If a project is loaded when it is enabled, its translation
+     * memories are indexed.
+     * @param enabled <code>true</code> to use the translation memories.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            IProject project = Core.getProject();
+            if (project != null && project.isProjectLoaded()) {
+                StartIndexing();
+            }
+        } else {
+            StopIndexing();
+        }
+    }
+
+    /**
+     * Method that tells if the indexes are ready to be used.
+     * @return Returns <code>true</code> if evidence can be obtained.
+     */
+    public boolean isReady() {
+        return indexes != null;
+    }
+
+    /**
+     * Method that returns a description of the state of the index, to be
+     * shown to the user.
+     * @return Returns the description of the state of the index.
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * Method that adds to a <code>SegmentDictionary</code> the pairs of
+     * sub-segments of two segments which are mutual translations according to
+     * the translation memories. For every sub-segment, the sub-segment in the
+     * other segment with the highest Dice coefficient is taken, provided it
+     * reaches <code>MIN_DICE</code> and <code>MIN_COOCCURRENCES</code>.
+     * @param sd Dictionary where the pairs are added.
+     * @param sourceseg Source segment
+     * @param targetseg Target segment
+     * @return Returns <code>false</code> if the index was not ready, so no
+     * evidence could be obtained.
+     */
+    public boolean AddEvidence(SegmentDictionary sd, Segment sourceseg, Segment targetseg) {
+        NGramIndex[] current = indexes;
+        if (current == null) {
+            return false;
+        }
+        List<SubSegment> subsegmentss = sourceseg.AllSubSegmentsInSentence(MAX_NGRAM);
+        List<SubSegment> subsegmentst = targetseg.AllSubSegmentsInSentence(MAX_NGRAM);
+        int[][] postingss = Postings(current[0], subsegmentss);
+        int[][] postingst = Postings(current[1], subsegmentst);
+
+        double[][] dice = new double[subsegmentss.size()][subsegmentst.size()];
+        for (int i = 0; i < postingss.length; i++) {
+            int[] a = postingss[i];
+            if (a == null) {
+                continue;
+            }
+            for (int j = 0; j < postingst.length; j++) {
+                int[] b = postingst[j];
+                if (b == null) {
+                    continue;
+                }
+                //Upper bound of the coefficient, which avoids most of the
+                //intersections of lists of very different lengths
+                if (2.0 * Math.min(a.length, b.length) / (a.length + b.length) < MIN_DICE) {
+                    continue;
+                }
+                int shared = NGramIndex.intersection(a, b);
+                if (shared >= MIN_COOCCURRENCES) {
+                    dice[i][j] = 2.0 * shared / (a.length + b.length);
+                }
+            }
+        }
+
+        for (int i = 0; i < dice.length; i++) {
+            int best = -1;
+            for (int j = 0; j < subsegmentst.size(); j++) {
+                if (dice[i][j] >= MIN_DICE && (best < 0 || dice[i][j] > dice[i][best])) {
+                    best = j;
+                }
+            }
+            if (best >= 0) {
+                sd.AddSegmentPair(subsegmentss.get(i), subsegmentst.get(best));
+            }
+        }
+        for (int j = 0; j < subsegmentst.size(); j++) {
+            int best = -1;
+            for (int i = 0; i < dice.length; i++) {
+                if (dice[i][j] >= MIN_DICE && (best < 0 || dice[i][j] > dice[best][j])) {
+                    best = i;
+                }
+            }
+            if (best >= 0) {
+                sd.AddSegmentPair(subsegmentss.get(best), subsegmentst.get(j));
+            }
+        }
+        return true;
+    }
+
+    /** Method that reads the lists of translation units of some sub-segments. */
+    private static int[][] Postings(NGramIndex index, List<SubSegment> subsegments) {
+        int[][] result = new int[subsegments.size()][];
+        try {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = index.postings(NGramIndex.normalise(subsegments.get(i).toString()));
+            }
+        } catch (IOException ioe) {
+            Log.log(ioe);
+        }
+        return result;
+    }
+
+    /**
+     * Method that starts indexing the translation memories of the project in
+     * a background thread. Any indexing in progress is abandoned.
+     */
+    private synchronized void StartIndexing() {
+        final int id = ++generation;
+        indexes = null;
+        status = "indexing...";
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    BuildIndexes(id);
+                } catch (IOException ioe) {
+                    if (id == generation) {
+                        status = "not available (" + ioe.getMessage() + ")";
+                    }
+                    Log.log(ioe);
+                }
+            }
+        }, "EditHints TM indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /** Method that abandons any indexing in progress and releases the indexes. */
+    private synchronized void StopIndexing() {
+        generation++;
+        indexes = null;
+        status = "not indexed";
+    }
+
+    /**
+     * Method that opens the indexes of the translation memories of the
+     * project, building them first if they do not exist or are out of date.
+     * @param id Identifier of this indexing.
+     */
+    private void BuildIndexes(int id) throws IOException {
+        IProject project = Core.getProject();
+        ProjectProperties props = project.getProjectProperties();
+        //Sorted by name, so the identifiers are stable between loads
+        Map<String, ExternalTMX> tms = new TreeMap<String, ExternalTMX>(project.getTransMemories());
+        long fingerprint = Fingerprint(tms, props);
+
+        File dir = new File(props.getProjectInternal(), INDEX_DIR);
+        File sourcefile = new File(dir, "tm-source.idx");
+        File targetfile = new File(dir, "tm-target.idx");
+        NGramIndex[] opened = Open(sourcefile, targetfile, fingerprint);
+        if (opened == null) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            NGramIndexBuilder sourcebuilder = new NGramIndexBuilder(sourcefile, fingerprint);
+            NGramIndexBuilder targetbuilder = new NGramIndexBuilder(targetfile, fingerprint);
+            ITokenizer sourcetokenizer = project.getSourceTokenizer();
+            ITokenizer targettokenizer = project.getTargetTokenizer();
+            int tu = 0;
+            try {
+                for (ExternalTMX tmx : tms.values()) {
+                    for (TMXEntry entry : tmx.getEntries()) {
+                        if (entry.source == null || entry.translation == null) {
+                            continue;
+                        }
+                        sourcebuilder.add(tu, NGrams(sourcetokenizer, entry.source));
+                        targetbuilder.add(tu, NGrams(targettokenizer, entry.translation));
+                        tu++;
+                        if (tu % CANCEL_CHECK == 0) {
+                            if (id != generation) {
+                                return;
+                            }
+                            status = "indexing... (" + tu + " translation units)";
+                        }
+                    }
+                }
+                sourcebuilder.finish();
+                targetbuilder.finish();
+            } finally {
+                sourcebuilder.abort();
+                targetbuilder.abort();
+            }
+            opened = Open(sourcefile, targetfile, fingerprint);
+            if (opened == null) {
+                throw new IOException("Cannot read the index in " + dir);
+            }
+        }
+        synchronized (this) {
+            if (id == generation) {
+                indexes = opened;
+                status = opened[0].size() + " source and " + opened[1].size() + " target n-grams";
+            }
+        }
+    }
+
+    /**
+     * Method that opens the indexes if they exist and were built from the
+     * same translation memories.
+     * @return Returns the source-side and target-side indexes, or
+     * <code>null</code> if they have to be built.
+     */
+    private static NGramIndex[] Open(File sourcefile, File targetfile, long fingerprint) {
+        if (!sourcefile.isFile() || !targetfile.isFile()) {
+            return null;
+        }
+        try {
+            NGramIndex sourceindex = new NGramIndex(sourcefile);
+            NGramIndex targetindex = new NGramIndex(targetfile);
+            if (sourceindex.getFingerprint() != fingerprint
+                    || targetindex.getFingerprint() != fingerprint) {
+                return null;
+            }
+            return new NGramIndex[]{sourceindex, targetindex};
+        } catch (IOException ioe) {
+            //A corrupted or old index is simply rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Method that computes a fingerprint of the translation memories and the
+     * languages of the project, used to detect when the index is out of date.
+     */
+    private static long Fingerprint(Map<String, ExternalTMX> tms, ProjectProperties props) {
+        long h = 1125899906842597L;
+        h = 31 * h + props.getSourceLanguage().getLanguageCode().hashCode();
+        h = 31 * h + props.getTargetLanguage().getLanguageCode().hashCode();
+        h = 31 * h + MAX_NGRAM;
+        h = 31 * h + NGramIndexBuilder.MAX_POSTINGS;
+        for (Map.Entry<String, ExternalTMX> e : tms.entrySet()) {
+            h = 31 * h + e.getKey().hashCode();
+            for (TMXEntry entry : e.getValue().getEntries()) {
+                h = 31 * h + ((entry.source == null) ? 0 : entry.source.hashCode());
+                h = 31 * h + ((entry.translation == null) ? 0 : entry.translation.hashCode());
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Method that returns the different n-grams of a text, up to
+     * <code>MAX_NGRAM</code> words, normalised as in <code>NGramIndex</code>.
+     * @param tokenizer Tokenizer of the language of the text.
+     * @param text Text.
+     * @return Returns the set of n-grams of the text.
+     */
+    static Set<String> NGrams(ITokenizer tokenizer, String text) {
+        Token[] tokens = tokenizer.tokenizeAllExactly(text);
+        List<String> words = new ArrayList<String>(tokens.length);
+        for (Token token : tokens) {
+            String word = text.substring(token.getOffset(), token.getOffset() + token.getLength());
+            if (word.trim().length() > 0) {
+                words.add(word.toLowerCase(Locale.ENGLISH));
+            }
+        }
+        Set<String> ngrams = new HashSet<String>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words.size(); i++) {
+            sb.setLength(0);
+            for (int n = 0; n < MAX_NGRAM && i + n < words.size(); n++) {
+                if (n > 0) {
+                    sb.append(' ');
+                }
+                sb.append(words.get(i + n));
+                ngrams.add(sb.toString());
+            }
+        }
+        return ngrams;
+    }
+}